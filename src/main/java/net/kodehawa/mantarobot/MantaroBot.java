@@ -163,17 +163,21 @@ public class MantaroBot {
         ImageBoard.setUserAgent(MantaroInfo.USER_AGENT);
         this.startExecutors();
 
-        if (config.musicEnable()) {
-            var thread = new ThreadFactoryBuilder().setNameFormat("Mantaro Shutdown Hook").build();
-            Runtime.getRuntime().addShutdownHook(thread.newThread(() -> {
+        var thread = new ThreadFactoryBuilder().setNameFormat("Mantaro Shutdown Hook").build();
+        Runtime.getRuntime().addShutdownHook(thread.newThread(() -> {
+            if (config.musicEnable()) {
                 log.info("Destroying all active players...");
                 for (var players : audioManager.getMusicManagers().entrySet()) {
                     players.getValue().getLavaLink().destroyPlayer().block(Duration.ofMillis(300));
                 }
 
-                log.info("Destroyed all players. Not aware of anything holding off shutdown now");
-            }));
-        }
+                log.info("Destroyed all players.");
+            }
+
+            log.info("Flushing queued database writes...");
+            MantaroData.db().flushQueuedWrites();
+            log.info("Not aware of anything holding off shutdown now");
+        }));
     }
 
     public static void main(String[] args) {
@@ -23,6 +23,7 @@ import net.kodehawa.mantarobot.commands.currency.item.ItemHelper;
 import net.kodehawa.mantarobot.commands.currency.item.ItemReference;
 import net.kodehawa.mantarobot.commands.currency.item.ItemStack;
 import net.kodehawa.mantarobot.commands.currency.item.ItemType;
+import net.kodehawa.mantarobot.commands.currency.item.LootTables;
 import net.kodehawa.mantarobot.commands.currency.item.PlayerEquipment;
 import net.kodehawa.mantarobot.commands.currency.item.special.gems.CastedGem;
 import net.kodehawa.mantarobot.commands.currency.item.special.gems.Gem;
@@ -53,19 +54,15 @@ import net.kodehawa.mantarobot.db.entities.Marriage;
 import net.kodehawa.mantarobot.db.entities.MongoUser;
 import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
-import net.kodehawa.mantarobot.utils.commands.RandomCollection;
 import net.kodehawa.mantarobot.utils.commands.campaign.Campaign;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Module
@@ -512,11 +509,6 @@ public class CurrencyActionCmds {
             ItemHelper.handleItemDurability(item, ctx, player, dbUser, "commands.fish.autoequip.success");
         } else {
             // Here you actually caught fish, congrats.
-            List<Item> fish = Stream.of(ItemReference.ALL)
-                    .filter(i -> i.getItemType() == ItemType.FISHING && !i.isHidden() && i.isSellable())
-                    .collect(Collectors.toList());
-
-            RandomCollection<Item> fishItems = new RandomCollection<>();
             var money = 0;
             var amount = Math.max(1, random.nextInt(item.getLevel()));
 
@@ -529,7 +521,6 @@ public class CurrencyActionCmds {
                 amount += random.nextInt(4);
             }
 
-            fish.forEach((i1) -> fishItems.add(3, i1));
             HousePet pet = null;
             var activePetChoice = player.getActivePetChoice(marriage);
             if (activePetChoice == PetChoice.MARRIAGE) {
@@ -582,23 +573,17 @@ public class CurrencyActionCmds {
             // END OF FISH LOOT CRATE HANDLING
 
             if ((item == ItemReference.SPARKLE_ROD || item == ItemReference.HELLFIRE_ROD) && random.nextInt(30) > 20) {
-                if (random.nextInt(100) > 96) {
-                    fish.addAll(Stream.of(ItemReference.ALL)
-                            .filter(i -> i.getItemType() == ItemType.FISHING_RARE && !i.isHidden() && i.isSellable()).toList()
-                    );
-                }
-
                 player.processItem(ItemReference.SHARK, 1);
                 extraMessage += "\n" + EmoteReference.MEGA +
                         languageContext.get("commands.fish.shark_success").formatted(ItemReference.SHARK.getEmojiDisplay());
 
-                player.sharksCaught(player.getSharksCaught() + 1);
+                player.incrementSharksCaught();
             }
 
             List<ItemStack> list = new ArrayList<>(amount);
             AtomicBoolean overflow = new AtomicBoolean(false);
             for (int i = 0; i < amount; i++) {
-                Item it = fishItems.next();
+                Item it = LootTables.FISHING.next(random);
                 list.add(new ItemStack(it, 1));
             }
 
@@ -751,14 +736,11 @@ public class CurrencyActionCmds {
             }
 
             // ---- Start of drop handling.
-            RandomCollection<Item> items = new RandomCollection<>();
-            var toDrop = handleChopDrop();
-            toDrop.forEach(i -> items.add(3, i));
             AtomicBoolean overflow = new AtomicBoolean(false);
 
             List<ItemStack> list = new ArrayList<>(amount);
             for (int i = 0; i < amount; i++) {
-                Item it = items.next();
+                Item it = LootTables.CHOPPING.next(random);
                 list.add(new ItemStack(it, 1));
             }
 
@@ -890,13 +872,6 @@ public class CurrencyActionCmds {
         return new HousePet.ActivityReward(0, 0, "");
     }
 
-    private static List<Item> handleChopDrop() {
-        return Arrays.stream(ItemReference.ALL)
-                .filter(i -> i.getItemType() == ItemType.CHOP_DROP)
-                .sorted(Comparator.comparingLong(Item::getValue))
-                .collect(Collectors.toList());
-    }
-
     private static void handlePetBadges(Player player, Marriage marriage, HousePet pet) {
         if (pet == null) {
             return;
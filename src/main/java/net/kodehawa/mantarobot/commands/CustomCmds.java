@@ -17,7 +17,10 @@
 
 package net.kodehawa.mantarobot.commands;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Message;
@@ -38,6 +41,7 @@ import net.kodehawa.mantarobot.core.command.text.TextContext;
 import net.kodehawa.mantarobot.core.command.argument.Parsers;
 import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
 import net.kodehawa.mantarobot.core.command.helpers.CommandPermission;
+import net.kodehawa.mantarobot.core.command.helpers.GuildCommandPermissions;
 import net.kodehawa.mantarobot.core.command.i18n.I18nContext;
 import net.kodehawa.mantarobot.core.command.meta.Alias;
 import net.kodehawa.mantarobot.core.command.meta.Category;
@@ -57,12 +61,12 @@ import net.kodehawa.mantarobot.core.listeners.operations.core.ModalOperation;
 import net.kodehawa.mantarobot.core.listeners.operations.core.Operation;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.CustomCommand;
-import net.kodehawa.mantarobot.db.entities.MongoGuild;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.DiscordUtils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,8 +74,9 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
@@ -85,7 +90,17 @@ public class CustomCmds {
     public static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]+");
     public static final Pattern INVALID_CHARACTERS_PATTERN = Pattern.compile("[^a-zA-Z0-9_]");
 
-    private static final Map<String, CustomCommand> customCommands = new ConcurrentHashMap<>();
+    // Commands are keyed by guildId:name, names by guild. Both only get filled by guilds that actually use them.
+    private static final Cache<String, CustomCommand> customCommands = CacheBuilder.newBuilder()
+            .maximumSize(50_000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+    // Lets us answer "this isn't a custom command" without asking the database on every typo.
+    // Kept up to date by add/remove/rename here, and reloaded every once in a while just in case.
+    private static final Cache<String, Set<String>> customCommandNames = CacheBuilder.newBuilder()
+            .maximumSize(20_000)
+            .expireAfterWrite(30, TimeUnit.MINUTES)
+            .build();
     private static final Logger log = LoggerFactory.getLogger(CustomCmds.class);
     private static final SecureRandom random = new SecureRandom();
     //People spamming crap... we cant have nice things owo
@@ -109,31 +124,29 @@ public class CustomCmds {
         return true;
     };
 
-    public static void handle(String prefix, String cmdName, TextContext ctx, MongoGuild guildData, String args) {
+    public static void handle(String prefix, String cmdName, TextContext ctx, GuildCommandPermissions permissions, String args) {
         CustomCommand customCommand = getCustomCommand(ctx.getGuild().getId(), cmdName);
         if (customCommand == null) {
             return;
         }
 
         // !! CCS disable check start.
-        if (guildData.getDisabledCommands().contains(cmdName)) {
+        if (permissions.isCommandDisabled(cmdName)) {
             return;
         }
 
-        List<String> channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(ctx.getChannel().getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(cmdName)) {
+        if (permissions.isCommandDisabled(ctx.getChannel().getId(), cmdName)) {
             return;
         }
 
-        Map<String, List<String>> roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
-        if (ctx.getMember().getRoles().stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(r.getId(), s -> new ArrayList<>()).contains(cmdName)) && !CommandPermission.ADMIN.test(ctx.getMember())) {
+        if (permissions.isCommandDisabled(ctx.getMember().getRoles(), cmdName) && !CommandPermission.ADMIN.test(ctx.getMember())) {
             return;
         }
         // !! CCS disable check end.
 
         // Create a new language context only if the command goes through.
         // This avoids getting a user everytime a command is ran, even if the command is not valid.
-        ctx.setLanguageContext(new I18nContext(guildData, db().getUser(ctx.getAuthor())));
+        ctx.setLanguageContext(new I18nContext(permissions.getSettings(), db().getUserCommandSettings(ctx.getAuthor().getId())));
 
         // Run the actual custom command.
         List<String> values = customCommand.getValues();
@@ -165,35 +178,83 @@ public class CustomCmds {
             return null;
         }
 
-        if (customCommands.containsKey(id + ":" + name)) {
-            return customCommands.get(id + ":" + name);
+        var cached = customCommands.getIfPresent(id + ":" + name);
+        if (cached != null) {
+            return cached;
+        }
+
+        var names = getCustomCommandNames(id);
+        if (names != null && !names.contains(name)) {
+            Metrics.DATABASE_CACHE.labels("custom_command", "filtered").inc();
+            return null;
         }
 
         CustomCommand custom = db().getCustomCommand(id, name);
-        if (custom == null)
+        if (custom == null) {
+            // Got deleted somewhere else, forget about it.
+            forgetCustomCommand(id, name);
             return null;
+        }
 
         if (!NAME_PATTERN.matcher(name).matches()) {
             String newName = INVALID_CHARACTERS_PATTERN.matcher(custom.getName()).replaceAll("_");
             log.info("Custom Command with Invalid Characters {} found. Replacing with '_'", custom.getName());
 
             custom.delete();
+            forgetCustomCommand(custom);
             custom = CustomCommand.of(custom.getGuildId(), newName, custom.getValues());
             custom.insertOrReplace();
         }
 
         if (CommandProcessor.REGISTRY.commands().containsKey(custom.getName())) {
             custom.delete();
+            forgetCustomCommand(custom);
             custom = CustomCommand.of(custom.getGuildId(), "_" + custom.getName(), custom.getValues());
             custom.insertOrReplace();
         }
 
         //add to registry
-        customCommands.put(custom.getId(), custom);
+        cacheCustomCommand(custom);
 
         return custom;
     }
 
+    // Null if they couldn't be loaded, in which case it's better to just ask the database.
+    private static Set<String> getCustomCommandNames(String guildId) {
+        try {
+            return customCommandNames.get(guildId, () -> {
+                Metrics.DATABASE_CACHE.labels("custom_command_names", "miss").inc();
+                var names = ConcurrentHashMap.<String>newKeySet();
+                names.addAll(db().getCustomCommandNames(guildId));
+                return names;
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            log.error("Couldn't load custom command names for guild {}", guildId, e);
+            return null;
+        }
+    }
+
+    // Call these after saving or deleting a custom command, so the name filter and cache follow along.
+    private static void cacheCustomCommand(CustomCommand custom) {
+        customCommands.put(custom.getId(), custom);
+        var names = customCommandNames.getIfPresent(custom.getGuildId());
+        if (names != null) {
+            names.add(custom.getName());
+        }
+    }
+
+    private static void forgetCustomCommand(CustomCommand custom) {
+        forgetCustomCommand(custom.getGuildId(), custom.getName());
+    }
+
+    private static void forgetCustomCommand(String guildId, String name) {
+        customCommands.invalidate(guildId + ":" + name);
+        var names = customCommandNames.getIfPresent(guildId);
+        if (names != null) {
+            names.remove(name);
+        }
+    }
+
     @Subscribe
     public void registry(CommandRegistry cr) {
         cr.registerSlash(Custom.class);
@@ -508,7 +569,7 @@ public class CustomCmds {
                         // save at DB
                         custom.insertOrReplace();
                         // reflect at local
-                        customCommands.put(custom.getId(), custom);
+                        cacheCustomCommand(custom);
 
                         event.reply(lang.get("commands.custom.add.success").formatted(EmoteReference.CORRECT, name))
                                 .queue();
@@ -662,7 +723,7 @@ public class CustomCmds {
 
                         custom.getValues().set(where - 1, commandContent);
                         custom.insertOrReplace();
-                        customCommands.put(custom.getId(), custom);
+                        cacheCustomCommand(custom);
                         event.reply(lang.get("commands.custom.edit.success").formatted(EmoteReference.CORRECT, where, custom.getName())).queue();
                         return Operation.COMPLETED;
                     }
@@ -1057,8 +1118,10 @@ public class CustomCmds {
                 var customCommands = ctx.db().getCustomCommands(ctx.getGuild());
                 int size = customCommands.size();
 
-                customCommands.stream().filter(cmd -> !cmd.isLocked()).forEach(CustomCommand::delete);
-                customCommands.forEach(c -> CustomCmds.customCommands.remove(c.getId()));
+                customCommands.stream().filter(cmd -> !cmd.isLocked()).forEach(cmd -> {
+                    cmd.delete();
+                    forgetCustomCommand(cmd);
+                });
 
                 message.editMessageFormat(languageContext.get("commands.custom.clear.success"), EmoteReference.PENCIL, size)
                         .queue();
@@ -1108,12 +1171,8 @@ public class CustomCmds {
         newCustom.insertOrReplace();
 
         //reflect at local
-        customCommands.remove(oldCustom.getId());
-        customCommands.put(newCustom.getId(), newCustom);
-
-        //clear commands if none
-        if (customCommands.keySet().stream().noneMatch(s -> s.endsWith(":" + cmd)))
-            customCommands.remove(cmd);
+        forgetCustomCommand(oldCustom);
+        cacheCustomCommand(newCustom);
 
         ctx.sendLocalized("commands.custom.rename.success", EmoteReference.CORRECT, cmd, value);
 
@@ -1206,12 +1265,13 @@ public class CustomCmds {
         custom.getValues().remove(where - 1);
         if (custom.getValues().isEmpty()) {
             custom.delete();
+            forgetCustomCommand(custom);
             ctx.sendLocalized("commands.custom.deleteresponse.no_responses_left", EmoteReference.CORRECT);
             return;
         }
 
         custom.insertOrReplace();
-        customCommands.put(custom.getId(), custom);
+        cacheCustomCommand(custom);
         ctx.sendLocalized("commands.custom.deleteresponse.success", EmoteReference.CORRECT, where, custom.getName());
     }
 
@@ -1246,12 +1306,7 @@ public class CustomCmds {
         custom.delete();
 
         //reflect at local
-        customCommands.remove(custom.getId());
-
-        //clear commands if none
-        if (customCommands.keySet().stream().noneMatch(s -> s.endsWith(":" + content))) {
-            customCommands.remove(content);
-        }
+        forgetCustomCommand(custom);
 
         ctx.sendLocalized("commands.custom.remove.success", EmoteReference.PENCIL, content);
     }
@@ -1328,7 +1383,7 @@ public class CustomCmds {
         //save at DB
         custom.insertOrReplace();
         //reflect at local
-        customCommands.put(custom.getId(), custom);
+        cacheCustomCommand(custom);
         ctx.sendLocalized("commands.custom.add.success", EmoteReference.CORRECT, name);
 
         //easter egg :D
@@ -1373,7 +1428,7 @@ public class CustomCmds {
 
         custom.getValues().set(where - 1, commandContent);
         custom.insertOrReplace();
-        customCommands.put(custom.getId(), custom);
+        cacheCustomCommand(custom);
         ctx.sendLocalized("commands.custom.edit.success", EmoteReference.CORRECT, where, custom.getName());
     }
 }
@@ -397,18 +397,18 @@ public class GambleCmds {
             player.addMoney(gains);
             player.updateAllChanged();
         } else {
+            // We already substracted the gained amount, in slot tickets, but we need to save anyway.
+            // The bet could've been spent somewhere else since we checked, in which case none of this is saved.
+            if ((!coinSelect && !player.removeMoney(money)) || !player.updateAllChanged()) {
+                ctx.sendLocalized("commands.slots.errors.not_enough_money", EmoteReference.SAD);
+                return;
+            }
+
             stats.incrementSlotsLose();
             stats.updateAllChanged();
             message.append(toSend).append("\n\n").append(
                     languageContext.withRoot("commands", "slots.lose").formatted(EmoteReference.SAD)
             );
-
-            if (!coinSelect) { // We already substracted the gained amount, in slot tickets.
-                player.removeMoney(money);
-            }
-
-            // We need to save anyway.
-            player.updateAllChanged();
         }
 
         message.append("\n");
@@ -528,7 +528,11 @@ public class GambleCmds {
             }
 
             var oldMoney = player.getCurrentMoney();
-            player.currentMoney(Math.max(0, player.getCurrentMoney() - i));
+            // The bet could've been spent somewhere else since we checked, in which case none of this is saved.
+            if (!player.removeMoney(Math.min(i, oldMoney)) || !player.updateAllChanged()) {
+                ctx.sendLocalized("commands.gamble.not_enough_money", EmoteReference.ERROR2);
+                return;
+            }
 
             stats.incrementGambleLose();
             stats.updateAllChanged();
@@ -538,7 +542,6 @@ public class GambleCmds {
             );
         }
 
-        player.locked(false);
         player.updateAllChanged();
     }
 }
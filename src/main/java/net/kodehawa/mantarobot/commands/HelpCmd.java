@@ -380,6 +380,7 @@ public class HelpCmd {
 
     private static void buildHelpSlash(SlashContext ctx) {
         var dbGuild = ctx.getDBGuild();
+        var permissions = MantaroData.db().getCommandPermissions(ctx.getGuild());
         var dbUser = ctx.getDBUser();
         var languageContext = ctx.getLanguageContext();
 
@@ -426,7 +427,7 @@ public class HelpCmd {
                 .forEach(c ->
                         embed.addField(
                                 languageContext.get(c.toString()) + " " + languageContext.get("commands.help.commands") + ":",
-                                forTypeSlash(ctx.getChannel(), dbGuild, c), false
+                                forTypeSlash(ctx.getChannel(), permissions, c), false
                         )
                 );
 
@@ -442,6 +443,7 @@ public class HelpCmd {
 
     private static void buildHelp(TextContext ctx, CommandCategory category) {
         var dbGuild = ctx.getDBGuild();
+        var permissions = MantaroData.db().getCommandPermissions(ctx.getGuild());
         var dbUser = ctx.getDBUser();
         var languageContext = ctx.getLanguageContext();
 
@@ -501,7 +503,7 @@ public class HelpCmd {
                 .forEach(c ->
                         embed.addField(
                                 languageContext.get(c.toString()) + " " + languageContext.get("commands.help.commands") + ":",
-                                forType(ctx.getChannel(), dbGuild, c), false
+                                forType(ctx.getChannel(), permissions, c), false
                         )
                 );
 
@@ -309,12 +309,15 @@ public class ItemCmds {
                     player.markCampaignAsSeen();
                 }
 
+                // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                if (!player.removeMoney(castCost * amountSpecified) || !player.updateAllChanged()) {
+                    ctx.reply("commands.cast.not_enough_money", EmoteReference.ERROR, castCost * amountSpecified);
+                    return;
+                }
+
                 user.increaseDustLevel(3);
                 user.updateAllChanged();
 
-                player.removeMoney(castCost * amountSpecified);
-                player.updateAllChanged();
-
                 PlayerStats stats = ctx.getPlayerStats();
                 stats.incrementCraftedItems(amountSpecified);
                 stats.updateAllChanged();
@@ -528,12 +531,14 @@ public class ItemCmds {
                 player.processItem(brokenItem, -1);
                 player.processItem(repairedItem, 1);
 
+                if (!player.removeMoney(repairCost) || !player.updateAllChanged()) {
+                    ctx.reply("commands.repair.not_enough_money", EmoteReference.ERROR, ctx.getPlayer().getCurrentMoney(), repairCost);
+                    return;
+                }
+
                 user.increaseDustLevel(4);
                 user.updateAllChanged();
 
-                player.removeMoney(repairCost);
-                player.updateAllChanged();
-
                 var stats = ctx.getPlayerStats();
                 stats.incrementRepairedItems();
                 stats.updateAllChanged();
@@ -684,12 +689,14 @@ public class ItemCmds {
                 player.processItem(toReturn, 1);
                 player.processItem(broken, -1);
 
+                if (!player.removeMoney(salvageCost) || !player.updateAllChanged()) {
+                    ctx.reply("commands.salvage.not_enough_money", EmoteReference.ERROR, ctx.getPlayer().getCurrentMoney(), salvageCost);
+                    return;
+                }
+
                 user.increaseDustLevel(3);
                 user.updateAllChanged();
 
-                player.removeMoney(salvageCost);
-                player.updateAllChanged();
-
                 var stats = ctx.getPlayerStats();
                 stats.incrementSalvagedItems();
                 stats.updateAllChanged();
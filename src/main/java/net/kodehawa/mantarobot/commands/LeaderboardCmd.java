@@ -19,8 +19,8 @@ package net.kodehawa.mantarobot.commands;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.eventbus.Subscribe;
-import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Sorts;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
@@ -39,25 +39,20 @@ import net.kodehawa.mantarobot.core.command.meta.Module;
 import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.db.entities.MongoUser;
-import net.kodehawa.mantarobot.db.entities.Player;
-import net.kodehawa.mantarobot.db.entities.PlayerStats;
+import net.kodehawa.mantarobot.db.LeaderboardIndex;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
-import org.bson.conversions.Bson;
 import redis.clients.jedis.Jedis;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 @Module
 public class LeaderboardCmd {
@@ -93,30 +88,16 @@ public class LeaderboardCmd {
             @Override
             protected void process(SlashContext ctx) {
                 if (config.premiumBot) {
-                    var tableName = "players";
-                    var moneyLeaderboard = getLeaderboard(tableName, Player.class, Sorts.descending("oldMoney"));
-                    send(ctx,
-                            generateLeaderboardEmbed(ctx,
-                                    ctx.getLanguageContext().get("commands.leaderboard.inner.money_old").formatted(EmoteReference.MONEY),
-                                    "commands.leaderboard.money", moneyLeaderboard,
-                                    player -> Pair.of(getMember(ctx, player.getId()),
-                                            String.valueOf(player.getOldMoney())), "%s**%s** - $%,d"
-                            ).build()
+                    sendLeaderboard(ctx, LeaderboardIndex.Board.OLD_MONEY,
+                            ctx.getLanguageContext().get("commands.leaderboard.inner.money_old").formatted(EmoteReference.MONEY),
+                            "commands.leaderboard.money", "%s**%s** - $%,d"
                     );
                     return;
                 }
 
-                var tableName = "players";
-                var moneyLeaderboard = getLeaderboard(tableName, Player.class, Sorts.descending("newMoney"));
-                send(ctx,
-                        generateLeaderboardEmbed(
-                                ctx, ctx.getLanguageContext().get("commands.leaderboard.inner.money").formatted(EmoteReference.MONEY),
-                                "commands.leaderboard.money", moneyLeaderboard,
-                                player -> {
-                                    var money = player.getNewMoney();
-                                    return Pair.of(getMember(ctx, player.getId()), String.valueOf(money));
-                                }, "%s**%s** - $%,d"
-                        ).build()
+                sendLeaderboard(ctx, LeaderboardIndex.Board.MONEY,
+                        ctx.getLanguageContext().get("commands.leaderboard.inner.money").formatted(EmoteReference.MONEY),
+                        "commands.leaderboard.money", "%s**%s** - $%,d"
                 );
             }
         }
@@ -126,13 +107,9 @@ public class LeaderboardCmd {
         public static class Gamble extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var gambleLeaderboard = getLeaderboard("playerstats", PlayerStats.class, Sorts.descending("gambleWins"));
-                send(ctx,
-                        generateLeaderboardEmbed(ctx,
-                                ctx.getLanguageContext().get("commands.leaderboard.inner.gamble").formatted(EmoteReference.MONEY),
-                                "commands.leaderboard.gamble", gambleLeaderboard,
-                                stats -> Pair.of(getMember(ctx, stats.getId()), String.valueOf(stats.getGambleWins())), "%s**%s** - %,d"
-                        ).build()
+                sendLeaderboard(ctx, LeaderboardIndex.Board.GAMBLE_WINS,
+                        ctx.getLanguageContext().get("commands.leaderboard.inner.gamble").formatted(EmoteReference.MONEY),
+                        "commands.leaderboard.gamble", "%s**%s** - %,d"
                 );
             }
         }
@@ -142,14 +119,9 @@ public class LeaderboardCmd {
         public static class Slots extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var slotsLeaderboard = getLeaderboard("playerstats", PlayerStats.class, Sorts.descending("slotsWins"));
-                send(ctx,
-                        generateLeaderboardEmbed(ctx,
-                                ctx.getLanguageContext().get("commands.leaderboard.inner.slots").formatted(EmoteReference.MONEY),
-                                "commands.leaderboard.slots", slotsLeaderboard,
-                                stats -> Pair.of(getMember(ctx, stats.getId()),
-                                        String.valueOf(stats.getSlotsWins())), "%s**%s** - %,d"
-                        ).build()
+                sendLeaderboard(ctx, LeaderboardIndex.Board.SLOTS_WINS,
+                        ctx.getLanguageContext().get("commands.leaderboard.inner.slots").formatted(EmoteReference.MONEY),
+                        "commands.leaderboard.slots", "%s**%s** - %,d"
                 );
             }
         }
@@ -159,14 +131,9 @@ public class LeaderboardCmd {
         public static class Reputation extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var tableName = "players";
-                var reputationLeaderboard = getLeaderboard(tableName, Player.class, Sorts.descending("reputation"));
-                send(ctx,
-                        generateLeaderboardEmbed(ctx,
-                                ctx.getLanguageContext().get("commands.leaderboard.inner.rep").formatted(EmoteReference.REP),
-                                "commands.leaderboard.reputation", reputationLeaderboard,
-                                player -> Pair.of(getMember(ctx, player.getId()), String.valueOf(player.getReputation())), "%s**%s** - %,d")
-                                .build()
+                sendLeaderboard(ctx, LeaderboardIndex.Board.REPUTATION,
+                        ctx.getLanguageContext().get("commands.leaderboard.inner.rep").formatted(EmoteReference.REP),
+                        "commands.leaderboard.reputation", "%s**%s** - %,d"
                 );
             }
         }
@@ -176,16 +143,9 @@ public class LeaderboardCmd {
         public static class Daily extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var dailyLeaderboard = getLeaderboard("players", Player.class, Sorts.descending("dailyStreak"));
-                send(ctx,
-                        generateLeaderboardEmbed(ctx,
-                                ctx.getLanguageContext().get("commands.leaderboard.inner.streak")
-                                        .formatted(EmoteReference.POPPER), "commands.leaderboard.daily", dailyLeaderboard,
-                                player -> {
-                                    var streak = player.getDailyStreak();
-                                    return Pair.of(getMember(ctx, player.getId()), String.valueOf(streak));
-                                }, "%s**%s** - %sx")
-                                .build()
+                sendLeaderboard(ctx, LeaderboardIndex.Board.DAILY_STREAK,
+                        ctx.getLanguageContext().get("commands.leaderboard.inner.streak").formatted(EmoteReference.POPPER),
+                        "commands.leaderboard.daily", "%s**%s** - %sx"
                 );
             }
         }
@@ -195,16 +155,9 @@ public class LeaderboardCmd {
         public static class Claim extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var claimLeaderboard = getLeaderboard("users", MongoUser.class, Sorts.descending("timesClaimed"));
-                send(ctx,
-                        generateLeaderboardEmbed(ctx,
-                                ctx.getLanguageContext().get("commands.leaderboard.inner.claim").formatted(EmoteReference.HEART),
-                                "commands.leaderboard.claim", claimLeaderboard,
-                                user -> {
-                                    var timesClaimed = user.getTimesClaimed();
-                                    return Pair.of(getMember(ctx, user.getId()), String.valueOf(timesClaimed));
-                                }, "%s**%s** - %,d")
-                                .build()
+                sendLeaderboard(ctx, LeaderboardIndex.Board.TIMES_CLAIMED,
+                        ctx.getLanguageContext().get("commands.leaderboard.inner.claim").formatted(EmoteReference.HEART),
+                        "commands.leaderboard.claim", "%s**%s** - %,d"
                 );
             }
         }
@@ -214,36 +167,55 @@ public class LeaderboardCmd {
         public static class Games extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var tableName = "players";
-                var gameLeaderboard = getLeaderboard(tableName, Player.class, Sorts.descending("gamesWon"));
-                send(ctx,
-                        generateLeaderboardEmbed(ctx,
-                                ctx.getLanguageContext().get("commands.leaderboard.inner.game").formatted(EmoteReference.ZAP),
-                                "commands.leaderboard.game", gameLeaderboard,
-                                player -> {
-                                    var gamesWon = player.getGamesWon();
-                                    return Pair.of(getMember(ctx, player.getId()), String.valueOf(gamesWon));
-                                }, "%s**%s** - %,d")
-                                .build()
+                sendLeaderboard(ctx, LeaderboardIndex.Board.GAMES_WON,
+                        ctx.getLanguageContext().get("commands.leaderboard.inner.game").formatted(EmoteReference.ZAP),
+                        "commands.leaderboard.game", "%s**%s** - %,d"
                 );
             }
         }
     }
 
-    private static <T> AggregateIterable<T> getLeaderboard(String table, Class<T> deserialize, Bson sortFunction) {
-        // Somehow using an index is automatic?
-        return MantaroData.db().dbMantaro().getCollection(table, deserialize)
+    private static void sendLeaderboard(IContext ctx, LeaderboardIndex.Board board, String description,
+                                        String leaderboardKey, String format) {
+        var leaderboards = MantaroData.db().getLeaderboards();
+        var entries = leaderboards.top(board, 15);
+        // Hasn't been built yet, the master node will get to it.
+        if (entries == null) {
+            entries = getLeaderboard(board);
+        }
+
+        var embed = generateLeaderboardEmbed(ctx, description, leaderboardKey, entries, format);
+        var rank = leaderboards.rank(board, ctx.getAuthor().getId());
+        if (rank > 0) {
+            embed.appendDescription("\n\n" + ctx.getLanguageContext().get("commands.leaderboard.own_rank").formatted(EmoteReference.TALKING, rank));
+        }
+
+        send(ctx, embed.build());
+    }
+
+    private static List<LeaderboardIndex.Entry> getLeaderboard(LeaderboardIndex.Board board) {
+        var documents = MantaroData.db().dbMantaro().getCollection(board.getTable())
                 .aggregate(List.of(
-                        Aggregates.sort(sortFunction),
-                        Aggregates.limit(15))
+                        Aggregates.sort(Sorts.descending(board.getField())),
+                        Aggregates.limit(15),
+                        Aggregates.project(Projections.include(board.getField())))
                 );
+
+        List<LeaderboardIndex.Entry> entries = new ArrayList<>();
+        for (var document : documents) {
+            var value = document.get(board.getField());
+            entries.add(new LeaderboardIndex.Entry(
+                    String.valueOf(document.get("_id")), value instanceof Number number ? number.longValue() : 0
+            ));
+        }
+
+        return entries;
     }
 
-    private static <T> EmbedBuilder generateLeaderboardEmbed(IContext ctx, String description, String leaderboardKey,
-                                                             AggregateIterable<T> lbObject,
-                                                             Function<T, Pair<CachedLeaderboardMember, String>> mapFunction,
-                                                             String format) {
+    private static EmbedBuilder generateLeaderboardEmbed(IContext ctx, String description, String leaderboardKey,
+                                                         List<LeaderboardIndex.Entry> entries, String format) {
         var languageContext = ctx.getLanguageContext();
+        var members = getMembers(ctx, entries.stream().map(LeaderboardIndex.Entry::id).toList());
         return new EmbedBuilder()
                 .setAuthor(languageContext.get("commands.leaderboard.header"),
                         null,
@@ -251,11 +223,10 @@ public class LeaderboardCmd {
                 ).setDescription(description)
                 .addField(
                         languageContext.get(leaderboardKey),
-                        StreamSupport.stream(lbObject.spliterator(), false)
-                                .map(mapFunction)
-                                .filter(p -> Objects.nonNull(p.getKey()))
-                                .map(p -> {
-                                    final var lbMember = p.getKey();
+                        entries.stream()
+                                .filter(entry -> members.containsKey(entry.id()))
+                                .map(entry -> {
+                                    final var lbMember = members.get(entry.id());
                                     //This is... an interesting place to do it lol
                                     if (lbMember.getId() == ctx.getAuthor().getIdLong()) {
                                         var player = MantaroData.db().getPlayer(ctx.getAuthor());
@@ -266,7 +237,7 @@ public class LeaderboardCmd {
                                     return format.formatted(
                                             EmoteReference.BLUE_SMALL_MARKER,
                                             lbMember.getTagOrDisplay() + (config.isOwner(ctx.getAuthor()) ? "(" + lbMember.getId() + ")" : ""),
-                                            StringUtils.isNumeric(p.getValue()) ? Long.parseLong(p.getValue()) : p.getValue()
+                                            entry.value()
                                     );
                                 })
                                 .collect(Collectors.joining("\n")),
@@ -278,7 +249,7 @@ public class LeaderboardCmd {
     }
 
     /**
-     * Caches a user in redis if they're in the leaderboard. This speeds up User lookup times tenfold.
+     * Caches users in redis if they're in the leaderboard. This speeds up User lookup times tenfold.
      * The key will expire after 48 hours in the set, then we will just re-cache it as needed.
      * This should also take care of username changes.
      * <p>
@@ -287,51 +258,66 @@ public class LeaderboardCmd {
      * <p>
      * This method is necessary to avoid calling Discord every single time we call a leaderboard,
      * since this might create hundreds of API requests in a few seconds, causing some nice 429s.
+     * Every cached entry (and every known miss) is fetched with a single MGET.
      *
-     * @param id The id of the user.
-     * @return A instance of CachedLeaderboardMember.
-     * This can either be retrieved from Redis or cached on the spot if the cache didn't exist for it.
+     * @param ids The ids of the users.
+     * @return The CachedLeaderboardMember of every user we could find, by id.
+     * These can either be retrieved from Redis or cached on the spot if the cache didn't exist for them.
      */
-    private static CachedLeaderboardMember getMember(IContext ctx, String id) {
+    private static Map<String, CachedLeaderboardMember> getMembers(IContext ctx, List<String> ids) {
+        Map<String, CachedLeaderboardMember> members = new HashMap<>();
+        if (ids.isEmpty()) {
+            return members;
+        }
+
         try(Jedis jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            var savedTo = "cachedlbuser:" + id;
-            var missed = "lbmiss:" + id;
-
-            var json = jedis.get(savedTo);
-            if (json == null) {
-                // No need to keep trying missed entries for a while. Entry should have a TTL of 12 hours.
-                if (jedis.get(missed) != null) {
-                    return null;
-                }
+            var keys = new String[ids.size() * 2];
+            for (int i = 0; i < ids.size(); i++) {
+                keys[i * 2] = "cachedlbuser:" + ids.get(i);
+                keys[i * 2 + 1] = "lbmiss:" + ids.get(i);
+            }
 
-                // Sadly a .complete() call for a User won't fill the internal cache, as JDA has no way to TTL it, instead, we will add it
-                // to our own cache in Redis, and expire it in 48 hours to avoid it filling up endlessly.
-                // This is to avoid having to do calls to discord all the time a leaderboard is retrieved, and only do the calls whenever
-                // it's absolutely needed, or when we need to re-populate the cache.
-                var user = ctx.getShardManager().retrieveUserById(id).complete();
-
-                // If no user was found, we need to return null. This is later handled on generateLeaderboardEmbed.
-                if (user == null) {
-                    jedis.set(missed, "1");
-                    jedis.expire(missed, TimeUnit.HOURS.toSeconds(12));
-                    return null;
-                }
+            var values = jedis.mget(keys);
+            for (int i = 0; i < ids.size(); i++) {
+                try {
+                    var id = ids.get(i);
+                    var json = values.get(i * 2);
+                    if (json != null) {
+                        members.put(id, JsonDataManager.fromJson(json, CachedLeaderboardMember.class));
+                        continue;
+                    }
 
-                CachedLeaderboardMember cached = new CachedLeaderboardMember(
-                        user.getIdLong(), user.getName(), user.getDiscriminator(), System.currentTimeMillis()
-                );
-                jedis.set(savedTo, JsonDataManager.toJson(cached));
+                    // No need to keep trying missed entries for a while. Entry should have a TTL of 12 hours.
+                    if (values.get(i * 2 + 1) != null) {
+                        continue;
+                    }
+
+                    // Sadly a .complete() call for a User won't fill the internal cache, as JDA has no way to TTL it, instead, we will add it
+                    // to our own cache in Redis, and expire it in 48 hours to avoid it filling up endlessly.
+                    // This is to avoid having to do calls to discord all the time a leaderboard is retrieved, and only do the calls whenever
+                    // it's absolutely needed, or when we need to re-populate the cache.
+                    var user = ctx.getShardManager().retrieveUserById(id).complete();
 
-                // Set the value to expire in 48 hours.
-                jedis.expire(savedTo, TimeUnit.HOURS.toSeconds(48));
-                return cached;
-            } else {
-                return JsonDataManager.fromJson(json, CachedLeaderboardMember.class);
+                    // If no user was found, it's left out. This is later handled on generateLeaderboardEmbed.
+                    if (user == null) {
+                        jedis.setex(keys[i * 2 + 1], TimeUnit.HOURS.toSeconds(12), "1");
+                        continue;
+                    }
+
+                    CachedLeaderboardMember cached = new CachedLeaderboardMember(
+                            user.getIdLong(), user.getName(), user.getDiscriminator(), System.currentTimeMillis()
+                    );
+
+                    // Set the value to expire in 48 hours.
+                    jedis.setex(keys[i * 2], TimeUnit.HOURS.toSeconds(48), JsonDataManager.toJson(cached));
+                    members.put(id, cached);
+                } catch (JsonProcessingException e) { // This would be odd, really. Only leaves out this one.
+                    e.printStackTrace();
+                }
             }
-        } catch (JsonProcessingException e) { // This would be odd, really.
-            e.printStackTrace();
-            return null;
         }
+
+        return members;
     }
 
     private static void send(IContext ctx, MessageEmbed embed) {
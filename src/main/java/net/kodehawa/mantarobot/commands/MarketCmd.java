@@ -666,7 +666,11 @@ public class MarketCmd {
                 player.processItem(itemToBuy, itemNumber);
                 player.addBadgeIfAbsent(Badge.BUYER);
                 player.marketUsed(player.getMarketUsed() + 1);
-                player.updateAllChanged();
+                // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                if (!player.updateAllChanged()) {
+                    ctx.sendLocalized("commands.market.buy.not_enough_money", EmoteReference.STOP, ctx.getPlayer().getCurrentMoney(), value);
+                    return;
+                }
 
                 var playerMoney = player.getCurrentMoney();
                 var message = "commands.market.buy.success";
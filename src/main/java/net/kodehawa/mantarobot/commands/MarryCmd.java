@@ -547,9 +547,11 @@ public class MarryCmd {
                         }
 
                         playerConfirmed.processItem(ItemReference.HOUSE, -1);
-                        playerConfirmed.removeMoney(housePrice);
-
-                        playerConfirmed.updateAllChanged();
+                        // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                        if (!playerConfirmed.removeMoney(housePrice) || !playerConfirmed.updateAllChanged()) {
+                            hook.editOriginal(languageContext.get("commands.marry.buyhouse.not_enough_money")).setComponents().queue();
+                            return Operation.COMPLETED;
+                        }
 
                         marriageConfirmed.house(true);
                         marriageConfirmed.houseName(finalContent);
@@ -641,8 +643,12 @@ public class MarryCmd {
                         }
 
                         playerConfirmed.processItem(ItemReference.CAR, -1);
-                        playerConfirmed.removeMoney(carPrice);
-                        playerConfirmed.updateAllChanged();
+                        // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                        if (!playerConfirmed.removeMoney(carPrice) || !playerConfirmed.updateAllChanged()) {
+                            hook.editOriginal(languageContext.get("commands.marry.buycar.not_enough_money"))
+                                    .setComponents().queue();
+                            return Operation.COMPLETED;
+                        }
 
                         marriageConfirmed.car(true);
                         marriageConfirmed.carName(finalContent);
@@ -269,7 +269,7 @@ public class MoneyCmds {
                 return;
             }
 
-            if (ctx.getMantaroData().getBlackListedUsers().contains(otherUser.getId())) {
+            if (ctx.db().isUserBlacklisted(otherUser.getId())) {
                 ctx.sendLocalized("commands.transfer.blacklisted_transfer", EmoteReference.ERROR);
                 return;
             }
@@ -459,9 +459,12 @@ public class PetCmds {
                 }
 
                 pet.setDust(0);
-                player.removeMoney(price);
                 player.markPetChange();
-                player.updateAllChanged();
+                // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                if (!player.removeMoney(price) || !player.updateAllChanged()) {
+                    ctx.replyStripped("commands.pet.clean.not_enough_money", EmoteReference.ERROR, price, pet.getName());
+                    return;
+                }
 
                 if (player.getActivePetChoice(marriage) == PetChoice.MARRIAGE) {
                     marriage.markPetChange();
@@ -763,13 +766,8 @@ public class PetCmds {
                                 )).setComponents().queue();
                                 return Operation.COMPLETED;
                             }
-
-                            marriageConfirmed.locked(false);
-                            marriageConfirmed.pet(new HousePet(finalName, toBuy));
-                            marriageConfirmed.updateAllChanged();
                         }
 
-                        playerConfirmed.removeMoney(toBuy.getCost());
                         playerConfirmed.processItem(ItemReference.PET_HOUSE, -1);
 
                         if (petChoiceConfirmed == PetChoice.PERSONAL) {
@@ -785,9 +783,25 @@ public class PetCmds {
 
                         playerConfirmed.locked(false);
                         playerConfirmed.markPetChange();
-                        playerConfirmed.updateAllChanged();
+                        // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                        if (!playerConfirmed.removeMoney(toBuy.getCost()) || !playerConfirmed.updateAllChanged()) {
+                            // Not even the unlock.
+                            var playerUnlocked = ctx.getPlayer();
+                            playerUnlocked.locked(false);
+                            playerUnlocked.updateAllChanged();
+                            if (marriageConfirmed != null) {
+                                marriageConfirmed.locked(false);
+                                marriageConfirmed.updateAllChanged();
+                            }
+
+                            hook.editOriginal(lang.get("commands.pet.buy.not_enough_money").formatted(EmoteReference.ERROR, toBuy.getCost())).setComponents().queue();
+                            return Operation.COMPLETED;
+                        }
 
                         if (petChoiceConfirmed == PetChoice.MARRIAGE) {
+                            marriageConfirmed.locked(false);
+                            marriageConfirmed.pet(new HousePet(finalName, toBuy));
+                            marriageConfirmed.updateAllChanged();
                             hook.editOriginal(lang.get("commands.pet.buy.success").formatted(
                                     EmoteReference.POPPER, toBuy.getEmoji(), ctx.getLanguageContext().get(toBuy.getTranslationKey()), finalName,
                                     toBuy.getCost(), petChoiceConfirmed.getReadableName()
@@ -865,14 +879,20 @@ public class PetCmds {
 
                 var oldName = pet.getName();
                 pet.setName(newName);
-                player.removeMoney(cost);
+                var isMarriagePet = player.getActivePetChoice(marriage) == PetChoice.MARRIAGE;
+                if (!isMarriagePet) {
+                    player.markPetChange();
+                }
 
-                if (player.getActivePetChoice(marriage) == PetChoice.MARRIAGE) {
+                // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                if (!player.removeMoney(cost) || !player.updateAllChanged()) {
+                    ctx.reply("commands.pet.rename.not_enough_money", EmoteReference.ERROR, cost, ctx.getPlayer().getCurrentMoney());
+                    return;
+                }
+
+                if (isMarriagePet) {
                     marriage.markPetChange();
                     marriage.updateAllChanged();
-                } else {
-                    player.markPetChange();
-                    player.updateAllChanged();
                 }
 
                 ctx.replyStripped("commands.pet.rename.success", EmoteReference.POPPER, oldName, newName, cost);
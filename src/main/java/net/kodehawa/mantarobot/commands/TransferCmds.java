@@ -35,6 +35,7 @@ import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
+import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimit;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 
 import java.time.temporal.ChronoUnit;
@@ -162,11 +163,24 @@ public class TransferCmds {
                 return;
             }
 
-            if (!RatelimitUtils.ratelimit(transferRatelimiter, ctx))
-                return;
-
+            // Both in one round trip, and the party one only gets checked if the transfer one goes through.
+            // RatelimitUtils doesn't touch the transfer one when ratelimits aren't handled, so then it's the party one alone.
             var partyKey = ctx.getAuthor().getId() + ":" + giveTo.getId();
-            var rl = partyRateLimiter.limit(partyKey);
+            RateLimit rl;
+            if (MantaroData.config().get().isHandleRatelimits()) {
+                var rateLimits = IncreasingRateLimiter.limit(
+                        transferRatelimiter.check(ctx.getAuthor().getId()),
+                        partyRateLimiter.check(partyKey)
+                );
+
+                if (!RatelimitUtils.ratelimit(rateLimits[0], ctx, false))
+                    return;
+
+                rl = rateLimits[1];
+            } else {
+                rl = partyRateLimiter.limit(partyKey);
+            }
+
             if (rl.getTriesLeft() < 1) {
                 ctx.reply(EmoteReference.STOPWATCH +
                         ctx.getLanguageContext().get("commands.transfer.party").formatted(giveTo.getName()) +
@@ -180,10 +194,15 @@ public class TransferCmds {
 
             var amountTransfer = Math.round(toSend * 0.92);
             if (toTransfer.addMoney(amountTransfer)) {
-                transferPlayer.removeMoney(toSend);
-                transferPlayer.updateAllChanged();
+                // Take the money out first: if it was spent somewhere else in the meantime, this won't go through,
+                // and the receiver never gets saved.
+                if (!transferPlayer.removeMoney(toSend) || !transferPlayer.updateAllChanged()) {
+                    ctx.reply("commands.transfer.no_money_notice", EmoteReference.ERROR);
+                    return;
+                }
 
                 toTransfer.updateAllChanged();
+                // Not checked along with the others: it only counts once the money actually moved.
                 transferRatelimiter.limit(toTransfer.getId());
                 ctx.reply("commands.transfer.success", EmoteReference.CORRECT, toSend, amountTransfer, giveTo.getAsMention());
             } else {
@@ -371,12 +371,17 @@ public class WaifuCmd {
                 }
 
                 claimerPlayer.addBadgeIfAbsent(Badge.WAIFU_CLAIMER);
+                //Massive saving operation owo.
+                //The money goes first: if it was spent somewhere else since we checked, nothing else is saved.
+                if (!claimerPlayer.updateAllChanged()) {
+                    ctx.reply("commands.waifu.claim.not_enough_money", EmoteReference.ERROR, waifuFinalValue);
+                    return;
+                }
+
                 if (badgesAdded || claimedPlayer.addBadgeIfAbsent(Badge.CLAIMED)) {
                     claimedPlayer.updateAllChanged();
                 }
 
-                //Massive saving operation owo.
-                claimerPlayer.updateAllChanged();
                 claimedUser.updateAllChanged();
                 claimerUser.updateAllChanged();
 
@@ -452,10 +457,14 @@ public class WaifuCmd {
                             return Operation.COMPLETED;
                         }
 
-                        p.removeMoney(valuePayment);
+                        // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                        if (!p.removeMoney(valuePayment) || !p.updateAllChanged()) {
+                            ctx.edit("commands.waifu.unclaim.not_enough_money", EmoteReference.ERROR);
+                            return Operation.COMPLETED;
+                        }
+
                         dbUser.removeWaifu(userId);
                         dbUser.updateAllChanged();
-                        p.updateAllChanged();
 
                         ctx.edit("commands.waifu.unclaim.success", EmoteReference.CORRECT, name, valuePayment);
                         return Operation.COMPLETED;
@@ -500,10 +509,14 @@ public class WaifuCmd {
                     return;
                 }
 
-                player.removeMoney(finalValue);
+                // Money could've been spent somewhere else since we checked, in which case none of this is saved.
+                if (!player.removeMoney(finalValue) || !player.updateAllChanged()) {
+                    ctx.reply("commands.waifu.buyslot.not_enough_money", EmoteReference.ERROR, finalValue);
+                    return;
+                }
+
                 user.waifuSlots(currentSlots + 1);
                 user.updateAllChanged();
-                player.updateAllChanged();
 
                 ctx.reply("commands.waifu.buyslot.success",
                         EmoteReference.CORRECT, finalValue, user.getWaifuSlots(), (user.getWaifuSlots() - user.waifuAmount())
@@ -297,6 +297,7 @@ public class Item {
 
     public void registerItemAlias(String alias) {
         aliases.add(alias);
+        ItemIndex.aliasRegistered(this, alias);
     }
 
     public boolean isPetOnly() {
@@ -39,7 +39,6 @@ import net.kodehawa.mantarobot.db.entities.MongoUser;
 import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.utils.Tuple;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
-import net.kodehawa.mantarobot.utils.commands.RandomCollection;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 import org.slf4j.Logger;
@@ -47,13 +46,11 @@ import org.slf4j.LoggerFactory;
 
 import java.security.SecureRandom;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -86,7 +83,7 @@ public class ItemHelper {
                 return false;
 
             if (dbUser.getDustLevel() >= 5) {
-                player.timesMopped(player.getTimesMopped() + 1);
+                player.incrementTimesMopped();
                 ctx.sendLocalized("general.misc_item_usage.mop", EmoteReference.DUST);
 
                 if (dbUser.getDustLevel() == 100) {
@@ -172,9 +169,7 @@ public class ItemHelper {
     }
 
     public static Optional<Item> fromEmoji(String emoji) {
-        return Stream.of(ItemReference.ALL)
-                .filter(item -> isMatchingEmoji(item, emoji))
-                .findFirst();
+        return fromIndex(ItemIndex.idOfEmoji(emoji));
     }
 
     public static Item fromId(int id) {
@@ -182,34 +177,46 @@ public class ItemHelper {
     }
 
     public static Optional<Item> fromName(String name, I18nContext languageContext) {
-        return Arrays.stream(ItemReference.ALL)
-                .filter(item -> isMatchingItemName(item, name, languageContext))
-                .findFirst();
+        return fromIndex(ItemIndex.idOfName(name, languageContext));
     }
 
     public static Optional<Item> fromTranslationSlice(String slice) {
-        return Arrays.stream(ItemReference.ALL)
-                .filter(item -> item.getTranslatedName().equals("items." + slice))
-                .findFirst();
+        return fromIndex(ItemIndex.idOfSlice(slice));
+    }
+
+    /**
+     * @return The id of the item with this translation slice (what inventories are stored as), or -1 if there's none.
+     */
+    public static int idOfTranslationSlice(String slice) {
+        return ItemIndex.idOfSlice(slice);
+    }
+
+    public static String translationSliceOf(int id) {
+        return ItemIndex.sliceOf(id);
+    }
+
+    public static int itemCount() {
+        return ItemIndex.size();
     }
 
     public static Optional<Item> fromAlias(String name) {
-        return Arrays.stream(ItemReference.ALL).filter(item -> isMatchingAlias(item, name)).findFirst();
+        return fromIndex(ItemIndex.idOfAlias(name));
     }
 
     public static Optional<Item> fromAliasList(String name) {
-        return Arrays.stream(ItemReference.ALL).filter(item -> hasMatchingAlias(item, name)).findFirst();
+        return fromIndex(ItemIndex.idOfAliasList(name));
     }
 
     public static Optional<Item> fromPartialName(String name, I18nContext languageContext) {
-        return Arrays.stream(ItemReference.ALL)
-                .filter(item -> isPartialNameMatch(item, name, languageContext))
-                .findFirst();
+        return fromIndex(ItemIndex.idOfPartialName(name, languageContext));
+    }
+
+    private static Optional<Item> fromIndex(int id) {
+        return id == -1 ? Optional.empty() : Optional.of(fromId(id));
     }
 
     public static int idOf(Item item) {
-        return Arrays.asList(ItemReference.ALL)
-                .indexOf(item);
+        return ItemIndex.idOf(item);
     }
 
     static boolean openLootCrate(IContext ctx, ItemType.LootboxType type, int item, EmoteReference typeEmote, int bound) {
@@ -285,7 +292,7 @@ public class ItemHelper {
 
         player.processItem(ItemReference.LOOT_CRATE_KEY, -amount);
         player.processItem(crate, -amount);
-        player.cratesOpened(player.getCratesOpened() + amount);
+        player.addCratesOpened(amount);
         player.updateAllChanged();
 
         I18nContext lang = ctx.getLanguageContext();
@@ -311,117 +318,20 @@ public class ItemHelper {
                 typeEmote.getDiscordNotation() + " ", amount, show, extra);
     }
 
-    @SuppressWarnings("fallthrough")
     private static List<Item> selectItems(int amount, ItemType.LootboxType type) {
-        List<Item> common = handleItemDrop(i -> i.getItemType() == ItemType.COMMON, true);
-        List<Item> rare = handleItemDrop(i -> i.getItemType() == ItemType.RARE);
-        List<Item> premium = handleItemDrop(i -> i.getItemType() == ItemType.PREMIUM);
-
-        List<Item> mine = handleItemDrop(i ->
-                (i.getItemType() == ItemType.MINE ||
-                i.getItemType() == ItemType.CAST_OBTAINABLE ||
-                i.getItemType() == ItemType.MINE_PICK) && i != ItemReference.ROCK, true
-        );
-
-        List<Item> fish = handleItemDrop(i -> i.getItemType() == ItemType.FISHING ||  i.getItemType() == ItemType.FISHROD, true);
-        List<Item> chop = handleItemDrop(i -> i.getItemType() == ItemType.CHOP_DROP ||  i.getItemType() == ItemType.CHOP_AXE, true);
-
-        List<Item> premiumMine = handleItemDrop(i ->
-                i.getItemType() == ItemType.CAST_MINE ||
-                i.getItemType() == ItemType.MINE_PICK ||
-                i.getItemType() == ItemType.MINE ||
-                i.getItemType() == ItemType.MINE_RARE ||
-                i.getItemType() == ItemType.CAST_OBTAINABLE ||
-                i.getItemType() == ItemType.MINE_RARE_PICK
-        );
-
-        List<Item> premiumFish = handleItemDrop(i ->
-                i.getItemType() == ItemType.FISHROD ||
-                i.getItemType() == ItemType.FISHROD_RARE ||
-                i.getItemType() == ItemType.FISHING ||
-                i.getItemType() == ItemType.FISHING_RARE
-        );
-
-        List<Item> premiumChop = handleItemDrop(i ->
-                i.getItemType() == ItemType.CHOP_DROP ||
-                        i.getItemType() == ItemType.CHOP_AXE ||
-                        i.getItemType() == ItemType.CHOP_RARE_AXE
-        );
-
-        RandomCollection<Item> items = new RandomCollection<>();
-        switch (type) {
-            case PREMIUM:
-                premium.forEach(i -> items.add(2, i));
-            case RARE:
-                rare.forEach(i -> items.add(5, i));
-            case COMMON:
-                common.forEach(i -> items.add(20, i));
-                break; //fallthrough intended until here.
-            case CHOP_PREMIUM:
-                premiumChop.forEach(i -> items.add(8, i));
-                break;
-            case FISH_PREMIUM:
-                premiumFish.forEach(i -> items.add(8, i));
-                break;
-            case MINE_PREMIUM:
-                premiumMine.forEach(i -> items.add(8, i));
-                break;
-            case MINE:
-                mine.forEach(i -> items.add(8, i));
-                break;
-            case FISH:
-                fish.forEach(i -> items.add(8, i));
-                break;
-            case CHOP:
-                chop.forEach(i -> items.add(8, i));
+        var table = LootTables.crate(type);
+        List<Item> list = new ArrayList<>(amount);
+        if (table.isEmpty()) {
+            return list;
         }
 
-        List<Item> list = new ArrayList<>(amount);
         for (int i = 0; i < amount; i++) {
-            list.add(items.next());
+            list.add(table.next(random));
         }
 
         return list;
     }
 
-    private static List<Item> handleItemDrop(Predicate<Item> predicate) {
-        return handleItemDrop(predicate, false);
-    }
-
-
-    private static List<Item> handleItemDrop(Predicate<Item> predicate, boolean normal) {
-        List<Item> all = Arrays.stream(ItemReference.ALL)
-                .filter(i -> i.isBuyable() || i.isSellable()).toList();
-
-        return all.stream()
-                .filter(predicate)
-                .filter(item -> {
-                    // Keep in mind the chances here aren't absolute for any means,
-                    // and it depends on the RandomCollection created on selectItems
-                    if (normal) {
-                        if ((item instanceof Tiered tiered && tiered.getTier() >= 5)) {
-                            return random.nextFloat() <= 0.02f; // 2% for 5* +
-                        }
-
-                        if ((item instanceof Tiered tiered && tiered.getTier() >= 3) || item.getValue() >= 100) {
-                            return random.nextFloat() <= 0.05f;  // 5% for 3 and 4*
-                        }
-                    } else {
-                        if ((item instanceof Tiered tiered && tiered.getTier() >= 5)) {
-                            return random.nextFloat() <= 0.10f; // 10% for 5* +
-                        }
-
-                        if ((item instanceof Tiered tiered && tiered.getTier() >= 3) || item.getValue() >= 300) {
-                            return random.nextFloat() <= 0.40f; // 40% for 3* +
-                        }
-                    }
-
-                    return true;
-                })
-                .sorted(Comparator.comparingLong(i -> i.value))
-                .collect(Collectors.toList());
-    }
-
     public static boolean handleEffect(PlayerEquipment.EquipmentType type, PlayerEquipment equipment, Item item, MongoUser user) {
         boolean isEffectPresent = equipment.getCurrentEffect(type) != null;
 
@@ -582,63 +492,10 @@ public class ItemHelper {
         }
     }
 
-    private static boolean isMatchingItemName(Item item, String name, I18nContext languageContext) {
-        final var itemName = item.getName().toLowerCase().trim();
-        final var lookup = name.toLowerCase().trim();
-        final var translatedName = item.getTranslatedName();
-
-        // Either name or translated name
-        return itemName.equals(lookup) || (
-                !translatedName.isEmpty() && !languageContext.getContextLanguage().equals("en_US") &&
-                        languageContext.get(translatedName).toLowerCase().trim().equals(lookup)
-        );
-    }
-
-    private static boolean isMatchingEmoji(Item item, String emoji) {
-        return item.getEmoji().equals(emoji.replace("\ufe0f", ""));
-    }
-
-    private static boolean isMatchingAlias(Item item, String name) {
-        if (item.getAlias() == null) {
-            return false;
-        }
-        return item.getAlias()
-                .toLowerCase()
-                .trim()
-                .equals(name.toLowerCase().trim());
-    }
-
-    private static boolean hasMatchingAlias(Item item, String name) {
-        if (item.getAliases().isEmpty()) {
-            return false;
-        }
-
-        final var lookup = name.toLowerCase().trim();
-        return item.getAliases().stream().anyMatch(lookup::equals);
-    }
-
-    private static boolean isPartialNameMatch(Item item, String name, I18nContext languageContext) {
-        final var itemName = item.getName().toLowerCase().trim();
-        final var lookup = name.toLowerCase().trim();
-        final var translatedName = item.getTranslatedName();
-
-        return itemName.contains(lookup) || (
-                !translatedName.isEmpty() && !languageContext.getContextLanguage().equals("en_US") &&
-                        languageContext.get(translatedName).toLowerCase().trim().contains(lookup)
-        );
-    }
-
     public static List<Item> findFrom(Item[] items, String search, I18nContext langContext) {
         return Stream.of(items)
-                .filter(item -> {
-                    // each item should only traverse as many helper funcs as needed
-                    // so, we return as early as we can
-                    if (isMatchingEmoji(item, search)) return true;
-                    if (isMatchingAlias(item, search)) return true;
-                    if (hasMatchingAlias(item, search)) return true;
-                    if (isMatchingItemName(item, search, langContext)) return true;
-                    return isPartialNameMatch(item, search, langContext);
-                }).toList();
+                .filter(item -> ItemIndex.matches(item, search, langContext))
+                .toList();
 
     }
 
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.commands.currency.item;
+
+import net.kodehawa.mantarobot.core.command.i18n.I18nContext;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lookup tables over {@link ItemReference#ALL}, built once the first time any of them is needed.
+ * Ids are the position of the item in ALL, same as {@link ItemHelper#fromId(int)}.
+ * Whenever more than one item matches, the one with the lowest id wins, same as going through ALL in order would.
+ */
+final class ItemIndex {
+    private static final Map<Item, Integer> ids;
+    // What's stored in the database for each item (the part of the translated name after "items.").
+    private static final String[] slices;
+    private static final Map<String, Integer> slicesToIds;
+    private static final Map<String, Integer> emojis;
+    private static final Map<String, Integer> aliases;
+    private static final String[] normalizedAliases;
+    // Aliases registered through Item#registerItemAlias, which can happen after this is built.
+    private static final Map<String, Integer> aliasLists = new ConcurrentHashMap<>();
+    private static final NameIndex names;
+    // Names in other languages, by language code. Built the first time someone looks up an item in that language.
+    private static final Map<String, NameIndex> translatedNames = new ConcurrentHashMap<>();
+
+    static {
+        var all = ItemReference.ALL;
+        var idMap = new IdentityHashMap<Item, Integer>(all.length * 2);
+        var sliceArray = new String[all.length];
+        var sliceMap = new HashMap<String, Integer>(all.length * 2);
+        var emojiMap = new HashMap<String, Integer>(all.length * 2);
+        var aliasMap = new HashMap<String, Integer>(all.length * 2);
+        var aliasArray = new String[all.length];
+        var nameArray = new String[all.length];
+
+        for (int id = 0; id < all.length; id++) {
+            var item = all[id];
+            // Same as indexOf, the first one wins.
+            idMap.putIfAbsent(item, id);
+
+            var translatedName = item.getTranslatedName();
+            var parts = translatedName.split("\\.");
+            sliceArray[id] = parts.length > 1 ? parts[1] : null;
+            if (translatedName.startsWith("items.")) {
+                sliceMap.putIfAbsent(translatedName.substring("items.".length()), id);
+            }
+
+            if (item.getEmoji() != null) {
+                emojiMap.putIfAbsent(item.getEmoji(), id);
+            }
+
+            if (item.getAlias() != null) {
+                aliasArray[id] = normalize(item.getAlias());
+                aliasMap.putIfAbsent(aliasArray[id], id);
+            }
+
+            for (var alias : item.getAliases()) {
+                aliasLists.merge(alias, id, Math::min);
+            }
+
+            nameArray[id] = normalize(item.getName());
+        }
+
+        ids = idMap;
+        slices = sliceArray;
+        slicesToIds = sliceMap;
+        emojis = emojiMap;
+        aliases = aliasMap;
+        normalizedAliases = aliasArray;
+        names = new NameIndex(nameArray);
+    }
+
+    private ItemIndex() { }
+
+    static int size() {
+        return slices.length;
+    }
+
+    /**
+     * @return The id of the item, or -1 if it isn't in {@link ItemReference#ALL}.
+     */
+    static int idOf(Item item) {
+        var id = ids.get(item);
+        return id == null ? -1 : id;
+    }
+
+    static String sliceOf(int id) {
+        return slices[id];
+    }
+
+    /**
+     * @return The id of the item with this translation slice, or -1 if there's none.
+     */
+    static int idOfSlice(String slice) {
+        return orMissing(slicesToIds.get(slice));
+    }
+
+    static int idOfEmoji(String emoji) {
+        return orMissing(emojis.get(emoji.replace("\ufe0f", "")));
+    }
+
+    static int idOfAlias(String alias) {
+        return orMissing(aliases.get(normalize(alias)));
+    }
+
+    static int idOfAliasList(String alias) {
+        return orMissing(aliasLists.get(normalize(alias)));
+    }
+
+    static void aliasRegistered(Item item, String alias) {
+        var id = idOf(item);
+        if (id != -1) {
+            aliasLists.merge(alias, id, Math::min);
+        }
+    }
+
+    /**
+     * Exact name match, in english or in the language of the context.
+     */
+    static int idOfName(String name, I18nContext languageContext) {
+        var lookup = normalize(name);
+        var id = names.exact(lookup);
+        var translated = translated(languageContext);
+        return translated == null ? id : min(id, translated.exact(lookup));
+    }
+
+    /**
+     * Same as {@link #idOfName(String, I18nContext)}, but the name only needs to contain what we're looking for.
+     */
+    static int idOfPartialName(String name, I18nContext languageContext) {
+        var lookup = normalize(name);
+        var id = names.firstContaining(lookup);
+        var translated = translated(languageContext);
+        return translated == null ? id : min(id, translated.firstContaining(lookup));
+    }
+
+    /**
+     * Same as going through emoji, alias, alias list, name and partial name for this one item, without normalizing
+     * the item's strings every time.
+     */
+    static boolean matches(Item item, String search, I18nContext languageContext) {
+        var id = idOf(item);
+        if (id == -1) {
+            return false;
+        }
+
+        var lookup = normalize(search);
+        if (item.getEmoji().equals(search.replace("\ufe0f", "")) || lookup.equals(normalizedAliases[id]) || item.getAliases().contains(lookup)) {
+            return true;
+        }
+
+        // Partial covers exact, too.
+        if (names.contains(id, lookup)) {
+            return true;
+        }
+
+        var translated = translated(languageContext);
+        return translated != null && translated.contains(id, lookup);
+    }
+
+    private static NameIndex translated(I18nContext languageContext) {
+        var language = languageContext.getContextLanguage();
+        if (language.equals("en_US")) {
+            return null;
+        }
+
+        return translatedNames.computeIfAbsent(language, lang -> {
+            var all = ItemReference.ALL;
+            var nameArray = new String[all.length];
+            for (int id = 0; id < all.length; id++) {
+                var translatedName = all[id].getTranslatedName();
+                nameArray[id] = translatedName.isEmpty() ? null : normalize(languageContext.get(translatedName));
+            }
+
+            return new NameIndex(nameArray);
+        });
+    }
+
+    private static String normalize(String s) {
+        return s.toLowerCase().trim();
+    }
+
+    private static int orMissing(Integer id) {
+        return id == null ? -1 : id;
+    }
+
+    // -1 means nothing was found.
+    private static int min(int a, int b) {
+        if (a == -1) {
+            return b;
+        }
+
+        return b == -1 ? a : Math.min(a, b);
+    }
+
+    /**
+     * Normalized names by id, with an exact lookup table and a trigram index for partial matches.
+     * Each trigram maps to a bitset of the ids whose name contains it, so a search only checks the names that
+     * have every trigram of the lookup.
+     */
+    private static final class NameIndex {
+        private final String[] names;
+        private final Map<String, Integer> exact = new HashMap<>();
+        private final Map<String, long[]> trigrams = new HashMap<>();
+
+        NameIndex(String[] names) {
+            this.names = names;
+            for (int id = 0; id < names.length; id++) {
+                var name = names[id];
+                if (name == null) {
+                    continue;
+                }
+
+                exact.putIfAbsent(name, id);
+                for (int i = 0; i + 3 <= name.length(); i++) {
+                    var bits = trigrams.computeIfAbsent(name.substring(i, i + 3), t -> new long[(names.length + 63) >>> 6]);
+                    bits[id >>> 6] |= 1L << id;
+                }
+            }
+        }
+
+        int exact(String lookup) {
+            return orMissing(exact.get(lookup));
+        }
+
+        boolean contains(int id, String lookup) {
+            return names[id] != null && names[id].contains(lookup);
+        }
+
+        int firstContaining(String lookup) {
+            // Too short to have a trigram, but there's only a few hundred names anyway.
+            if (lookup.length() < 3) {
+                for (int id = 0; id < names.length; id++) {
+                    if (contains(id, lookup)) {
+                        return id;
+                    }
+                }
+
+                return -1;
+            }
+
+            long[] candidates = null;
+            for (int i = 0; i + 3 <= lookup.length(); i++) {
+                var bits = trigrams.get(lookup.substring(i, i + 3));
+                if (bits == null) {
+                    return -1;
+                }
+
+                if (candidates == null) {
+                    candidates = bits.clone();
+                } else {
+                    for (int word = 0; word < candidates.length; word++) {
+                        candidates[word] &= bits[word];
+                    }
+                }
+            }
+
+            // Having every trigram doesn't mean they're in the right order, so check the ones left.
+            for (int word = 0; word < candidates.length; word++) {
+                var bits = candidates[word];
+                while (bits != 0) {
+                    var id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    if (contains(id, lookup)) {
+                        return id;
+                    }
+
+                    bits &= bits - 1;
+                }
+            }
+
+            return -1;
+        }
+    }
+}
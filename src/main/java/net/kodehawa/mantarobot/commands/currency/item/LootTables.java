@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.commands.currency.item;
+
+import net.kodehawa.mantarobot.commands.currency.item.special.helpers.attributes.Tiered;
+import net.kodehawa.mantarobot.utils.commands.LootTable;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * What crates, fishing and chopping can drop, built once instead of on every open.
+ * Crate tables used to be rolled on every open: higher tier items only made it into the list some of the time, and then
+ * an item was picked by weight from whatever made it. Here those random checks are part of the weights, so every item
+ * comes out of a crate as often as before.
+ */
+public final class LootTables {
+    private static final Map<ItemType.LootboxType, LootTable<Item>> crates = new EnumMap<>(ItemType.LootboxType.class);
+    public static final LootTable<Item> FISHING;
+    public static final LootTable<Item> CHOPPING;
+
+    static {
+        for (var type : ItemType.LootboxType.values()) {
+            crates.put(type, compile(type));
+        }
+
+        FISHING = uniform(Stream.of(ItemReference.ALL)
+                .filter(i -> i.getItemType() == ItemType.FISHING && !i.isHidden() && i.isSellable())
+        );
+
+        CHOPPING = uniform(Stream.of(ItemReference.ALL)
+                .filter(i -> i.getItemType() == ItemType.CHOP_DROP)
+        );
+    }
+
+    private LootTables() { }
+
+    /**
+     * @return What this crate can drop. Empty (so nothing comes out of it) for crates that don't have any drops yet.
+     */
+    public static LootTable<Item> crate(ItemType.LootboxType type) {
+        return crates.get(type);
+    }
+
+    @SuppressWarnings("fallthrough")
+    private static LootTable<Item> compile(ItemType.LootboxType type) {
+        var builder = LootTable.<Item>builder();
+        switch (type) {
+            case PREMIUM:
+                addDrops(builder, 2, false, i -> i.getItemType() == ItemType.PREMIUM);
+            case RARE:
+                addDrops(builder, 5, false, i -> i.getItemType() == ItemType.RARE);
+            case COMMON:
+                addDrops(builder, 20, true, i -> i.getItemType() == ItemType.COMMON);
+                break; //fallthrough intended until here.
+            case CHOP_PREMIUM:
+                addDrops(builder, 8, false, i ->
+                        i.getItemType() == ItemType.CHOP_DROP ||
+                        i.getItemType() == ItemType.CHOP_AXE ||
+                        i.getItemType() == ItemType.CHOP_RARE_AXE
+                );
+                break;
+            case FISH_PREMIUM:
+                addDrops(builder, 8, false, i ->
+                        i.getItemType() == ItemType.FISHROD ||
+                        i.getItemType() == ItemType.FISHROD_RARE ||
+                        i.getItemType() == ItemType.FISHING ||
+                        i.getItemType() == ItemType.FISHING_RARE
+                );
+                break;
+            case MINE_PREMIUM:
+                addDrops(builder, 8, false, i ->
+                        i.getItemType() == ItemType.CAST_MINE ||
+                        i.getItemType() == ItemType.MINE_PICK ||
+                        i.getItemType() == ItemType.MINE ||
+                        i.getItemType() == ItemType.MINE_RARE ||
+                        i.getItemType() == ItemType.CAST_OBTAINABLE ||
+                        i.getItemType() == ItemType.MINE_RARE_PICK
+                );
+                break;
+            case MINE:
+                addDrops(builder, 8, true, i ->
+                        (i.getItemType() == ItemType.MINE ||
+                        i.getItemType() == ItemType.CAST_OBTAINABLE ||
+                        i.getItemType() == ItemType.MINE_PICK) && i != ItemReference.ROCK
+                );
+                break;
+            case FISH:
+                addDrops(builder, 8, true, i -> i.getItemType() == ItemType.FISHING || i.getItemType() == ItemType.FISHROD);
+                break;
+            case CHOP:
+                addDrops(builder, 8, true, i -> i.getItemType() == ItemType.CHOP_DROP || i.getItemType() == ItemType.CHOP_AXE);
+                break;
+            default:
+                break;
+        }
+
+        return builder.build();
+    }
+
+    private static void addDrops(LootTable.Builder<Item> builder, int weight, boolean normal, Predicate<Item> predicate) {
+        Arrays.stream(ItemReference.ALL)
+                .filter(i -> i.isBuyable() || i.isSellable())
+                .filter(predicate)
+                .forEach(i -> builder.addGated(weight, dropChance(i, normal), i));
+    }
+
+    // Chance of the item being in the list at all. Keep in mind the actual chance depends on everything else in it.
+    private static double dropChance(Item item, boolean normal) {
+        if (normal) {
+            if (item instanceof Tiered tiered && tiered.getTier() >= 5) {
+                return 0.02f; // 2% for 5* +
+            }
+
+            if ((item instanceof Tiered tiered && tiered.getTier() >= 3) || item.getValue() >= 100) {
+                return 0.05f; // 5% for 3 and 4*
+            }
+        } else {
+            if (item instanceof Tiered tiered && tiered.getTier() >= 5) {
+                return 0.10f; // 10% for 5* +
+            }
+
+            if ((item instanceof Tiered tiered && tiered.getTier() >= 3) || item.getValue() >= 300) {
+                return 0.40f; // 40% for 3* +
+            }
+        }
+
+        return 1;
+    }
+
+    private static LootTable<Item> uniform(Stream<Item> items) {
+        var builder = LootTable.<Item>builder();
+        items.forEach(i -> builder.add(3, i));
+        return builder.build();
+    }
+}
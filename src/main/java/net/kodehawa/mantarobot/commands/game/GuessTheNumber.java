@@ -88,7 +88,7 @@ public class GuessTheNumber extends Game<Object> {
                         var gains = 140;
 
                         player.addMoney(gains);
-                        player.gamesWon(player.getGamesWon() + 1);
+                        player.incrementGamesWon();
                         if (player.getGamesWon() == 100) {
                             player.addBadgeIfAbsent(Badge.GAMER);
                         }
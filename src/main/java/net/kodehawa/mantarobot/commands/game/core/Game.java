@@ -83,7 +83,7 @@ public abstract class Game<T> {
                 player.addBadgeIfAbsent(Badge.ADDICTED_GAMER);
             }
 
-            player.gamesWon(player.getGamesWon() + 1);
+            player.incrementGamesWon();
             player.updateAllChanged();
 
             TextChannelGround.of(event.getChannel()).dropItemWithChance(ItemReference.FLOPPY_DISK, 3);
@@ -175,7 +175,7 @@ public abstract class Game<T> {
                     player.addBadgeIfAbsent(Badge.ADDICTED_GAMER);
                 }
 
-                player.gamesWon(player.getGamesWon() + 1);
+                player.incrementGamesWon();
                 player.updateAllChanged();
 
                 TextChannelGround.of(e.getChannel()).dropItemWithChance(ItemReference.FLOPPY_DISK, 3);
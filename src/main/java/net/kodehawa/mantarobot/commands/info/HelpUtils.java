@@ -20,36 +20,40 @@ package net.kodehawa.mantarobot.commands.info;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildMessageChannel;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
 import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
+import net.kodehawa.mantarobot.core.command.helpers.GuildCommandPermissions;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.db.entities.MongoGuild;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
 
 public class HelpUtils {
-    public static String forType(GuildMessageChannel channel, MongoGuild guildData, CommandCategory category) {
+    public static String forType(GuildMessageChannel channel, GuildCommandPermissions permissions, CommandCategory category) {
+        // Category checks don't depend on the command, so don't bother going through them if it's disabled as a whole.
+        if (permissions.isCategoryDisabled(category) || permissions.isCategoryDisabled(channel.getId(), category)) {
+            return forType(List.of());
+        }
+
         return forType(
                 CommandProcessor.REGISTRY.commands().entrySet().stream()
                         .filter(entry -> entry.getValue().category() == category)
-                        .filter(entry -> !guildData.getDisabledCategories().contains(entry.getValue().category()))
-                        .filter(c -> !guildData.getDisabledCommands().contains(c.getKey()))
-                        .filter(c -> guildData.getChannelSpecificDisabledCommands().get(channel.getId()) == null || !guildData.getChannelSpecificDisabledCommands().get(channel.getId()).contains(c.getKey()))
-                        .filter(c -> !guildData.getChannelSpecificDisabledCategories().computeIfAbsent(channel.getId(), wew -> new ArrayList<>()).contains(category))
+                        .filter(c -> !permissions.isCommandDisabled(c.getKey()))
+                        .filter(c -> !permissions.isCommandDisabled(channel.getId(), c.getKey()))
                         .map(Entry::getKey)
                         .collect(Collectors.toList())
         );
     }
 
-    public static String forTypeSlash(GuildMessageChannel channel, MongoGuild guildData, CommandCategory category) {
+    public static String forTypeSlash(GuildMessageChannel channel, GuildCommandPermissions permissions, CommandCategory category) {
+        if (permissions.isCategoryDisabled(category) || permissions.isCategoryDisabled(channel.getId(), category)) {
+            return forType(List.of());
+        }
+
         return forType(
                 CommandProcessor.REGISTRY.getCommandManager().slashCommands().entrySet().stream()
                         .filter(entry -> entry.getValue().getCategory() == category)
-                        .filter(entry -> !guildData.getDisabledCategories().contains(entry.getValue().getCategory()))
-                        .filter(c -> !guildData.getDisabledCommands().contains(c.getKey()))
-                        .filter(c -> guildData.getChannelSpecificDisabledCommands().get(channel.getId()) == null || !guildData.getChannelSpecificDisabledCommands().get(channel.getId()).contains(c.getKey()))
-                        .filter(c -> !guildData.getChannelSpecificDisabledCategories().computeIfAbsent(channel.getId(), wew -> new ArrayList<>()).contains(category))
+                        .filter(c -> !permissions.isCommandDisabled(c.getKey()))
+                        .filter(c -> !permissions.isCommandDisabled(channel.getId(), c.getKey()))
                         .map(Entry::getKey)
                         .collect(Collectors.toList())
         );
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.commands.utils.birthday;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out the requests the birthday task makes to discord. Role changes and messages wait here, and only so many
+ * of them get queued on JDA each second, shared by every shard on this node. JDA would deal with the rate limits by
+ * itself, but handing it every birthday of every shard at once would hold back everything else in the meantime.
+ */
+final class BirthdayActionQueue {
+    private static final Logger log = LoggerFactory.getLogger(BirthdayActionQueue.class);
+    // Ticks this many times a second, so the budget isn't spent all at once at the start of each second.
+    private static final int TICKS_PER_SECOND = 10;
+
+    private final Queue<Runnable> actions = new ConcurrentLinkedQueue<>();
+    private final double perTick;
+    // Only touched by the queue thread.
+    private double budget;
+
+    BirthdayActionQueue(int perSecond) {
+        this.perTick = Math.max(1, perSecond) / (double) TICKS_PER_SECOND;
+        var executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Birthday Action Queue").setDaemon(true).build()
+        );
+
+        var period = TimeUnit.SECONDS.toMillis(1) / TICKS_PER_SECOND;
+        executor.scheduleAtFixedRate(this::drain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs this once there's budget for it. Actions run in the order they were submitted, one at a time,
+     * so they should only queue their request instead of waiting for it.
+     */
+    void submit(Runnable action) {
+        actions.add(action);
+    }
+
+    int size() {
+        return actions.size();
+    }
+
+    private void drain() {
+        budget += perTick;
+        Runnable action;
+        while (budget >= 1 && (action = actions.poll()) != null) {
+            budget--;
+            try {
+                action.run();
+            } catch (Exception e) {
+                log.error("Error running queued birthday action", e);
+            }
+        }
+
+        // Budget doesn't pile up while there's nothing to do, else the next batch would go out in a burst.
+        if (actions.isEmpty()) {
+            budget = Math.min(budget, 1);
+        }
+    }
+}
@@ -14,69 +14,261 @@
  * along with Mantaro. If not, see http://www.gnu.org/licenses/
  *
  */
-
 package net.kodehawa.mantarobot.commands.utils.birthday;
 
-import net.kodehawa.mantarobot.commands.BirthdayCmd;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.InvalidationBus;
 import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.utils.LongHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Caches the birthday date of all users seen on bot startup and adds them to a local ConcurrentHashMap.
- * This will later be used on {@link BirthdayTask}
+ * Keeps the birthday of every user that has one set, bucketed by day of the year. Each day is a sorted array of user ids,
+ * so finding who has a birthday on a given day doesn't go through everyone else.
+ * Everything is loaded on bot startup (and again every day, in case something got lost), and kept up to date in between
+ * when someone sets or removes their birthday on any node.
+ * This is used on {@link BirthdayTask} and the birthday commands.
  */
 public class BirthdayCacher {
     private static final Logger log = LoggerFactory.getLogger(BirthdayCacher.class);
-    private final Map<Long, BirthdayData> cachedBirthdays = new ConcurrentHashMap<>();
+    private static final String INVALIDATION_TYPE = "birthday";
+    // Counting February 29th, so every date has its own slot.
+    private static final int DAYS = 366;
+    private static final long[] NONE = new long[0];
+
+    // Arrays are never changed once they're in here, updates put in a new one.
+    private final AtomicReferenceArray<long[]> days = new AtomicReferenceArray<>(DAYS);
+    // Changes that came in while a full load was running, to apply on top of it. Null when not loading.
+    private Map<Long, String> changedWhileLoading;
 
     public BirthdayCacher() {
+        for (int i = 0; i < DAYS; i++) {
+            days.set(i, NONE);
+        }
+
+        MantaroData.db().registerInvalidationListener(INVALIDATION_TYPE, new InvalidationBus.Listener() {
+            @Override
+            public void invalidate(String id) {
+                // id:birthday, or just id: if it was removed.
+                var separator = id.indexOf(':');
+                if (separator == -1) {
+                    return;
+                }
+
+                var birthday = id.substring(separator + 1);
+                update(Long.parseUnsignedLong(id.substring(0, separator)), birthday.isEmpty() ? null : birthday);
+            }
+
+            @Override
+            public void invalidateAll() {
+                // Nothing to drop, the daily load catches up with anything we missed.
+            }
+        });
+
         log.info("Caching birthdays...");
         cache();
     }
 
     public void cache() {
         try {
-            var users = MantaroData.db().dbMantaro().getCollection("users", MongoUser.class).find();
-            cachedBirthdays.clear();
+            synchronized (this) {
+                changedWhileLoading = new HashMap<>();
+            }
+
+            // Only the users with a birthday set, and only what we need of them. This goes through the birthday index.
+            var users = MantaroData.db().dbMantaro().getCollection(MongoUser.DB_TABLE)
+                    .find(Filters.gt("birthday", ""))
+                    .projection(Projections.include("birthday"));
 
+            var buckets = new long[DAYS][];
+            var counts = new int[DAYS];
+            var total = 0;
             for (var r : users) {
                 try {
-                    var id = Long.parseUnsignedLong(r.getId());
-                    // Why?
-                    if (cachedBirthdays.containsKey(id))
+                    var id = Long.parseUnsignedLong(r.getString("_id"));
+                    var day = dayOf(r.getString("birthday"));
+                    if (day == -1) {
                         continue;
+                    }
 
-                    var birthday = r.getBirthday();
-                    if (birthday != null && !birthday.isEmpty()) {
-                        log.debug("-> PROCESS: {}", r);
-                        var bd = birthday.split("-");
-                        cachedBirthdays.put(id, new BirthdayData(birthday, Long.parseLong(bd[0]), Long.parseLong(bd[1])));
+                    if (buckets[day] == null) {
+                        buckets[day] = new long[16];
+                    } else if (counts[day] == buckets[day].length) {
+                        buckets[day] = Arrays.copyOf(buckets[day], counts[day] * 2);
                     }
+
+                    buckets[day][counts[day]++] = id;
+                    total++;
                 } catch (Exception e) {
                     log.error("Error inserting user to birthday cache?", e);
                 }
             }
 
-            log.debug("-> [CACHE] Birthdays: {}", cachedBirthdays);
-            // Else we just don't have anything to clear (first startup)
-            if (BirthdayCmd.getGuildBirthdayCache().size() > 0) {
-                log.info("Clearing previous guild birthday cache...");
-                BirthdayCmd.getGuildBirthdayCache().invalidateAll();
+            synchronized (this) {
+                for (int i = 0; i < DAYS; i++) {
+                    if (buckets[i] == null) {
+                        days.set(i, NONE);
+                        continue;
+                    }
+
+                    var ids = Arrays.copyOf(buckets[i], counts[i]);
+                    Arrays.sort(ids);
+                    days.set(i, ids);
+                }
+
+                var changes = changedWhileLoading;
+                changedWhileLoading = null;
+                changes.forEach(this::update);
             }
 
-            log.info("Cached all birthdays. Current size is {}", cachedBirthdays.size());
+            log.info("Cached all birthdays. Current size is {}", total);
         } catch (Exception e) {
+            synchronized (this) {
+                changedWhileLoading = null;
+            }
+
             e.printStackTrace();
         }
     }
 
-    public Map<Long, BirthdayData> getCachedBirthdays() {
-        return cachedBirthdays;
+    /**
+     * Updates the birthday of a user here, and on every other node.
+     *
+     * @param birthday The new birthday (dd-MM-yyyy, as saved), or null if it was removed.
+     */
+    public void changed(long userId, @Nullable String birthday) {
+        update(userId, birthday);
+        MantaroData.db().publishInvalidation(INVALIDATION_TYPE, Long.toUnsignedString(userId) + ":" + (birthday == null ? "" : birthday));
+    }
+
+    private synchronized void update(long userId, @Nullable String birthday) {
+        if (changedWhileLoading != null) {
+            changedWhileLoading.put(userId, birthday);
+        }
+
+        for (int i = 0; i < DAYS; i++) {
+            var ids = days.get(i);
+            var index = Arrays.binarySearch(ids, userId);
+            if (index >= 0) {
+                var removed = new long[ids.length - 1];
+                System.arraycopy(ids, 0, removed, 0, index);
+                System.arraycopy(ids, index + 1, removed, index, ids.length - index - 1);
+                days.set(i, removed);
+            }
+        }
+
+        var day = birthday == null ? -1 : dayOf(birthday);
+        if (day != -1) {
+            var ids = days.get(day);
+            var index = -(Arrays.binarySearch(ids, userId) + 1);
+            var added = new long[ids.length + 1];
+            System.arraycopy(ids, 0, added, 0, index);
+            added[index] = userId;
+            System.arraycopy(ids, index, added, index + 1, ids.length - index);
+            days.set(day, added);
+        }
+    }
+
+    /**
+     * @return Everyone with a birthday on this date, sorted. Don't change it.
+     */
+    public long[] getBirthdays(MonthDay date) {
+        return days.get(dayOf(date));
+    }
+
+    /**
+     * @return Whoever in among has a birthday on this date.
+     */
+    public long[] getBirthdays(MonthDay date, LongHashSet among) {
+        var ids = getBirthdays(date);
+        var found = new long[Math.min(ids.length, among.size())];
+        var count = 0;
+        for (var id : ids) {
+            if (count == found.length) {
+                break;
+            }
+
+            if (among.contains(id)) {
+                found[count++] = id;
+            }
+        }
+
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    @Nullable
+    public BirthdayData get(long userId) {
+        for (int i = 0; i < DAYS; i++) {
+            if (Arrays.binarySearch(days.get(i), userId) >= 0) {
+                var date = MonthDay.from(LocalDate.ofYearDay(2020, i + 1));
+                return new BirthdayData(
+                        "%02d-%02d".formatted(date.getDayOfMonth(), date.getMonthValue()), date.getDayOfMonth(), date.getMonthValue()
+                );
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The birthday of each of these users, leaving out the ones without one.
+     */
+    public Map<Long, BirthdayData> getBirthdays(Collection<Long> userIds) {
+        Map<Long, BirthdayData> birthdays = new HashMap<>();
+        for (var id : userIds) {
+            var birthday = get(id);
+            if (birthday != null) {
+                birthdays.put(id, birthday);
+            }
+        }
+
+        return birthdays;
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < DAYS; i++) {
+            if (days.get(i).length > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Birthdays are saved as dd-MM-yyyy. Returns -1 if it isn't a valid date.
+    private static int dayOf(String birthday) {
+        if (birthday == null) {
+            return -1;
+        }
+
+        var parts = birthday.split("-");
+        if (parts.length < 2) {
+            return -1;
+        }
+
+        try {
+            return dayOf(MonthDay.of(Integer.parseInt(parts[1]), Integer.parseInt(parts[0])));
+        } catch (NumberFormatException | DateTimeException e) {
+            return -1;
+        }
+    }
+
+    // 2020 was a leap year, so February 29th gets a day too.
+    private static int dayOf(MonthDay date) {
+        return date.atYear(2020).getDayOfYear() - 1;
     }
 
     public record BirthdayData(String birthday, long day, long month) {
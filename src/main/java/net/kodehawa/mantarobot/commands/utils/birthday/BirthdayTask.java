@@ -18,7 +18,7 @@
 package net.kodehawa.mantarobot.commands.utils.birthday;
 
 import com.google.common.collect.Lists;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageEmbed;
@@ -32,6 +32,7 @@ import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
 import net.kodehawa.mantarobot.core.command.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.LongHashSet;
 import net.kodehawa.mantarobot.utils.Pair;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
@@ -42,36 +43,32 @@ import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.Year;
+import java.time.Month;
+import java.time.MonthDay;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class BirthdayTask {
     private static final Pattern MODIFIER_PATTERN = Pattern.compile("\\p{L}*:");
     private static final Logger log = LoggerFactory.getLogger(BirthdayTask.class);
-    private static final DateTimeFormatter dayMonthFormat = DateTimeFormatter.ofPattern("dd-MM");
-    private static final DateTimeFormatter monthFormat = DateTimeFormatter.ofPattern("MM");
+    // How far back to look for birthdays that ended, to take the role away. Covers the bot being down for a while.
+    private static final int ROLE_REMOVAL_DAYS = 31;
+    // How many members to ask discord for in one request.
+    private static final int MEMBER_CHUNK_SIZE = 100;
 
     private static final String modLogMessage = "Birthday assigner." +
             " If you see this happening for every member of your server, or in unintended ways, please do ~>opts birthday disable";
 
-    private static final ScheduledExecutorService backOffPool = Executors.newScheduledThreadPool(2,
-            new ThreadFactoryBuilder().setNameFormat("Birthday Backoff Message Thread").build()
-    );
-
-    private static final ScheduledExecutorService backOffRolePool = Executors.newScheduledThreadPool(4,
-            new ThreadFactoryBuilder().setNameFormat("Birthday Backoff Role Thread").build()
-    );
+    // Shared by every shard, so the budget holds no matter how many of them are running the task at once.
+    private static final BirthdayActionQueue actionQueue = new BirthdayActionQueue(MantaroData.config().get().getBirthdayRequestsPerSecond());
 
     public static void handle(int shardId) {
         final var bot = MantaroBot.getInstance();
@@ -86,6 +83,7 @@ public class BirthdayTask {
             final var start = System.currentTimeMillis();
             var membersAssigned = 0;
             var membersDivested = 0;
+            var messagesQueued = 0;
 
             final var jda = bot.getShardManager().getShardById(shardId);
             if (jda == null) { // To be fair, this shouldn't be possible as it only starts it with the shards it knows...
@@ -97,320 +95,285 @@ public class BirthdayTask {
             // Well, fuck, this was a day off. NYC time was 23:00 when Chicago time was at 00:00, so it checked the
             // birthdays for THE WRONG DAY. Heck.
             // 17-02-2022: Fuck again, I was using the wrong thing. Now it works, lol.
-            final var timezone = ZonedDateTime.ofInstant(instant, ZoneId.of("America/Chicago"));
-            // Example: 25-02
-            final var now = timezone.format(dayMonthFormat);
-            // Example: 02
-            final var month = timezone.format(monthFormat);
-            // Example: 01
-            final var lastMonthTz = ZonedDateTime.ofInstant(instant, ZoneId.of("America/Chicago"))
-                    .minusMonths(1);
-            final var lastMonth = lastMonthTz.format(monthFormat);
-
-            final var cached = cache.getCachedBirthdays();
-            final var guilds = jda.getGuildCache();
-
-            // Backoff sending: we need to backoff the birthday requests,
-            // else we're gonna find ourselves quite often hitting ratelimits, which might slow the whole
-            // bot down. Therefore, we're just gonna get all of the messages we need to send and *slowly*
-            // send them over the course of a few minutes, instead of trying to send them all at once.
-            Map<BirthdayGuildInfo, List<MessageCreateBuilder>> toSend = new HashMap<>();
-            List<BirthdayRoleInfo> roleBackoffAdd = new ArrayList<>();
-            List<BirthdayRoleInfo> roleBackoffRemove = new ArrayList<>();
-
-            // For all current -cached- guilds.
-            for (final var guild : guilds) {
-                // This is quite a db spam, lol
-                final var dbGuild = MantaroData.db().getGuild(guild);
-                final var guildLanguageContext = new I18nContext(dbGuild, null);
+            final var today = ZonedDateTime.ofInstant(instant, ZoneId.of("America/Chicago")).toLocalDate();
+
+            // Only the guilds on this shard with a birthday channel and role set, all in one go.
+            final var guildIds = new ArrayList<String>((int) jda.getGuildCache().size());
+            jda.getGuildCache().forEach(guild -> guildIds.add(guild.getId()));
+            final var birthdayGuilds = MantaroData.db().getBirthdayGuilds(guildIds);
+
+            // Role changes and messages don't go out from here: they wait on the action queue, which sends
+            // them at a steady pace, else we'd find ourselves hitting ratelimits quite often, which might slow the whole bot down.
+            List<BirthdayRoleInfo> roleRemovals = new ArrayList<>();
+            for (final var dbGuild : birthdayGuilds) {
+                final var guild = jda.getGuildById(dbGuild.getId());
+                if (guild == null) {
+                    continue;
+                }
 
-                // If we have a birthday guild and channel here, continue
-                if (dbGuild.getBirthdayChannel() != null && dbGuild.getBirthdayRole() != null) {
-                    final var birthdayRole = guild.getRoleById(dbGuild.getBirthdayRole());
-                    final var channel = guild.getChannelById(StandardGuildMessageChannel.class, dbGuild.getBirthdayChannel());
-
-                    if (channel != null && birthdayRole != null) {
-                        if (!guild.getSelfMember().canInteract(birthdayRole))
-                            continue; //Go to next guild...
-                        if (!channel.canTalk())
-                            continue; //cannot talk here...
-                        if (dbGuild.getGuildAutoRole() != null && birthdayRole.getId().equals(dbGuild.getGuildAutoRole()))
-                            continue; //Birthday role is autorole role
-                        if (birthdayRole.isPublicRole())
-                            continue; //Birthday role is public role
-                        if (birthdayRole.isManaged())
-                            continue; //This was meant to be a bot role?
-
-                        // Guild map is now created from allowed birthdays. This is a little hacky, but we don't really care.
-                        // The other solution would have been just disabling this completely, which would have been worse.
-                        // @formatter:off
-                        Map<Long, BirthdayCacher.BirthdayData> guildMap = cached.entrySet()
-                                .stream()
-                                .filter(map -> dbGuild.getAllowedBirthdays().contains(String.valueOf(map.getKey())))
-                                .filter(map ->
-                                        // Only check for current month or last month!
-                                        map.getValue().birthday().substring(3, 5).equals(month) ||
-                                                map.getValue().birthday().substring(3, 5).equals(lastMonth)
-                                ).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-                        // @formatter:on
-
-                        int birthdayNumber = 0;
-                        List<Long> nullMembers = new ArrayList<>();
-                        StringBuilder currentContent = new StringBuilder(guildLanguageContext.get("general.birthday"))
-                                .append("\n\n");
-                        List<String> contentList = new ArrayList<>();
-                        List<MessageEmbed> embedList = new ArrayList<>();
-
-                        for (var data : guildMap.entrySet()) {
-                            var birthday = data.getValue().birthday();
-                            if (dbGuild.getBirthdayBlockedIds().contains(String.valueOf(data.getKey()))) {
-                                continue;
-                            }
+                final var guildLanguageContext = new I18nContext(dbGuild, null);
+                final var birthdayRole = guild.getRoleById(dbGuild.getBirthdayRole());
+                final var channel = guild.getChannelById(StandardGuildMessageChannel.class, dbGuild.getBirthdayChannel());
+                if (channel == null || birthdayRole == null)
+                    continue;
+                if (!guild.getSelfMember().canInteract(birthdayRole))
+                    continue; //Go to next guild...
+                if (!channel.canTalk())
+                    continue; //cannot talk here...
+                if (dbGuild.getGuildAutoRole() != null && birthdayRole.getId().equals(dbGuild.getGuildAutoRole()))
+                    continue; //Birthday role is autorole role
+                if (birthdayRole.isPublicRole())
+                    continue; //Birthday role is public role
+                if (birthdayRole.isManaged())
+                    continue; //This was meant to be a bot role?
+
+                // Only people who allowed this guild to announce their birthday.
+                // Whoever has it today gets the role, and whoever had it in the last month gets it removed.
+                final var allowed = LongHashSet.ofIds(dbGuild.getAllowedBirthdays());
+                final var blocked = LongHashSet.ofIds(dbGuild.getBirthdayBlockedIds());
+                final var birthdaysToday = new ArrayList<Long>();
+                for (var id : birthdaysOn(cache, today, allowed)) {
+                    if (!blocked.contains(id)) {
+                        birthdaysToday.add(id);
+                    }
+                }
 
-                            if (birthday == null) {
-                                log.debug("Birthday is null? Continuing...");
-                                nullMembers.add(data.getKey());
-                                continue;
-                            }
+                final var birthdaysPassed = new ArrayList<Long>();
+                for (int daysAgo = 1; daysAgo <= ROLE_REMOVAL_DAYS; daysAgo++) {
+                    for (var id : birthdaysOn(cache, today.minusDays(daysAgo), allowed)) {
+                        if (!blocked.contains(id)) {
+                            birthdaysPassed.add(id);
+                        }
+                    }
+                }
 
-                            // This needs to be a retrieveMemberById call, sadly. This will get cached, though.
-                            Member member;
-                            try {
-                                // This is expensive!
-                                member = guild.retrieveMemberById(data.getKey()).useCache(true).complete();
-                            } catch (Exception ex) {
-                                nullMembers.add(data.getKey());
-                                continue;
-                            }
+                if (birthdaysToday.isEmpty() && birthdaysPassed.isEmpty()) {
+                    continue;
+                }
 
-                            // Make sure we announce on March 1st for birthdays on February 29 if the current
-                            // year is not a leap year.
-                            var compare = birthday.substring(0, 5);
-                            if (compare.equals("29-02") && !Year.isLeap(LocalDate.now().getYear())) {
-                                compare = "28-02";
-                            }
+                final var candidates = new ArrayList<Long>(birthdaysToday.size() + birthdaysPassed.size());
+                candidates.addAll(birthdaysToday);
+                candidates.addAll(birthdaysPassed);
+                final var members = retrieveMembers(guild, candidates);
+                // Couldn't ask discord, so we don't know who's gone. Try again tomorrow.
+                if (members == null) {
+                    continue;
+                }
 
-                            if (compare.equals(now)) {
-                                log.debug("Assigning birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-                                var tempBirthdayMessage =
-                                        String.format(EmoteReference.POPPER + "**%s is a year older now! Wish them a happy birthday.** :tada:",
-                                                member.getEffectiveName());
-
-                                if (dbGuild.getBirthdayMessage() != null) {
-                                    tempBirthdayMessage = dbGuild.getBirthdayMessage()
-                                            .replace("$(user)", member.getEffectiveName())
-                                            .replace("$(usermention)", member.getAsMention())
-                                            .replace("$(tag)", Utils.getTagOrDisplay(member.getUser())) // legacy support, discrims are technically gone
-                                            .replace("$(global_name)", member.getUser().getGlobalName() == null ? "none" : member.getUser().getGlobalName());
-                                }
+                int birthdayNumber = 0;
+                StringBuilder currentContent = new StringBuilder(guildLanguageContext.get("general.birthday"))
+                        .append("\n\n");
+                List<String> contentList = new ArrayList<>();
+                List<MessageEmbed> embedList = new ArrayList<>();
 
-                                // Variable used in lambda expression should be final or effectively final...
-                                final var birthdayMessage = tempBirthdayMessage;
-                                if (!member.getRoles().contains(birthdayRole)) {
-                                    log.debug("Backing off adding birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-
-                                    // We can pretty much do all of this only based on the IDs
-                                    roleBackoffAdd.add(new BirthdayRoleInfo(guild.getId(), member.getId(), birthdayRole));
-                                    final Pair<String, MessageEmbed> messagePair = buildBirthdayMessage(birthdayMessage, channel, member);
-                                    if (messagePair.left() != null) {
-                                        try {
-                                            // ensure the content itself does not exceed 2000 characters
-                                            List<String> parts = SplitUtil.split(
-                                                    messagePair.left(),
-                                                    Message.MAX_CONTENT_LENGTH,
-                                                    SplitUtil.Strategy.NEWLINE,
-                                                    SplitUtil.Strategy.WHITESPACE
-                                            );
-                                            // only one part so it fits in a single message as ensured by SplitUtil
-                                            // we proceed by checking if it fits into the current content
-                                            if (parts.size() == 1) {
-                                                String part = parts.get(0);
-                                                // it does not fit into the current content, add the current one to the list
-                                                // and create a new one
-                                                if (currentContent.length() + part.length() > Message.MAX_CONTENT_LENGTH) {
-                                                    contentList.add(currentContent.toString());
-                                                    currentContent = new StringBuilder();
-                                                }
-                                                currentContent.append(part);
-                                            } else {
-                                                // every single of these (except the last one) parts is guaranteed to be exactly the message content length
-                                                // meaning we need a new content for all of them and the last element will be used going forward
-                                                String last = parts.remove(parts.size() - 1);
-                                                // we have to add the current content even if it still has space, as it might
-                                                // break continuity in the messages if we merge them out of order
-                                                contentList.add(currentContent.toString());
-                                                currentContent = new StringBuilder(last);
-                                                contentList.addAll(parts);
-                                            }
-                                            // add a new line to separate this b-day message from the next
-                                            // Note: this is going to be trimmed by discord if at the end
-                                            // meaning checking length *should* not be necessary
-                                            currentContent.append("\n");
-                                        } catch (IllegalStateException e) {
-                                            log.debug("Failed to use SplitUtil to ensure birthday message length: {}", messagePair.left());
-                                            continue;
-                                        }
-                                    }
-                                    if (messagePair.right() != null) {
-                                        // add embed to list
-                                        embedList.add(messagePair.right());
-                                    }
-                                    membersAssigned++;
-                                    birthdayNumber++;
+                for (var memberId : birthdaysToday) {
+                    var member = members.get(memberId);
+                    if (member == null) {
+                        continue;
+                    }
 
-                                    Metrics.BIRTHDAY_COUNTER.inc();
-                                }
-                            } else {
-                                //day passed
-                                if (member.getRoles().contains(birthdayRole)) {
-                                    log.debug("Backing off removing birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-                                    roleBackoffRemove.add(new BirthdayRoleInfo(guild.getId(), member.getId(), birthdayRole));
-                                    membersDivested++;
-                                }
-                            }
-                        }
+                    log.debug("Assigning birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
+                    var tempBirthdayMessage =
+                            String.format(EmoteReference.POPPER + "**%s is a year older now! Wish them a happy birthday.** :tada:",
+                                    member.getEffectiveName());
+
+                    if (dbGuild.getBirthdayMessage() != null) {
+                        tempBirthdayMessage = dbGuild.getBirthdayMessage()
+                                .replace("$(user)", member.getEffectiveName())
+                                .replace("$(usermention)", member.getAsMention())
+                                .replace("$(tag)", Utils.getTagOrDisplay(member.getUser())) // legacy support, discrims are technically gone
+                                .replace("$(global_name)", member.getUser().getGlobalName() == null ? "none" : member.getUser().getGlobalName());
+                    }
 
-                        if (birthdayNumber != 0) {
-                            // add the last build content to the list if it wasn't empty
-                            // \n check is here to avoid any potential "cannot send an empty message"
-                            if (!currentContent.isEmpty() && !currentContent.toString().equals("\n")) {
-                                contentList.add(currentContent.toString());
-                            }
+                    // Variable used in lambda expression should be final or effectively final...
+                    final var birthdayMessage = tempBirthdayMessage;
+                    if (!member.getRoles().contains(birthdayRole)) {
+                        log.debug("Queueing birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
 
-                            // map messages to MessageCreateBuilder
-                            List<MessageCreateBuilder> builders = contentList.stream()
-                                    .map(m -> new MessageCreateBuilder().addContent(m))
-                                    .collect(Collectors.toList()); // list needs to be mutable
-
-                            // partition embed list into chunks of 10
-                            List<List<MessageEmbed>> embedPartition = Lists.partition(embedList, Message.MAX_EMBED_COUNT);
-                            // add embeds to the first n (n = size) MessageCreateBuilder
-                            for (int i = 0; i < embedPartition.size(); i++) {
-                                if (i >= builders.size()) {
-                                    builders.add(new MessageCreateBuilder().addEmbeds(embedPartition.get(i)));
+                        // We can pretty much do all of this only based on the IDs
+                        final var roleInfo = new BirthdayRoleInfo(guild.getId(), member.getId(), birthdayRole);
+                        actionQueue.submit(() -> changeRole(roleInfo, true));
+                        final Pair<String, MessageEmbed> messagePair = buildBirthdayMessage(birthdayMessage, channel, member);
+                        if (messagePair.left() != null) {
+                            try {
+                                // ensure the content itself does not exceed 2000 characters
+                                List<String> parts = SplitUtil.split(
+                                        messagePair.left(),
+                                        Message.MAX_CONTENT_LENGTH,
+                                        SplitUtil.Strategy.NEWLINE,
+                                        SplitUtil.Strategy.WHITESPACE
+                                );
+                                // only one part so it fits in a single message as ensured by SplitUtil
+                                // we proceed by checking if it fits into the current content
+                                if (parts.size() == 1) {
+                                    String part = parts.get(0);
+                                    // it does not fit into the current content, add the current one to the list
+                                    // and create a new one
+                                    if (currentContent.length() + part.length() > Message.MAX_CONTENT_LENGTH) {
+                                        contentList.add(currentContent.toString());
+                                        currentContent = new StringBuilder();
+                                    }
+                                    currentContent.append(part);
                                 } else {
-                                    builders.get(i).addEmbeds(embedPartition.get(i));
+                                    // every single of these (except the last one) parts is guaranteed to be exactly the message content length
+                                    // meaning we need a new content for all of them and the last element will be used going forward
+                                    String last = parts.remove(parts.size() - 1);
+                                    // we have to add the current content even if it still has space, as it might
+                                    // break continuity in the messages if we merge them out of order
+                                    contentList.add(currentContent.toString());
+                                    currentContent = new StringBuilder(last);
+                                    contentList.addAll(parts);
                                 }
+                                // add a new line to separate this b-day message from the next
+                                // Note: this is going to be trimmed by discord if at the end
+                                // meaning checking length *should* not be necessary
+                                currentContent.append("\n");
+                            } catch (IllegalStateException e) {
+                                log.debug("Failed to use SplitUtil to ensure birthday message length: {}", messagePair.left());
+                                continue;
                             }
-                            toSend.put(new BirthdayGuildInfo(guild.getId(), channel.getId()), builders);
                         }
-
-                        // If any of the member lookups to discord returned null, remove them.
-                        if (!nullMembers.isEmpty()) {
-                            nullMembers.forEach(member -> dbGuild.removeAllowedBirthday(String.valueOf(member)));
-                            dbGuild.updateAllChanged();
+                        if (messagePair.right() != null) {
+                            // add embed to list
+                            embedList.add(messagePair.right());
                         }
+                        membersAssigned++;
+                        birthdayNumber++;
+
+                        Metrics.BIRTHDAY_COUNTER.inc();
                     }
                 }
-            }
-
-            final var end = System.currentTimeMillis();
-            log.info("{} (birthdays): people assigned: {}, people divested: {}, took {}ms",
-                    jda.getShardInfo(), membersAssigned, membersDivested, (end - start)
-            );
 
-            // A pool inside a pool?
-            // Send the backoff sending comment above, this basically avoids hitting
-            // discord with one billion requests at once.
-            final var backoff = 400;
-            final var roleBackoff = 100;
-            backOffPool.submit(() -> {
-                log.info("{} (birthdays): Backoff messages: {}. Sending them with {}ms backoff.",
-                        jda.getShardInfo(), toSend.size(), backoff
-                );
-
-                final var startMessage = System.currentTimeMillis();
-                for (var entry : toSend.entrySet()) {
-                    try {
-                        final var info = entry.getKey();
-                        final var guildId = info.guildId;
-                        final var channelId = info.channelId;
-                        final var messages = entry.getValue();
-
-                        final var guild = bot.getShardManager().getGuildById(guildId);
-                        if (guild == null)
-                            continue;
-
-                        final var channel = guild.getChannelById(StandardGuildMessageChannel.class, channelId);
-                        if (channel == null)
-                            continue;
-
-                        messages.forEach(message -> channel.sendMessage(message.build())
-                                .setAllowedMentions(EnumSet.of(
-                                        Message.MentionType.USER, Message.MentionType.CHANNEL,
-                                        Message.MentionType.ROLE, Message.MentionType.EMOJI)
-                                )
-                                .queue()
-                        );
-                        // If 100 guilds (about 1/10th of all the shard guilds! so very unlikely) do
-                        // get a birthday now, the maximum delay will be 40,000ms, which is 40 seconds.
-                        // Not much of an issue for the end user, but avoid sending too many requests
-                        // to discord at once. If half of all the guilds in the shard do, the delay
-                        // will be about 200,000ms, so 2 minutes.
-                        Thread.sleep(backoff);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                for (var memberId : birthdaysPassed) {
+                    var member = members.get(memberId);
+                    //day passed
+                    if (member != null && member.getRoles().contains(birthdayRole)) {
+                        log.debug("Queueing birthday role removal on guild {} (M: {})", guild.getId(), member.getEffectiveName());
+                        roleRemovals.add(new BirthdayRoleInfo(guild.getId(), member.getId(), birthdayRole));
+                        membersDivested++;
                     }
                 }
 
-                final var endMessage = System.currentTimeMillis();
-                toSend.clear();
-                log.info("Sent all birthday backoff messages, backoff was {}ms, took {}ms", backoff, endMessage - startMessage);
-            });
-
-            backOffRolePool.submit(() -> {
-                log.info("{} (birthdays): Backoff roles (add): {}. Sending them with {}ms backoff.",
-                        jda.getShardInfo(), roleBackoffAdd.size(), roleBackoff
-                );
+                if (birthdayNumber != 0) {
+                    // add the last build content to the list if it wasn't empty
+                    // \n check is here to avoid any potential "cannot send an empty message"
+                    if (!currentContent.isEmpty() && !currentContent.toString().equals("\n")) {
+                        contentList.add(currentContent.toString());
+                    }
 
-                final var startRole = System.currentTimeMillis();
-                for (var roleInfo : roleBackoffAdd) {
-                    try {
-                        var guild = bot.getShardManager().getGuildById(roleInfo.guildId);
-                        if (guild == null)
-                            continue;
+                    // map messages to MessageCreateBuilder
+                    List<MessageCreateBuilder> builders = contentList.stream()
+                            .map(m -> new MessageCreateBuilder().addContent(m))
+                            .collect(Collectors.toList()); // list needs to be mutable
+
+                    // partition embed list into chunks of 10
+                    List<List<MessageEmbed>> embedPartition = Lists.partition(embedList, Message.MAX_EMBED_COUNT);
+                    // add embeds to the first n (n = size) MessageCreateBuilder
+                    for (int i = 0; i < embedPartition.size(); i++) {
+                        if (i >= builders.size()) {
+                            builders.add(new MessageCreateBuilder().addEmbeds(embedPartition.get(i)));
+                        } else {
+                            builders.get(i).addEmbeds(embedPartition.get(i));
+                        }
+                    }
 
-                        guild.addRoleToMember(UserSnowflake.fromId(roleInfo.memberId), roleInfo.role)
-                                .reason(modLogMessage)
-                                .queue();
+                    // One at a time and in order, so the messages don't come out mixed up.
+                    final var info = new BirthdayGuildInfo(guild.getId(), channel.getId());
+                    for (var builder : builders) {
+                        actionQueue.submit(() -> sendMessage(info, builder));
+                        messagesQueued++;
+                    }
+                }
 
-                        Thread.sleep(roleBackoff);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+                // If any of the members weren't found, they left: they shouldn't be on the allowed list anymore.
+                var leftGuild = false;
+                for (var memberId : candidates) {
+                    if (!members.containsKey(memberId)) {
+                        dbGuild.removeAllowedBirthday(String.valueOf(memberId));
+                        leftGuild = true;
                     }
                 }
 
-                log.info("{} (birthdays): Backoff roles (remove): {}. Sending them with {}ms backoff.",
-                        jda.getShardInfo(), roleBackoffRemove.size(), roleBackoff
-                );
+                if (leftGuild) {
+                    dbGuild.updateAllChanged();
+                }
+            }
 
-                for (var roleInfo : roleBackoffRemove) {
-                    try {
-                        var guild = bot.getShardManager().getGuildById(roleInfo.guildId);
-                        if (guild == null)
-                            continue;
+            // Removals go last, as nobody is waiting on those.
+            for (var roleInfo : roleRemovals) {
+                actionQueue.submit(() -> changeRole(roleInfo, false));
+            }
 
-                        guild.removeRoleFromMember(UserSnowflake.fromId(roleInfo.memberId), roleInfo.role)
-                                .reason(modLogMessage)
-                                .queue();
+            final var end = System.currentTimeMillis();
+            log.info("{} (birthdays): checked {} guilds, people assigned: {}, people divested: {}, messages: {}, took {}ms ({} actions queued)",
+                    jda.getShardInfo(), birthdayGuilds.size(), membersAssigned, membersDivested, messagesQueued, (end - start), actionQueue.size()
+            );
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-                        Thread.sleep(roleBackoff);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+    // Gets every member at once, in as few requests as discord lets us. Null if any of them failed.
+    private static Map<Long, Member> retrieveMembers(Guild guild, List<Long> ids) {
+        var members = new HashMap<Long, Member>(ids.size() * 2);
+        for (var chunk : Lists.partition(ids, MEMBER_CHUNK_SIZE)) {
+            try {
+                var array = chunk.stream().mapToLong(Long::longValue).toArray();
+                for (var member : guild.retrieveMembersByIds(array).get()) {
+                    members.put(member.getIdLong(), member);
                 }
+            } catch (Exception e) {
+                log.debug("Couldn't retrieve birthday members on guild {}", guild.getId(), e);
+                return null;
+            }
+        }
 
-                final var endRole = System.currentTimeMillis();
-                roleBackoffAdd.clear();
-                roleBackoffRemove.clear();
+        return members;
+    }
 
-                log.info("{} (birthdays): All roles done (add and removal), backoff was {}ms. Took {}ms",
-                        jda.getShardInfo(), roleBackoff, endRole - startRole
-                );
-            });
-        } catch (Exception e) {
-            e.printStackTrace();
+    private static void changeRole(BirthdayRoleInfo roleInfo, boolean add) {
+        var guild = MantaroBot.getInstance().getShardManager().getGuildById(roleInfo.guildId());
+        if (guild == null) {
+            return;
+        }
+
+        var member = UserSnowflake.fromId(roleInfo.memberId());
+        var action = add ? guild.addRoleToMember(member, roleInfo.role()) : guild.removeRoleFromMember(member, roleInfo.role());
+        action.reason(modLogMessage).queue();
+    }
+
+    private static void sendMessage(BirthdayGuildInfo info, MessageCreateBuilder message) {
+        var guild = MantaroBot.getInstance().getShardManager().getGuildById(info.guildId());
+        if (guild == null) {
+            return;
+        }
+
+        var channel = guild.getChannelById(StandardGuildMessageChannel.class, info.channelId());
+        if (channel == null) {
+            return;
+        }
+
+        channel.sendMessage(message.build())
+                .setAllowedMentions(EnumSet.of(
+                        Message.MentionType.USER, Message.MentionType.CHANNEL,
+                        Message.MentionType.ROLE, Message.MentionType.EMOJI)
+                )
+                .queue();
+    }
+
+    // Whoever in allowed celebrates on this date. Birthdays on February 29th are celebrated on the 28th if it's not a leap year.
+    private static long[] birthdaysOn(BirthdayCacher cache, LocalDate date, LongHashSet allowed) {
+        var birthdays = cache.getBirthdays(MonthDay.from(date), allowed);
+        if (date.getMonth() == Month.FEBRUARY && date.getDayOfMonth() == 28 && !date.isLeapYear()) {
+            var leap = cache.getBirthdays(MonthDay.of(Month.FEBRUARY, 29), allowed);
+            if (leap.length > 0) {
+                var both = Arrays.copyOf(birthdays, birthdays.length + leap.length);
+                System.arraycopy(leap, 0, both, birthdays.length, leap.length);
+                return both;
+            }
         }
+
+        return birthdays;
     }
 
     public static Pair<String, MessageEmbed> buildBirthdayMessage(String message, StandardGuildMessageChannel channel, Member user) {
@@ -21,6 +21,7 @@ import com.google.common.base.Preconditions;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.command.GenericCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
@@ -37,15 +38,18 @@ import net.kodehawa.mantarobot.core.command.slash.SlashCommand;
 import net.kodehawa.mantarobot.core.command.slash.SlashContext;
 import net.kodehawa.mantarobot.core.command.compat.AliasCommand;
 import net.kodehawa.mantarobot.core.command.compat.Command;
+import net.kodehawa.mantarobot.core.command.helpers.AnnotatedCommand;
 import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
 import net.kodehawa.mantarobot.core.command.helpers.CommandPermission;
+import net.kodehawa.mantarobot.core.command.helpers.GuildCommandPermissions;
 import net.kodehawa.mantarobot.core.command.helpers.HelpContent;
 import net.kodehawa.mantarobot.core.command.i18n.I18nContext;
+import net.kodehawa.mantarobot.core.listeners.command.CommandTask;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedDatabase;
-import net.kodehawa.mantarobot.db.entities.MongoGuild;
-import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.db.entities.GuildCommandSettings;
+import net.kodehawa.mantarobot.db.entities.UserCommandSettings;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
@@ -53,7 +57,7 @@ import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -93,22 +97,53 @@ public class CommandRegistry {
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
+    /**
+     * Finds what a text command name or alias would run, without loading anything.
+     *
+     * @return The command it runs, or null if there's no such command (custom commands, for example).
+     */
+    @Nullable
+    public CommandInfo describe(String cmdName) {
+        var command = commands.get(cmdName.toLowerCase());
+        if (command == null) {
+            return null;
+        }
+
+        var root = root(command);
+        return new CommandInfo(name(command, cmdName), root == null ? null : root.category());
+    }
+
+    @Nullable
+    public CommandInfo describeSlash(String name) {
+        return describe(getCommandManager().slashCommands().get(name.toLowerCase()));
+    }
+
+    @Nullable
+    public CommandInfo describeContextUser(String name) {
+        return describe(getCommandManager().contextUserCommands().get(name));
+    }
+
+    private static CommandInfo describe(@Nullable AnnotatedCommand<?> command) {
+        return command == null ? null : new CommandInfo(command.getName(), command.getCategory());
+    }
+
     // Process non-slash commands.
     // We filter non-guild events early on.
-    public void process(MessageReceivedEvent event, MongoGuild dbGuild, String cmdName, String content, String prefix, boolean isMention) {
+    public void process(MessageReceivedEvent event, GuildCommandPermissions permissions, String cmdName, String content, String prefix, boolean isMention) {
         if (cmdName.length() >= 50) {
             return;
         }
 
         final var managedDatabase = MantaroData.db();
         final var start = System.currentTimeMillis();
+        final var dbGuild = permissions.getSettings();
         var command = commands.get(cmdName.toLowerCase());
 
         if (command == null) {
             // We will create a proper I18nContext once the custom command goes through, if it does. We don't need it otherwise.
             CustomCmds.handle(prefix, cmdName, new TextContext(event,
                     new I18nContext(),
-                    event.getMessage().getContentRaw().substring(prefix.length()), isMention), dbGuild, content);
+                    event.getMessage().getContentRaw().substring(prefix.length()), isMention), permissions, content);
             return;
         }
 
@@ -117,15 +152,16 @@ public class CommandRegistry {
         // Variable used in lambda expression should be final or effectively final...
         final var cmd = command;
         final var guild = event.getGuild();
-        final var mantaroData = managedDatabase.getMantaroData();
 
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
+        if (managedDatabase.isGuildBlacklisted(guild.getId())) {
             log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
             return;
         }
 
         // !! Permission check start
-        if (dbGuild.getDisabledCommands().contains(name(cmd, cmdName))) {
+        final var commandName = name(cmd, cmdName);
+        final var rootCategory = root(cmd).category();
+        if (permissions.isCommandDisabled(commandName)) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.COMMAND);
             return;
         }
@@ -136,55 +172,48 @@ public class CommandRegistry {
         }
 
         final var roles = member.getRoles();
-        final var channelDisabledCommands = dbGuild.getChannelSpecificDisabledCommands().get(channel.getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(name(cmd, cmdName))) {
+        if (permissions.isCommandDisabled(channel.getId(), commandName)) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.COMMAND_SPECIFIC);
             return;
         }
 
-        if (dbGuild.getDisabledUsers().contains(author.getId()) && isNotAdmin(member)) {
+        if (permissions.isUserDisabled(author.getId()) && isNotAdmin(member)) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.USER);
             return;
         }
 
         var isOptions = cmdName.equalsIgnoreCase("opts");
-        if (dbGuild.getDisabledChannels().contains(channel.getId()) && !isOptions) {
+        if (permissions.isChannelDisabled(channel.getId()) && !isOptions) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.CHANNEL);
             return;
         }
 
-        if (dbGuild.getDisabledCategories().contains(root(cmd).category()) && !isOptions) {
+        if (permissions.isCategoryDisabled(rootCategory) && !isOptions) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.CATEGORY);
             return;
         }
 
-        if (dbGuild.getChannelSpecificDisabledCategories().computeIfAbsent(
-                channel.getId(), c -> new ArrayList<>()).contains(root(cmd).category()) && !isOptions) {
+        if (permissions.isCategoryDisabled(channel.getId(), rootCategory) && !isOptions) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.SPECIFIC_CATEGORY);
             return;
         }
 
-        if (!dbGuild.getDisabledRoles().isEmpty() && roles.stream().anyMatch(
-                r -> dbGuild.getDisabledRoles().contains(r.getId())) && isNotAdmin(member)) {
+        if (permissions.hasDisabledRole(roles) && isNotAdmin(member)) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.ROLE);
             return;
         }
 
-        final var roleSpecificDisabledCommands = dbGuild.getRoleSpecificDisabledCommands();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(name(cmd, cmdName))) && isNotAdmin(member)) {
+        if (permissions.isCommandDisabled(roles, commandName) && isNotAdmin(member)) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.SPECIFIC_ROLE);
             return;
         }
 
-        final var roleSpecificDisabledCategories = dbGuild.getRoleSpecificDisabledCategories();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(root(cmd).category())) && isNotAdmin(member)) {
+        if (permissions.isCategoryDisabled(roles, rootCategory) && isNotAdmin(member)) {
             sendDisabledNotice(event, dbGuild, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
             return;
         }
 
-        if (mantaroData.getBlackListedUsers().contains(author.getId())) {
+        if (managedDatabase.isUserBlacklisted(author.getId())) {
             if (!rl.process(author)) {
                 return;
             }
@@ -214,7 +243,7 @@ public class CommandRegistry {
         }
         // !! Permission check end
 
-        final var dbUser = managedDatabase.getUser(author);
+        final var dbUser = managedDatabase.getUserCommandSettings(author.getId());
         renewPremiumKey(managedDatabase, author, dbUser, dbGuild);
 
         // Used a command on the new system?
@@ -251,9 +280,7 @@ public class CommandRegistry {
     // Process (user) context interaction.
     public void process(UserContextInteractionEvent event) {
         if (event.getGuild() == null) {
-            event.reply("This bot does not accept commands in Private Messages. You can add it to your server at https://add.mantaro.site")
-                    .setEphemeral(true)
-                    .queue();
+            replyEphemeral(event, "This bot does not accept commands in Private Messages. You can add it to your server at https://add.mantaro.site");
             return;
         }
 
@@ -263,39 +290,38 @@ public class CommandRegistry {
             return;
         }
 
+        if (!deferIfLate(event, cmd)) {
+            return;
+        }
+
         final var managedDatabase = MantaroData.db();
-        final var mantaroData = managedDatabase.getMantaroData();
         final var guild = event.getGuild();
 
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
+        if (managedDatabase.isGuildBlacklisted(guild.getId())) {
             log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
-            event.reply("Not accepting commands from this server.")
-                    .setEphemeral(true)
-                    .queue();
+            replyEphemeral(event, "Not accepting commands from this server.");
             return;
         }
 
         if (!cmd.getPermission().test(event.getMember())) {
-            event.reply(EmoteReference.STOP + "You have no permissions to trigger this command :(")
-                    .setEphemeral(true)
-                    .queue();
+            replyEphemeral(event, EmoteReference.STOP + "You have no permissions to trigger this command :(");
             return;
         }
 
         final var author = event.getUser();
-        final var dbGuild = managedDatabase.getGuild(event.getGuild());
+        final var dbGuild = managedDatabase.getGuildCommandSettings(event.getGuild());
         // If we are in the patreon bot, deny all requests from unknown guilds.
         if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
-            event.reply("""
+            replyEphemeral(event, """
                             :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
                             **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
                             If you didn't contact Kodehawa prior to adding this bot to this server, please do so so we can link it to your pledge.
                             """
-            ).setEphemeral(true).queue();
+            );
             return;
         }
 
-        final var dbUser = managedDatabase.getUser(author);
+        final var dbUser = managedDatabase.getUserCommandSettings(author.getId());
         cmd.execute(new InteractionContext<>(event, new I18nContext(dbGuild, dbUser)));
         commandLog.debug("Context (user) command: {}, User: {} ({}), Guild: {}" ,
                 cmd.getName(), author.getName(), author.getId(), guild.getId()
@@ -309,9 +335,7 @@ public class CommandRegistry {
     // Process slash commands.
     public void process(SlashCommandInteractionEvent event) {
         if (event.getGuild() == null) {
-            event.reply("This bot does not accept commands in Private Messages. You can add it to your server at https://add.mantaro.site")
-                    .setEphemeral(true)
-                    .queue();
+            replyEphemeral(event, "This bot does not accept commands in Private Messages. You can add it to your server at https://add.mantaro.site");
             return;
         }
 
@@ -323,15 +347,16 @@ public class CommandRegistry {
             return;
         }
 
+        if (!deferIfLate(event, command)) {
+            return;
+        }
+
         final var managedDatabase = MantaroData.db();
-        final var mantaroData = managedDatabase.getMantaroData();
         final var guild = event.getGuild();
 
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
+        if (managedDatabase.isGuildBlacklisted(guild.getId())) {
             log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
-            event.reply("Not accepting commands from this server.")
-                    .setEphemeral(true)
-                    .queue();
+            replyEphemeral(event, "Not accepting commands from this server.");
             return;
         }
 
@@ -340,10 +365,11 @@ public class CommandRegistry {
         // Variable used in lambda expression should be final or effectively final...
         final var cmd = command;
         final var name = cmd.getName();
-        final var dbGuild = managedDatabase.getGuild(event.getGuild());
+        final var permissions = managedDatabase.getCommandPermissions(event.getGuild());
+        final var dbGuild = permissions.getSettings();
 
         // !! Permission check start
-        if (dbGuild.getDisabledCommands().contains(name)) {
+        if (permissions.isCommandDisabled(name)) {
             sendDisabledNotice(event, CommandDisableLevel.COMMAND);
             return;
         }
@@ -354,83 +380,76 @@ public class CommandRegistry {
         }
 
         final var roles = member.getRoles();
-        final var channelDisabledCommands = dbGuild.getChannelSpecificDisabledCommands().get(channel.getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(name)) {
+        if (permissions.isCommandDisabled(channel.getId(), name)) {
             sendDisabledNotice(event, CommandDisableLevel.COMMAND_SPECIFIC);
             return;
         }
 
-        if (dbGuild.getDisabledUsers().contains(author.getId()) && isNotAdmin(member)) {
+        if (permissions.isUserDisabled(author.getId()) && isNotAdmin(member)) {
             sendDisabledNotice(event, CommandDisableLevel.USER);
             return;
         }
-        if (dbGuild.getDisabledChannels().contains(channel.getId())) {
+        if (permissions.isChannelDisabled(channel.getId())) {
             sendDisabledNotice(event, CommandDisableLevel.CHANNEL);
             return;
         }
 
-        if (dbGuild.getDisabledCategories().contains(cmd.getCategory())) {
+        if (permissions.isCategoryDisabled(cmd.getCategory())) {
             sendDisabledNotice(event, CommandDisableLevel.CATEGORY);
             return;
         }
 
-        if (dbGuild.getChannelSpecificDisabledCategories().computeIfAbsent(
-                channel.getId(), c -> new ArrayList<>()).contains(cmd.getCategory())) {
+        if (permissions.isCategoryDisabled(channel.getId(), cmd.getCategory())) {
             sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_CATEGORY);
             return;
         }
 
-        if (!dbGuild.getDisabledRoles().isEmpty() && roles.stream().anyMatch(
-                r -> dbGuild.getDisabledRoles().contains(r.getId())) && isNotAdmin(member)) {
+        if (permissions.hasDisabledRole(roles) && isNotAdmin(member)) {
             sendDisabledNotice(event, CommandDisableLevel.ROLE);
             return;
         }
 
-        final var roleSpecificDisabledCommands = dbGuild.getRoleSpecificDisabledCommands();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(name)) && isNotAdmin(member)) {
+        if (permissions.isCommandDisabled(roles, name) && isNotAdmin(member)) {
             sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_ROLE);
             return;
         }
 
-        final var roleSpecificDisabledCategories = dbGuild.getRoleSpecificDisabledCategories();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(cmd.getCategory())) && isNotAdmin(member)) {
+        if (permissions.isCategoryDisabled(roles, cmd.getCategory()) && isNotAdmin(member)) {
             sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
             return;
         }
 
-        if (mantaroData.getBlackListedUsers().contains(author.getId())) {
+        if (managedDatabase.isUserBlacklisted(author.getId())) {
             if (!rl.process(author)) {
                 return;
             }
 
-            event.reply("""
+            replyEphemeral(event, """
                     :x: You have been blocked from using all of Mantaro's functions, likely for botting or hitting the spam filter.
                     If you wish to get more details on why or appeal the ban, send an email to `contact@mantaro.site`. Make sure to be sincere.
                     """
-            ).setEphemeral(true).queue();
+            );
             return;
         }
 
         // If we are in the patreon bot, deny all requests from unknown guilds.
         if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
-            event.reply("""
+            replyEphemeral(event, """
                             :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
                             **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
                             If you didn't contact Kodehawa prior to adding this bot to this server, please do so so we can link it to your pledge.
                             """
-            ).setEphemeral(true).queue();
+            );
             return;
         }
 
         if (!cmd.getPermission().test(member)) {
-            event.reply(EmoteReference.STOP + "You have no permissions to trigger this command :(").setEphemeral(true).queue();
+            replyEphemeral(event, EmoteReference.STOP + "You have no permissions to trigger this command :(");
             return;
         }
         // !! Permission check end
 
-        final var dbUser = managedDatabase.getUser(author);
+        final var dbUser = managedDatabase.getUserCommandSettings(author.getId());
         renewPremiumKey(managedDatabase, author, dbUser, dbGuild);
 
         cmd.execute(new SlashContext(event, new I18nContext(dbGuild, dbUser)));
@@ -457,14 +476,14 @@ public class CommandRegistry {
         }
     }
 
-    public void renewPremiumKey(ManagedDatabase managedDatabase, User author, MongoUser dbUser, MongoGuild guildData) {
+    public void renewPremiumKey(ManagedDatabase managedDatabase, User author, UserCommandSettings dbUser, GuildCommandSettings guildData) {
         if (dbUser.getPremiumKey() != null) {
             final var currentKey = managedDatabase.getPremiumKey(dbUser.getPremiumKey());
             if (currentKey != null) {
                 // 10 days before expiration or best fit.
                 if (currentKey.validFor() <= 10 && currentKey.validFor() > 1) {
                     // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
-                    if (!currentKey.renew() && !dbUser.hasReceivedExpirationWarning()) {
+                    if (!currentKey.renew() && !dbUser.isReceivedExpirationWarning()) {
                         author.openPrivateChannel().queue(privateChannel ->
                                 privateChannel.sendMessage(
                                         """
@@ -482,8 +501,10 @@ public class CommandRegistry {
                         );
                     }
 
-                    dbUser.receivedExpirationWarning(true);
-                    dbUser.updateAllChanged();
+                    // Only place we need to write to the user here, so only load all of it now.
+                    var fullUser = managedDatabase.getUser(author);
+                    fullUser.receivedExpirationWarning(true);
+                    fullUser.updateAllChanged();
                 }
             }
         }
@@ -557,7 +578,7 @@ public class CommandRegistry {
     }
 
 
-    private void sendDisabledNotice(MessageReceivedEvent event, MongoGuild data, CommandDisableLevel level) {
+    private void sendDisabledNotice(MessageReceivedEvent event, GuildCommandSettings data, CommandDisableLevel level) {
         if (data.isCommandWarningDisplay() && level != CommandDisableLevel.NONE) {
             event.getChannel().sendMessageFormat("%sThis command is disabled on this server. Reason: %s",
                     EmoteReference.ERROR, Utils.capitalize(level.getName())
@@ -566,9 +587,84 @@ public class CommandRegistry {
     }
 
     private void sendDisabledNotice(SlashCommandInteractionEvent event, CommandDisableLevel level) {
-        event.reply("%sThis command is disabled on this server. Reason: %s"
+        replyEphemeral(event, "%sThis command is disabled on this server. Reason: %s"
                 .formatted(EmoteReference.ERROR, Utils.capitalize(level.getName()))
-        ).setEphemeral(true).queue();
+        );
+    }
+
+    // It might have been deferred already, in which case only the hook can answer it.
+    private static void replyEphemeral(GenericCommandInteractionEvent event, String content) {
+        if (event.isAcknowledged()) {
+            event.getHook().sendMessage(content).setEphemeral(true).queue();
+        } else {
+            event.reply(content).setEphemeral(true).queue();
+        }
+    }
+
+    // The lookups before running the command can take a while when the database is busy, and discord only gives us
+    // three seconds to answer. If there isn't much left, acknowledge it first, so the command can take its time.
+    // Modals can't be deferred: they have to be the first answer.
+    // Returns false if it couldn't be acknowledged, as there's no way to answer it then.
+    private boolean deferIfLate(SlashCommandInteractionEvent event, SlashCommand command) {
+        var target = deferTarget(event, command);
+        return target == null || deferIfLate(event, "slash", target.isEphemeral());
+    }
+
+    private boolean deferIfLate(UserContextInteractionEvent event, ContextCommand<User> command) {
+        return command.isModal() || deferIfLate(event, "context", false);
+    }
+
+    private boolean deferIfLate(GenericCommandInteractionEvent event, String type, boolean ephemeral) {
+        var remaining = CommandTask.remaining(event);
+        if (event.isAcknowledged() || remaining >= config.getSlashDeferThresholdMillis()) {
+            return true;
+        }
+
+        Metrics.INTERACTION_ACK_MARGIN.labels(type, "defer").observe(remaining);
+        try {
+            event.deferReply(ephemeral).complete();
+            return true;
+        } catch (Exception e) {
+            log.debug("Couldn't defer late interaction {} ({}ms left)", event.getId(), remaining, e);
+            return false;
+        }
+    }
+
+    /**
+     * Acknowledges an interaction right away, without waiting for discord to answer. Used when it's going to wait
+     * behind something else before it can run, so it doesn't run out of time while waiting.
+     * Does nothing for modals, as those have to be the first answer.
+     */
+    public void deferNow(SlashCommandInteractionEvent event) {
+        var command = getCommandManager().slashCommands().get(event.getName().toLowerCase());
+        SlashCommand target = command == null ? null : deferTarget(event, command);
+        if (target != null) {
+            deferNow(event, "slash", target.isEphemeral());
+        }
+    }
+
+    public void deferNow(UserContextInteractionEvent event) {
+        var command = getCommandManager().contextUserCommands().get(event.getFullCommandName());
+        if (command != null && !command.isModal()) {
+            deferNow(event, "context", false);
+        }
+    }
+
+    private static void deferNow(GenericCommandInteractionEvent event, String type, boolean ephemeral) {
+        if (event.isAcknowledged()) {
+            return;
+        }
+
+        Metrics.INTERACTION_ACK_MARGIN.labels(type, "queued").observe(CommandTask.remaining(event));
+        event.deferReply(ephemeral).queue(null, e -> log.debug("Couldn't defer queued interaction {}", event.getId(), e));
+    }
+
+    // Whatever answers this, the command or its subcommand. Null if it answers with a modal, which can't be deferred.
+    @Nullable
+    private static SlashCommand deferTarget(SlashCommandInteractionEvent event, SlashCommand command) {
+        var sub = command.getSubCommands().get(event.getSubcommandName());
+        var target = sub == null ? command : sub;
+        return command.isModal() || target.isModal() ? null : target;
     }
 
     private static String name(Command c, String userInput) {
@@ -643,6 +739,8 @@ public class CommandRegistry {
         }
     }
 
+    public record CommandInfo(String name, @Nullable CommandCategory category) { }
+
     enum CommandDisableLevel {
         NONE("None"),
         CATEGORY("Disabled category on server"),
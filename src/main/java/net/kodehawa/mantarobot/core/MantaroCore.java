@@ -44,7 +44,10 @@ import net.kodehawa.mantarobot.commands.music.listener.VoiceChannelListener;
 import net.kodehawa.mantarobot.core.cache.EvictingCachePolicy;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
 import net.kodehawa.mantarobot.core.listeners.MantaroListener;
+import net.kodehawa.mantarobot.core.listeners.command.CommandAdmission;
+import net.kodehawa.mantarobot.core.listeners.command.CommandLanes;
 import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
+import net.kodehawa.mantarobot.core.listeners.command.CommandTask;
 import net.kodehawa.mantarobot.core.listeners.events.PostLoadEvent;
 import net.kodehawa.mantarobot.core.listeners.events.PreLoadEvent;
 import net.kodehawa.mantarobot.core.listeners.operations.ButtonOperations;
@@ -56,9 +59,11 @@ import net.kodehawa.mantarobot.core.shard.discord.BotGateway;
 import net.kodehawa.mantarobot.core.shard.jda.BucketedController;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.IndexRegistry;
 import net.kodehawa.mantarobot.options.annotations.Option;
 import net.kodehawa.mantarobot.options.event.OptionRegistryEvent;
 import net.kodehawa.mantarobot.utils.Utils;
+import net.kodehawa.mantarobot.utils.VirtualThreadExecutor;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
 import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import net.kodehawa.mantarobot.utils.external.BotListPost;
@@ -73,6 +78,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -84,6 +90,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -101,9 +109,10 @@ public class MantaroCore {
 
     private LoadState loadState = PRELOAD;
     private final Map<Integer, Shard> shards = new ConcurrentHashMap<>();
-    private final ExecutorService threadPool = Executors.newCachedThreadPool(
-            new ThreadFactoryBuilder().setNameFormat("Mantaro Thread-%d").build()
-    );
+    private final ExecutorService threadPool;
+    private final ExecutorService commandExecutor;
+    private final CommandLanes commandLanes;
+    private final CommandAdmission commandAdmission;
     private final Config config;
     private final boolean isDebug;
     private String commandsPackage;
@@ -116,7 +125,56 @@ public class MantaroCore {
     public MantaroCore(Config config, boolean isDebug) {
         this.config = config;
         this.isDebug = isDebug;
+        this.threadPool = createThreadPool(config);
+        if (threadPool instanceof VirtualThreadExecutor) {
+            // Nothing ever waits for a virtual thread, so there's no queue to put in order there.
+            this.commandAdmission = new CommandAdmission(config);
+            this.commandExecutor = threadPool;
+        } else {
+            var queue = new PriorityBlockingQueue<Runnable>(64, CommandTask.ORDER);
+            this.commandAdmission = new CommandAdmission(config, queue);
+            this.commandExecutor = createCommandExecutor(config, queue, commandAdmission);
+        }
+
+        this.commandLanes = new CommandLanes(commandExecutor, Duration.ofMillis(config.getCommandLaneStuckMillis()));
         Metrics.THREAD_POOL_COLLECTOR.add("mantaro-executor", threadPool);
+        if (commandExecutor != threadPool) {
+            Metrics.THREAD_POOL_COLLECTOR.add("mantaro-command-executor", commandExecutor);
+        }
+    }
+
+    // When every thread is busy, whatever has to be answered sooner goes first (see CommandTask).
+    // Threads time out when idle, same as on the cached pool.
+    private static ExecutorService createCommandExecutor(Config config, PriorityBlockingQueue<Runnable> queue,
+                                                         CommandAdmission admission) {
+        var threads = Math.max(1, config.getCommandThreads());
+        var executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS, queue,
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Command-%d").build()
+        ) {
+            // How long commands wait in here is how admission control tells we're falling behind.
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                if (task instanceof CommandTask commandTask) {
+                    admission.started(commandTask.waited());
+                }
+            }
+        };
+
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    // Commands mostly wait on discord, the database or redis, so they're cheap to park on a virtual thread.
+    private static ExecutorService createThreadPool(Config config) {
+        if (config.isCommandVirtualThreads()) {
+            log.info("Running commands on virtual threads");
+            return new VirtualThreadExecutor("Mantaro Virtual Thread-");
+        }
+
+        return Executors.newCachedThreadPool(
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Thread-%d").build()
+        );
     }
 
     public boolean hasLoadedCompletely() {
@@ -274,7 +332,7 @@ public class MantaroCore {
                     .setSessionController(controller)
                     .addEventListeners(eventListeners)
                     .addEventListenerProviders(List.of(
-                            id -> new CommandListener(commandProcessor, threadPool, getShard(id).getMessageCache()),
+                            id -> new CommandListener(commandProcessor, commandExecutor, commandLanes, commandAdmission, getShard(id).getMessageCache()),
                             id -> new MantaroListener(threadPool, getShard(id).getMessageCache()),
                             id -> getShard(id).getListener()
                     ))
@@ -544,6 +602,18 @@ public class MantaroCore {
             startUpdaters();
         }
 
+        // One node is enough to keep indexes and leaderboards in step with the database.
+        // Building an index can take a while, and leaderboards are rebuilt using them, so both go on their own thread.
+        if (bot.isMasterNode()) {
+            var databaseUpkeep = new Thread(() -> {
+                IndexRegistry.ensureIndexes(MantaroData.db().dbMantaro());
+                MantaroData.db().getLeaderboards().startRebuilding(config.getLeaderboardRebuildMinutes());
+            }, "Mantaro Index Check");
+
+            databaseUpkeep.setDaemon(true);
+            databaseUpkeep.start();
+        }
+
         bot.startCheckingBirthdays();
         startMonitor();
         var slashList = CommandProcessor.REGISTRY.getCommandManager().getSlashCommandsList();
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.helpers;
+
+import net.dv8tion.jda.api.entities.Role;
+import net.kodehawa.mantarobot.db.entities.GuildCommandSettings;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Immutable, precompiled view of what a guild disabled, so checking a command is a handful of hash lookups.
+ * Built from {@link GuildCommandSettings} and kept by {@link net.kodehawa.mantarobot.db.ManagedDatabase} until the guild changes.
+ */
+public class GuildCommandPermissions {
+    private final GuildCommandSettings settings;
+    private final Set<String> disabledCommands;
+    private final Set<String> disabledUsers;
+    private final Set<String> disabledChannels;
+    private final Set<String> disabledRoles;
+    private final Set<CommandCategory> disabledCategories;
+    private final Map<String, Set<String>> channelDisabledCommands;
+    private final Map<String, Set<CommandCategory>> channelDisabledCategories;
+    private final Map<String, Set<String>> roleDisabledCommands;
+    private final Map<String, Set<CommandCategory>> roleDisabledCategories;
+
+    private GuildCommandPermissions(GuildCommandSettings settings) {
+        this.settings = settings;
+        this.disabledCommands = strings(settings.getDisabledCommands());
+        this.disabledUsers = strings(settings.getDisabledUsers());
+        this.disabledChannels = strings(settings.getDisabledChannels());
+        this.disabledRoles = strings(settings.getDisabledRoles());
+        this.disabledCategories = categories(settings.getDisabledCategories());
+        this.channelDisabledCommands = compile(settings.getChannelSpecificDisabledCommands(), GuildCommandPermissions::strings);
+        this.channelDisabledCategories = compile(settings.getChannelSpecificDisabledCategories(), GuildCommandPermissions::categories);
+        this.roleDisabledCommands = compile(settings.getRoleSpecificDisabledCommands(), GuildCommandPermissions::strings);
+        this.roleDisabledCategories = compile(settings.getRoleSpecificDisabledCategories(), GuildCommandPermissions::categories);
+    }
+
+    public static GuildCommandPermissions of(GuildCommandSettings settings) {
+        return new GuildCommandPermissions(settings);
+    }
+
+    /**
+     * The settings this was built from. Shared between threads, so don't change them.
+     */
+    public GuildCommandSettings getSettings() {
+        return settings;
+    }
+
+    public boolean isCommandDisabled(String command) {
+        return disabledCommands.contains(command);
+    }
+
+    public boolean isCommandDisabled(String channelId, String command) {
+        return channelDisabledCommands.getOrDefault(channelId, Set.of()).contains(command);
+    }
+
+    public boolean isCategoryDisabled(CommandCategory category) {
+        return category != null && disabledCategories.contains(category);
+    }
+
+    public boolean isCategoryDisabled(String channelId, CommandCategory category) {
+        return category != null && channelDisabledCategories.getOrDefault(channelId, Set.of()).contains(category);
+    }
+
+    public boolean isUserDisabled(String userId) {
+        return disabledUsers.contains(userId);
+    }
+
+    public boolean isChannelDisabled(String channelId) {
+        return disabledChannels.contains(channelId);
+    }
+
+    public boolean hasDisabledRole(List<Role> roles) {
+        if (disabledRoles.isEmpty()) {
+            return false;
+        }
+
+        for (var role : roles) {
+            if (disabledRoles.contains(role.getId())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isCommandDisabled(List<Role> roles, String command) {
+        if (roleDisabledCommands.isEmpty()) {
+            return false;
+        }
+
+        for (var role : roles) {
+            var commands = roleDisabledCommands.get(role.getId());
+            if (commands != null && commands.contains(command)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isCategoryDisabled(List<Role> roles, CommandCategory category) {
+        if (roleDisabledCategories.isEmpty() || category == null) {
+            return false;
+        }
+
+        for (var role : roles) {
+            var categories = roleDisabledCategories.get(role.getId());
+            if (categories != null && categories.contains(category)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public int getDisabledCommandCount() {
+        return disabledCommands.size();
+    }
+
+    public int getDisabledCommandCount(String channelId) {
+        return channelDisabledCommands.getOrDefault(channelId, Set.of()).size();
+    }
+
+    private static Set<String> strings(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return Set.of();
+        }
+
+        var set = new HashSet<String>(values.size() * 2);
+        for (var value : values) {
+            if (value != null) {
+                set.add(value);
+            }
+        }
+
+        return Collections.unmodifiableSet(set);
+    }
+
+    private static Set<CommandCategory> categories(Collection<CommandCategory> values) {
+        if (values == null || values.isEmpty()) {
+            return Set.of();
+        }
+
+        var set = EnumSet.noneOf(CommandCategory.class);
+        values.stream().filter(Objects::nonNull).forEach(set::add);
+        return Collections.unmodifiableSet(set);
+    }
+
+    private static <V, R> Map<String, Set<R>> compile(Map<String, ? extends V> map, Function<V, Set<R>> compiler) {
+        if (map == null || map.isEmpty()) {
+            return Map.of();
+        }
+
+        var compiled = new HashMap<String, Set<R>>(map.size() * 2);
+        map.forEach((id, values) -> {
+            var set = compiler.apply(values);
+            // Empty overrides are left around by the options, no need to keep them.
+            if (id != null && !set.isEmpty()) {
+                compiled.put(id, set);
+            }
+        });
+
+        return Collections.unmodifiableMap(compiled);
+    }
+}
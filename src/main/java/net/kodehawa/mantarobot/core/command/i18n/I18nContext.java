@@ -18,12 +18,16 @@
 package net.kodehawa.mantarobot.core.command.i18n;
 
 import net.kodehawa.mantarobot.data.I18n;
+import net.kodehawa.mantarobot.db.entities.GuildCommandSettings;
 import net.kodehawa.mantarobot.db.entities.MongoGuild;
 import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.db.entities.UserCommandSettings;
 
 public class I18nContext {
     private MongoGuild guildData;
     private MongoUser userData;
+    private GuildCommandSettings guildSettings;
+    private UserCommandSettings userSettings;
     private I18n i18n = null;
 
     public I18nContext(MongoGuild guildData, MongoUser userData) {
@@ -31,6 +35,11 @@ public class I18nContext {
         this.userData = userData;
     }
 
+    public I18nContext(GuildCommandSettings guildSettings, UserCommandSettings userSettings) {
+        this.guildSettings = guildSettings;
+        this.userSettings = userSettings;
+    }
+
     public I18nContext(I18n i18n) {
         this.i18n = i18n;
     }
@@ -53,15 +62,16 @@ public class I18nContext {
             return i18n.getLanguage();
         }
 
-        if (guildData == null && userData == null) {
+        if (guildData == null && userData == null && guildSettings == null && userSettings == null) {
             return "en_US";
         }
 
-        String lang;
-        if (userData == null)
-            lang = guildData.getLang();
-        else
-            lang = userData.getLang() == null || userData.getLang().isEmpty() ? guildData.getLang() : userData.getLang();
+        var guildLang = guildData != null ? guildData.getLang() : guildSettings != null ? guildSettings.getLang() : null;
+        var userLang = userData != null ? userData.getLang() : userSettings != null ? userSettings.getLang() : null;
+        String lang = userLang == null || userLang.isEmpty() ? guildLang : userLang;
+        if (lang == null) {
+            return "en_US";
+        }
 
         I18n context = I18n.getForLanguage(lang);
         return context == null ? "en_US" : lang;
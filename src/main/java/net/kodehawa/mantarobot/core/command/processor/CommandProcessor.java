@@ -24,6 +24,9 @@ import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEven
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.UnitOfWork;
+
+import javax.annotation.Nullable;
 
 import static net.kodehawa.mantarobot.utils.StringUtils.splitArgs;
 
@@ -32,12 +35,62 @@ public class CommandProcessor {
     private static final Histogram commandTime = Histogram.build()
             .name("command_time").help("Time it takes for a command to be ran.")
             .register();
+    private final PrefixMatcher prefixes;
+
+    public CommandProcessor() {
+        var config = MantaroData.config().get();
+        this.prefixes = new PrefixMatcher(config.prefix, config.getClientId());
+    }
+
+    /**
+     * Cheap check for every message, before handing it off to run: false if it can't be a command.
+     * Never goes to the database. If we don't know the custom prefix of the guild yet, it might be one.
+     */
+    public boolean mightBeCommand(MessageReceivedEvent event) {
+        var content = event.getMessage().getContentRaw();
+        if (prefixes.match(content, null) != null) {
+            return true;
+        }
+
+        var customPrefix = MantaroData.db().getCachedCustomPrefix(event.getGuild().getId());
+        return customPrefix == null || (!customPrefix.isEmpty() && PrefixMatcher.startsWith(content, customPrefix));
+    }
+
+    /**
+     * What command this message would run, going by the same prefixes as mightBeCommand. Never goes to the database.
+     *
+     * @return The command, or null if we can't tell (not a command, a custom command, or the prefix isn't known yet).
+     */
+    @Nullable
+    public CommandRegistry.CommandInfo describe(MessageReceivedEvent event) {
+        var content = event.getMessage().getContentRaw();
+        var customPrefix = MantaroData.db().getCachedCustomPrefix(event.getGuild().getId());
+        var match = prefixes.match(content, customPrefix == null || customPrefix.isEmpty() ? null : customPrefix);
+        if (match == null) {
+            return null;
+        }
+
+        return REGISTRY.describe(splitArgs(content.substring(match.prefix().length()), 2)[0]);
+    }
+
+    @Nullable
+    public CommandRegistry.CommandInfo describe(SlashCommandInteractionEvent event) {
+        return REGISTRY.describeSlash(event.getName());
+    }
+
+    @Nullable
+    public CommandRegistry.CommandInfo describe(UserContextInteractionEvent event) {
+        return REGISTRY.describeContextUser(event.getFullCommandName());
+    }
 
     @SuppressWarnings("SameReturnValue")
     public boolean runContextUser(UserContextInteractionEvent event) {
         final long start = System.currentTimeMillis();
         // Run the actual command here.
-        REGISTRY.process(event);
+        // Entities loaded during the command are shared and written once, when it ends.
+        try (var ignored = UnitOfWork.open(MantaroData.db())) {
+            REGISTRY.process(event);
+        }
 
         final long end = System.currentTimeMillis();
         commandTime.observe(end - start);
@@ -48,7 +101,9 @@ public class CommandProcessor {
     public boolean runSlash(SlashCommandInteractionEvent event) {
         final long start = System.currentTimeMillis();
         // Run the actual command here.
-        REGISTRY.process(event);
+        try (var ignored = UnitOfWork.open(MantaroData.db())) {
+            REGISTRY.process(event);
+        }
 
         final long end = System.currentTimeMillis();
         commandTime.observe(end - start);
@@ -59,50 +114,32 @@ public class CommandProcessor {
         REGISTRY.processAutocomplete(event);
     }
 
+    public void deferNow(SlashCommandInteractionEvent event) {
+        REGISTRY.deferNow(event);
+    }
+
+    public void deferNow(UserContextInteractionEvent event) {
+        REGISTRY.deferNow(event);
+    }
+
     public boolean run(MessageReceivedEvent event) {
         final long start = System.currentTimeMillis();
-        final var config = MantaroData.config().get();
         // The command executed, in raw form.
         var rawCmd = event.getMessage().getContentRaw();
-        // Lower-case raw cmd check, only used for prefix checking.
-        final var lowerRawCmd = rawCmd.toLowerCase();
-
-        // Mantaro prefixes.
-        String[] prefix = config.prefix;
         // Guild-specific prefix.
-        final var dbGuild = MantaroData.db().getGuild(event.getGuild());
-        var customPrefix = dbGuild.getGuildCustomPrefix();
-        // Possible mentions
-        boolean isMention = false;
-        String[] mentionPrefixes = {
-                "<@%s> ".formatted(config.getClientId()),
-                "<@!%s> ".formatted(config.getClientId())
-        };
+        final var permissions = MantaroData.db().getCommandPermissions(event.getGuild());
+        var customPrefix = permissions.getSettings().getGuildCustomPrefix();
 
         // What prefix did this person use.
-        String usedPrefix = null;
-        for (String mention : mentionPrefixes) {
-            if (lowerRawCmd.startsWith(mention)) {
-                usedPrefix = mention;
-                isMention = true;
-            }
-        }
-
-        for (String s : prefix) {
-            if (lowerRawCmd.startsWith(s)) {
-                usedPrefix = s;
-            }
+        var match = prefixes.match(rawCmd, customPrefix);
+        if (match == null) {
+            return false;
         }
 
         // Remove prefix from arguments.
-        if (usedPrefix != null && lowerRawCmd.startsWith(usedPrefix.toLowerCase())) {
-            rawCmd = rawCmd.substring(usedPrefix.length());
-        } else if (customPrefix != null && lowerRawCmd.startsWith(customPrefix.toLowerCase())) {
-            rawCmd = rawCmd.substring(customPrefix.length());
-            usedPrefix = customPrefix;
-        } else if (usedPrefix == null) {
-            return false;
-        }
+        var usedPrefix = match.prefix();
+        var isMention = match.mention();
+        rawCmd = rawCmd.substring(usedPrefix.length());
 
         // The command arguments to parse.
         String[] parts = splitArgs(rawCmd, 2);
@@ -110,7 +147,9 @@ public class CommandProcessor {
         String content = parts[1];
 
         // Run the actual command here.
-        REGISTRY.process(event, dbGuild, cmdName, content, usedPrefix, isMention);
+        try (var ignored = UnitOfWork.open(MantaroData.db())) {
+            REGISTRY.process(event, permissions, cmdName, content, usedPrefix, isMention);
+        }
 
         final long end = System.currentTimeMillis();
         commandTime.observe(end - start);
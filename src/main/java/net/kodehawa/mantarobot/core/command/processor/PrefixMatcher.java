@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import javax.annotation.Nullable;
+
+/**
+ * Finds which of our prefixes a message starts with, ignoring case, without copying the message.
+ * Built once from the config: the global prefixes and the two ways of mentioning us.
+ */
+final class PrefixMatcher {
+    private final String[] prefixes;
+    private final String[] mentions;
+
+    PrefixMatcher(String[] prefixes, String clientId) {
+        this.prefixes = prefixes.clone();
+        this.mentions = new String[] { "<@" + clientId + "> ", "<@!" + clientId + "> " };
+    }
+
+    /**
+     * Same order as always: a global prefix, then a mention, then the custom prefix of the guild.
+     *
+     * @param customPrefix Custom prefix of the guild, if any.
+     * @return What the message starts with, or null if it can't be a command.
+     */
+    @Nullable
+    Match match(String content, @Nullable String customPrefix) {
+        // If more than one matches, the last one wins.
+        String global = null;
+        for (var prefix : prefixes) {
+            if (startsWith(content, prefix)) {
+                global = prefix;
+            }
+        }
+
+        if (global != null) {
+            return new Match(global, false);
+        }
+
+        for (var mention : mentions) {
+            if (content.startsWith(mention)) {
+                return new Match(mention, true);
+            }
+        }
+
+        if (customPrefix != null && startsWith(content, customPrefix)) {
+            return new Match(customPrefix, false);
+        }
+
+        return null;
+    }
+
+    static boolean startsWith(String content, String prefix) {
+        return content.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    record Match(String prefix, boolean mention) { }
+}
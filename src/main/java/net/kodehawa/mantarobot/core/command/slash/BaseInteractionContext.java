@@ -41,6 +41,8 @@ public abstract class BaseInteractionContext<T extends GenericCommandInteraction
     public BaseInteractionContext(T event, I18nContext i18n) {
         this.event = event;
         this.i18n = i18n;
+        // Might have been deferred already, if it was running late.
+        this.deferred = event.isAcknowledged();
     }
 
     public String getName() {
@@ -52,6 +54,10 @@ public abstract class BaseInteractionContext<T extends GenericCommandInteraction
     }
 
     public void defer() {
+        if (deferred) {
+            return;
+        }
+
         if (forceEphemeral) {
             deferEphemeral();
         } else {
@@ -61,6 +67,10 @@ public abstract class BaseInteractionContext<T extends GenericCommandInteraction
     }
 
     public void deferEphemeral() {
+        if (deferred) {
+            return;
+        }
+
         event.deferReply(true).complete();
         deferred = true;
     }
@@ -415,7 +425,7 @@ public abstract class BaseInteractionContext<T extends GenericCommandInteraction
     }
 
     public boolean isUserBlacklisted(String id) {
-        return getMantaroData().getBlackListedUsers().contains(id);
+        return managedDatabase.isUserBlacklisted(id);
     }
 
     @Override
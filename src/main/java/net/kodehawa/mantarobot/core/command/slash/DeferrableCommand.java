@@ -32,4 +32,8 @@ public abstract class DeferrableCommand<T extends IContext> extends AnnotatedCom
     public boolean defer() {
         return defer;
     }
+
+    public boolean isModal() {
+        return modal;
+    }
 }
@@ -48,7 +48,6 @@ import net.dv8tion.jda.api.exceptions.PermissionException;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.kodehawa.mantarobot.ExtraRuntimeOptions;
 import net.kodehawa.mantarobot.MantaroBot;
-import net.kodehawa.mantarobot.commands.BirthdayCmd;
 import net.kodehawa.mantarobot.commands.currency.TextChannelGround;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
 import net.kodehawa.mantarobot.core.MantaroEventManager;
@@ -528,13 +527,10 @@ public class MantaroListener implements EventListener {
         try {
             final var jda = event.getJDA();
             final var guild = event.getGuild();
-            final var guildBirthdayCache = BirthdayCmd.getGuildBirthdayCache();
             final var manager = bot.getAudioManager().getMusicManagers().get(guild.getId());
 
             // Clear internal data we don't need anymore.
             guild.getTextChannelCache().stream().forEach(TextChannelGround::delete);
-            guildBirthdayCache.invalidate(guild.getIdLong());
-            guildBirthdayCache.cleanUp();
 
             // Clean the internal music data.
             if (manager != null) {
@@ -656,11 +652,6 @@ public class MantaroListener implements EventListener {
         if (allowedBirthdays.contains(user.getId())) {
             dbGuild.removeAllowedBirthday(user.getId());
             dbGuild.updateAllChanged();
-
-            var bdCacheMap = BirthdayCmd.getGuildBirthdayCache().getIfPresent(guild.getIdLong());
-            if (bdCacheMap != null) {
-                bdCacheMap.remove(user.getIdLong());
-            }
         }
     }
 
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.listeners.command;
+
+import net.kodehawa.mantarobot.core.CommandRegistry;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+
+import javax.annotation.Nullable;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Decides which commands to take when we're falling behind, so something that holds every command up (like the
+ * database stalling) doesn't leave a backlog we'd have to get through before anything works again.
+ * We're falling behind when commands wait too long for a thread, or too many were let in and haven't finished.
+ * How long they wait is whatever the last command to start waited (while that's recent), or how long the next one in
+ * the queue has been waiting so far, whichever is longer. That way it goes back down as soon as the queue is empty,
+ * and goes up while nothing starts at all.
+ * When that happens, low priority commands are turned away first, along with text commands from guilds that already
+ * have a lot running. Past the limit of commands in flight, everything but the critical ones is.
+ * Autocomplete doesn't go through here, it's cheap and has to be answered anyway.
+ */
+public class CommandAdmission {
+    public enum Priority {
+        CRITICAL, NORMAL, LOW
+    }
+
+    private final boolean enabled;
+    private final int maxInFlight;
+    private final long maxQueueDelay;
+    private final int busyGuildCommands;
+    private final Set<String> criticalCategories;
+    private final Set<String> lowPriorityCategories;
+    private final Set<String> lowPriorityCommands;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Commands in flight for each guild. Guilds with nothing running aren't kept.
+    private final ConcurrentMap<Long, Integer> guildCommands = new ConcurrentHashMap<>();
+    // The pool's queue, if there's one.
+    @Nullable
+    private final Queue<Runnable> queue;
+    // How long the last command to start had to wait for a thread, and when it started.
+    private volatile Sample lastStarted = new Sample(0, System.nanoTime());
+
+    /**
+     * For executors without a queue, like virtual threads, where only the commands in flight count.
+     */
+    public CommandAdmission(Config config) {
+        this(config, null);
+    }
+
+    /**
+     * @param queue Queue of the command pool, to see how long the next command has been waiting.
+     */
+    public CommandAdmission(Config config, @Nullable Queue<Runnable> queue) {
+        this.queue = queue;
+        this.enabled = config.isCommandAdmissionEnabled();
+        this.maxInFlight = config.getCommandAdmissionMaxInFlight();
+        this.maxQueueDelay = TimeUnit.MILLISECONDS.toNanos(config.getCommandAdmissionMaxQueueDelayMillis());
+        this.busyGuildCommands = config.getCommandAdmissionBusyGuildCommands();
+        this.criticalCategories = Set.copyOf(config.getCommandAdmissionCriticalCategories());
+        this.lowPriorityCategories = Set.copyOf(config.getCommandAdmissionLowPriorityCategories());
+        this.lowPriorityCommands = Set.copyOf(config.getCommandAdmissionLowPriorityCommands());
+    }
+
+    /**
+     * Lets a command in, unless we're falling behind and it can wait. Whatever gets in has to be released once done.
+     *
+     * @param guildId The guild it came from, 0 if none.
+     * @param text    Whether it's a text command. Those are the first to go in busy guilds.
+     * @param command What it runs. Only looked up when we're falling behind.
+     * @return Whether to run it.
+     */
+    public boolean tryAcquire(long guildId, boolean text, Supplier<CommandRegistry.CommandInfo> command) {
+        if (enabled && isFallingBehind()) {
+            var priority = priority(command.get());
+            if (shouldShed(priority, guildId, text)) {
+                Metrics.COMMANDS_SHED.labels(text ? "text" : "interaction", priority.name().toLowerCase()).inc();
+                return false;
+            }
+        }
+
+        inFlight.incrementAndGet();
+        Metrics.COMMANDS_IN_FLIGHT.inc();
+        if (guildId != 0) {
+            guildCommands.merge(guildId, 1, Integer::sum);
+        }
+
+        return true;
+    }
+
+    public void release(long guildId) {
+        inFlight.decrementAndGet();
+        Metrics.COMMANDS_IN_FLIGHT.dec();
+        if (guildId != 0) {
+            guildCommands.computeIfPresent(guildId, (k, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Called by the command pool right as a command starts. Only the last one counts, and only for a while.
+     *
+     * @param waited How long it waited for a thread, in nanoseconds.
+     */
+    public void started(long waited) {
+        lastStarted = new Sample(waited, System.nanoTime());
+        Metrics.COMMAND_QUEUE_DELAY.observe(TimeUnit.NANOSECONDS.toMillis(waited));
+    }
+
+    public boolean isFallingBehind() {
+        return inFlight.get() >= maxInFlight || queueDelay() >= maxQueueDelay;
+    }
+
+    // In nanoseconds.
+    private long queueDelay() {
+        // Past this, it says more about how long ago the last command started than about the queue.
+        var last = lastStarted;
+        var delay = System.nanoTime() - last.at() < maxQueueDelay ? last.waited() : 0;
+        if (queue != null && queue.peek() instanceof CommandTask next) {
+            delay = Math.max(delay, next.waited());
+        }
+
+        return delay;
+    }
+
+    public Priority priority(@Nullable CommandRegistry.CommandInfo command) {
+        // Custom commands, mostly.
+        if (command == null) {
+            return Priority.NORMAL;
+        }
+
+        var category = command.category() == null ? null : command.category().name();
+        if (category != null && criticalCategories.contains(category)) {
+            return Priority.CRITICAL;
+        }
+
+        if (lowPriorityCommands.contains(command.name()) || (category != null && lowPriorityCategories.contains(category))) {
+            return Priority.LOW;
+        }
+
+        return Priority.NORMAL;
+    }
+
+    /**
+     * @return Commands let in that haven't finished yet.
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private boolean shouldShed(Priority priority, long guildId, boolean text) {
+        if (priority == Priority.CRITICAL) {
+            return false;
+        }
+
+        if (inFlight.get() >= maxInFlight) {
+            return true;
+        }
+
+        return priority == Priority.LOW || (text && guildCommands.getOrDefault(guildId, 0) >= busyGuildCommands);
+    }
+
+    private record Sample(long waited, long at) { }
+}
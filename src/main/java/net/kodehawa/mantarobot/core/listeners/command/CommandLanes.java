@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.listeners.command;
+
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks one at a time for each key, in the order they came in, while different keys run in parallel on the
+ * executor. Used to run commands from the same user one after the other, so two of them can't both load the
+ * same player, change it and save it over each other.
+ * A lane only exists while it has something running or waiting, so there's nothing to clean up for idle users.
+ * A task that has been running for too long stops holding up the rest: the next one to come in for the same key
+ * gets the lane going again, and the stuck one is left to finish on its own.
+ */
+public class CommandLanes {
+    private static final Logger log = LoggerFactory.getLogger(CommandLanes.class);
+
+    private final ConcurrentMap<Long, Lane> lanes = new ConcurrentHashMap<>();
+    private final Executor executor;
+    private final long stuckAfterNanos;
+
+    /**
+     * @param stuckAfter How long a task can run before the ones behind it stop waiting for it.
+     */
+    public CommandLanes(Executor executor, Duration stuckAfter) {
+        this.executor = executor;
+        this.stuckAfterNanos = stuckAfter.toNanos();
+    }
+
+    /**
+     * Runs this after everything that was already submitted for the same key.
+     */
+    public void execute(long key, Runnable task) {
+        execute(key, task, () -> { });
+    }
+
+    /**
+     * Same as {@link #execute(long, Runnable)}.
+     *
+     * @param onRejected Run instead of the task if the executor turns it down (ex. it's shutting down), to let go
+     *                   of anything that was held for it.
+     */
+    public void execute(long key, Runnable task, Runnable onRejected) {
+        var entry = new Entry(task, onRejected);
+        // Lanes are only created and removed in here, under the map's lock for the key, so a lane can't be removed
+        // right as something gets added to it.
+        var holder = new Entry[1];
+        lanes.compute(key, (k, lane) -> {
+            if (lane == null) {
+                lane = new Lane();
+                Metrics.COMMAND_LANES.inc();
+            }
+
+            Metrics.COMMAND_LANE_DEPTH.observe(lane.waiting.size() + (lane.running == null ? 0 : 1));
+            lane.waiting.add(entry);
+            // Whoever finds nothing running gets it going, else whatever is running will get to it.
+            if (lane.running == null) {
+                holder[0] = lane.next();
+            } else if (lane.running.isStuck(stuckAfterNanos)) {
+                log.warn("Task for {} has been running for over {}ms, not waiting for it anymore", k, stuckAfterNanos / 1_000_000);
+                Metrics.COMMAND_LANE_STUCK.inc();
+                holder[0] = lane.next();
+            }
+
+            return lane;
+        });
+
+        if (holder[0] != null) {
+            dispatch(key, holder[0]);
+        }
+    }
+
+    /**
+     * @return Whether this key has something running or waiting, so anything else for it would have to wait.
+     */
+    public boolean isBusy(long key) {
+        return lanes.containsKey(key);
+    }
+
+    /**
+     * @return Keys with something running or waiting.
+     */
+    public int size() {
+        return lanes.size();
+    }
+
+    // Every run goes back through the executor instead of looping on the same thread, so a user with a lot of
+    // commands waiting doesn't hold on to a thread other people could be using.
+    // Goes in the pool's queue wherever the task itself would.
+    private void dispatch(long key, Entry entry) {
+        while (entry != null) {
+            var current = entry;
+            Runnable run = () -> run(key, current);
+            try {
+                executor.execute(current.task instanceof CommandTask task ? task.withAction(run) : run);
+                return;
+            } catch (RejectedExecutionException e) {
+                log.warn("Executor turned down a task for {}, dropping it", key);
+                try {
+                    current.onRejected.run();
+                } catch (Throwable t) {
+                    log.error("Error letting go of rejected task for {}", key, t);
+                }
+
+                entry = finished(key, current);
+            }
+        }
+    }
+
+    private void run(long key, Entry entry) {
+        entry.start();
+        try {
+            entry.task.run();
+        } catch (Throwable t) {
+            log.error("Error running task for {}", key, t);
+        }
+
+        var next = finished(key, entry);
+        if (next != null) {
+            dispatch(key, next);
+        }
+    }
+
+    // Taken off only once it's done, so nothing else for this key can start in the meantime.
+    // Gives whatever has to run next, if anything.
+    private Entry finished(long key, Entry entry) {
+        var holder = new Entry[1];
+        lanes.computeIfPresent(key, (k, lane) -> {
+            // It was passed over for taking too long, and whatever is running now moves the lane along.
+            if (lane.running != entry) {
+                return lane;
+            }
+
+            lane.running = null;
+            if (lane.waiting.isEmpty()) {
+                Metrics.COMMAND_LANES.dec();
+                return null;
+            }
+
+            holder[0] = lane.next();
+            return lane;
+        });
+
+        return holder[0];
+    }
+
+    // Only touched under the map's lock for the key.
+    private static class Lane {
+        private final Queue<Entry> waiting = new ArrayDeque<>();
+        private Entry running;
+
+        private Entry next() {
+            running = waiting.poll();
+            return running;
+        }
+    }
+
+    private static class Entry {
+        private final Runnable task;
+        private final Runnable onRejected;
+        // Set by whichever thread runs it, and only counted from there: waiting for the pool isn't being stuck.
+        private volatile long startedAt;
+        private volatile boolean started;
+
+        private Entry(Runnable task, Runnable onRejected) {
+            this.task = task;
+            this.onRejected = onRejected;
+        }
+
+        private void start() {
+            startedAt = System.nanoTime();
+            started = true;
+        }
+
+        private boolean isStuck(long stuckAfterNanos) {
+            return started && System.nanoTime() - startedAt >= stuckAfterNanos;
+        }
+    }
+}
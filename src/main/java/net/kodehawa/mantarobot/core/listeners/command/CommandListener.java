@@ -28,6 +28,7 @@ import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEven
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.exceptions.PermissionException;
 import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.interactions.Interaction;
 import net.kodehawa.mantarobot.commands.currency.profile.Badge;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
 import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
@@ -36,6 +37,8 @@ import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.LanguageKeyNotFoundException;
 import net.kodehawa.mantarobot.utils.Snow64;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,18 +47,27 @@ import java.util.IllegalFormatException;
 import java.util.Optional;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class CommandListener implements EventListener {
     private static final Logger log = LoggerFactory.getLogger(CommandListener.class);
     // Commands ran this session.
     private static int commandTotal = 0;
+    // The busy notice goes out when we're already struggling, so only every few seconds for the same user.
+    private static final RateLimiter busyNotices = new RateLimiter(TimeUnit.SECONDS, 10);
     private final CommandProcessor commandProcessor;
-    private final ExecutorService threadPool;
+    private final ExecutorService commandExecutor;
+    // Shared by every shard, as the same user can run commands in guilds on different shards.
+    private final CommandLanes commandLanes;
+    private final CommandAdmission commandAdmission;
     private final Cache<Long, Optional<CachedMessage>> messageCache;
 
-    public CommandListener(CommandProcessor processor, ExecutorService threadPool, Cache<Long, Optional<CachedMessage>> messageCache) {
+    public CommandListener(CommandProcessor processor, ExecutorService commandExecutor, CommandLanes commandLanes,
+                           CommandAdmission commandAdmission, Cache<Long, Optional<CachedMessage>> messageCache) {
         this.commandProcessor = processor;
-        this.threadPool = threadPool;
+        this.commandExecutor = commandExecutor;
+        this.commandLanes = commandLanes;
+        this.commandAdmission = commandAdmission;
         this.messageCache = messageCache;
     }
 
@@ -82,29 +94,139 @@ public class CommandListener implements EventListener {
                     new CachedMessage(msg.getGuild().getIdLong(), msg.getAuthor().getIdLong(), msg.getMessage().getContentDisplay()))
             );
 
+            // Most messages aren't commands: check the prefix here instead of sending all of them to the pool.
+            if (!commandProcessor.mightBeCommand(msg)) {
+                Metrics.MESSAGES_FILTERED.inc();
+                return;
+            }
+
             // We can't talk here, so we don't need to run anything.
             // Run this check before executing on the pool to avoid wasting a thread.
             if (!msg.getChannel().canTalk()) {
                 return;
             }
 
-            threadPool.execute(() -> onCommand(msg));
+            var guildId = msg.getGuild().getIdLong();
+            if (!commandAdmission.tryAcquire(guildId, true, () -> commandProcessor.describe(msg))) {
+                sendBusyNotice(msg);
+                return;
+            }
+
+            // Commands from the same user run one after the other, so they don't overwrite each other's changes.
+            commandLanes.execute(msg.getAuthor().getIdLong(),
+                    CommandTask.of(CommandTask.Kind.MESSAGE, msg.getMessageIdLong(), admitted(guildId, () -> onCommand(msg))),
+                    () -> commandAdmission.release(guildId)
+            );
         }
 
         if (event instanceof SlashCommandInteractionEvent slashInteraction) {
-            threadPool.execute(() -> onSlash(slashInteraction));
+            var guildId = guildId(slashInteraction);
+            if (!commandAdmission.tryAcquire(guildId, false, () -> commandProcessor.describe(slashInteraction))) {
+                sendBusyNotice(slashInteraction);
+                return;
+            }
+
+            if (shouldDeferNow(slashInteraction)) {
+                commandProcessor.deferNow(slashInteraction);
+            }
+
+            commandLanes.execute(slashInteraction.getUser().getIdLong(),
+                    CommandTask.of(CommandTask.Kind.SLASH, slashInteraction.getIdLong(), admitted(guildId, () -> onSlash(slashInteraction))),
+                    () -> commandAdmission.release(guildId)
+            );
         }
 
+        // Only reads, and has to answer quick, so it doesn't wait behind whatever the user is running.
         if (event instanceof CommandAutoCompleteInteractionEvent autoCompleteInteraction) {
-            threadPool.execute(() -> commandProcessor.runAutocomplete(autoCompleteInteraction));
+            commandExecutor.execute(CommandTask.of(CommandTask.Kind.AUTOCOMPLETE, autoCompleteInteraction.getIdLong(), () -> {
+                if (!isExpired(autoCompleteInteraction, "autocomplete")) {
+                    commandProcessor.runAutocomplete(autoCompleteInteraction);
+                }
+            }));
         }
 
         if (event instanceof UserContextInteractionEvent userInteraction) {
-            threadPool.execute(() -> onUserContext(userInteraction));
+            var guildId = guildId(userInteraction);
+            if (!commandAdmission.tryAcquire(guildId, false, () -> commandProcessor.describe(userInteraction))) {
+                sendBusyNotice(userInteraction);
+                return;
+            }
+
+            if (shouldDeferNow(userInteraction)) {
+                commandProcessor.deferNow(userInteraction);
+            }
+
+            commandLanes.execute(userInteraction.getUser().getIdLong(),
+                    CommandTask.of(CommandTask.Kind.CONTEXT, userInteraction.getIdLong(), admitted(guildId, () -> onUserContext(userInteraction))),
+                    () -> commandAdmission.release(guildId)
+            );
+        }
+    }
+
+    // Lets admission control know once it's done, however it ends.
+    private Runnable admitted(long guildId, Runnable action) {
+        return () -> {
+            try {
+                action.run();
+            } finally {
+                commandAdmission.release(guildId);
+            }
+        };
+    }
+
+    private static long guildId(Interaction interaction) {
+        return interaction.getGuild() == null ? 0 : interaction.getGuild().getIdLong();
+    }
+
+    // Only goes out for commands we know of, as messages from guilds whose prefix we don't know yet get here too.
+    // Never goes to the database: it's likely what we're waiting on.
+    private void sendBusyNotice(MessageReceivedEvent event) {
+        if (commandProcessor.describe(event) == null || !busyNotices.process(event.getAuthor().getId())) {
+            return;
         }
+
+        var lang = MantaroData.db().getCachedGuildLang(event.getGuild().getId());
+        var i18n = I18n.getForLanguage(lang == null ? "en_US" : lang);
+        event.getChannel().sendMessageFormat(i18n.get("general.busy"), EmoteReference.STOPWATCH).queue();
+    }
+
+    // This is the acknowledgement, so it always goes out.
+    private void sendBusyNotice(GenericCommandInteractionEvent event) {
+        var i18n = I18n.of(event.getUserLocale());
+        event.reply(String.format(i18n.get("general.busy"), EmoteReference.STOPWATCH)).setEphemeral(true).queue();
+    }
+
+    // Waiting behind the user's other commands (or for the pool) can take longer than discord gives us to answer,
+    // so those get acknowledged before they're queued. It's done here, before anything for it can run, so it can't
+    // be acknowledged twice.
+    private boolean shouldDeferNow(Interaction interaction) {
+        return commandLanes.isBusy(interaction.getUser().getIdLong()) ||
+                CommandTask.remaining(interaction) < MantaroData.config().get().getSlashDeferThresholdMillis();
+    }
+
+    // Past the deadline discord won't take an answer anymore, so there's no point in running it.
+    // Unless it was acknowledged already, in which case we've got as long as we need.
+    private static boolean isExpired(Interaction interaction, String type) {
+        if (interaction.isAcknowledged()) {
+            return false;
+        }
+
+        var remaining = CommandTask.remaining(interaction);
+        Metrics.INTERACTION_ACK_MARGIN.labels(type, "start").observe(remaining);
+        if (remaining > 0) {
+            return false;
+        }
+
+        Metrics.INTERACTION_EXPIRED.labels(type).inc();
+        log.debug("Dropping {} interaction {}, {}ms past its deadline", type, interaction.getId(), -remaining);
+        return true;
     }
 
     private void onSlash(SlashCommandInteractionEvent event) {
+        if (isExpired(event, "slash")) {
+            return;
+        }
+
         try {
             if (commandProcessor.runSlash(event)) {
                 commandTotal++;
@@ -150,6 +272,10 @@ public class CommandListener implements EventListener {
     }
 
     private void onUserContext(UserContextInteractionEvent event) {
+        if (isExpired(event, "context")) {
+            return;
+        }
+
         try {
             if (commandProcessor.runContextUser(event)) {
                 commandTotal++;
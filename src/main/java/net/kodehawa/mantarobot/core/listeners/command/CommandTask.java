@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.listeners.command;
+
+import net.dv8tion.jda.api.interactions.Interaction;
+import net.dv8tion.jda.api.utils.TimeUtil;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Something the command pool has to run, and how soon. When the pool is busy, waiting work goes by deadline, so
+ * whatever has to be answered sooner goes first. Interactions have to be acknowledged within three seconds of being
+ * created, messages just go by age.
+ * Each kind gets a head start over the next one (autocomplete, then interactions, then messages), but only of
+ * {@link #KIND_HEAD_START}: anything that came in earlier than that goes first whatever its kind, so a steady
+ * stream of interactions can't hold messages back forever.
+ */
+public final class CommandTask implements Runnable {
+    // How long discord gives us to acknowledge an interaction.
+    public static final long ACK_WINDOW = TimeUnit.SECONDS.toMillis(3);
+    // How much sooner each kind goes than the one after it.
+    public static final long KIND_HEAD_START = TimeUnit.SECONDS.toMillis(1);
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /**
+     * Order the command pool takes work in. Anything that isn't a CommandTask goes last.
+     */
+    public static final Comparator<Runnable> ORDER = (a, b) -> {
+        if (a instanceof CommandTask first && b instanceof CommandTask second) {
+            return first.compareTo(second);
+        }
+
+        return Boolean.compare(!(a instanceof CommandTask), !(b instanceof CommandTask));
+    };
+
+    // In the order they're taken.
+    public enum Kind {
+        AUTOCOMPLETE, SLASH, CONTEXT, MESSAGE
+    }
+
+    private final Kind kind;
+    private final long deadline;
+    // The deadline, moved up by the head start of the kind. Fixed once created, as the queue needs the order to stay put.
+    private final long rank;
+    // Same rank goes in the order they came in.
+    private final long sequence;
+    private final Runnable action;
+    private final long created = System.nanoTime();
+
+    private CommandTask(Kind kind, long deadline, long sequence, Runnable action) {
+        this.kind = kind;
+        this.deadline = deadline;
+        this.rank = deadline - (Kind.values().length - 1 - kind.ordinal()) * KIND_HEAD_START;
+        this.sequence = sequence;
+        this.action = action;
+    }
+
+    public static CommandTask of(Kind kind, long snowflake, Runnable action) {
+        return new CommandTask(kind, deadline(snowflake), SEQUENCE.getAndIncrement(), action);
+    }
+
+    /**
+     * @return The time (in epoch millis) this has to be acknowledged by, going by when discord created it.
+     */
+    public static long deadline(long snowflake) {
+        return TimeUtil.getTimeCreated(snowflake).toInstant().toEpochMilli() + ACK_WINDOW;
+    }
+
+    /**
+     * @return How long is left to acknowledge this interaction, in milliseconds. Can be negative.
+     */
+    public static long remaining(Interaction interaction) {
+        return deadline(interaction.getIdLong()) - System.currentTimeMillis();
+    }
+
+    /**
+     * @return Something that runs the given action instead, but goes in the same place as this does.
+     */
+    CommandTask withAction(Runnable action) {
+        return new CommandTask(kind, deadline, sequence, action);
+    }
+
+    /**
+     * @return How long ago this was created, in nanoseconds. Tasks are created right as they're handed to the pool,
+     * so once it starts running, that's how long it waited in the queue.
+     */
+    public long waited() {
+        return System.nanoTime() - created;
+    }
+
+    @Override
+    public void run() {
+        action.run();
+    }
+
+    private int compareTo(CommandTask other) {
+        if (rank != other.rank) {
+            return Long.compare(rank, other.rank);
+        }
+
+        return Long.compare(sequence, other.sequence);
+    }
+}
@@ -61,6 +61,37 @@ public class Config {
     public int memberCacheSize = 10_000;
     public boolean handleRatelimits = true;
     public boolean testing = false;
+    public boolean guildCacheEnabled = true;
+    public long guildCacheMaxBytes = 128L * 1024 * 1024;
+    public int guildCacheExpiryMinutes = 10;
+    public boolean writeBehindEnabled = false;
+    public long writeBehindDelayMillis = 10;
+    // ACKNOWLEDGED, JOURNALED, MAJORITY or UNACKNOWLEDGED, same as MongoDB write concerns.
+    public String writeBehindDurability = "ACKNOWLEDGED";
+    public long blacklistReconcileMinutes = 5;
+    public long leaderboardRebuildMinutes = 360;
+    // Role changes and messages the birthday task can send to discord per second, for all shards on this node.
+    public int birthdayRequestsPerSecond = 20;
+    // Run commands and listener tasks on virtual threads instead of the cached pool.
+    public boolean commandVirtualThreads = false;
+    // Threads running commands. Past this, commands wait by priority (autocomplete, interactions, then messages).
+    public int commandThreads = 200;
+    // Slash commands with less than this left to be acknowledged get deferred before doing anything else.
+    public long slashDeferThresholdMillis = 1500;
+    // A command running for longer than this stops holding up the same user's next ones, which run alongside it instead.
+    public long commandLaneStuckMillis = 60000;
+    // Turn away commands that can wait when we're falling behind, with a short "busy" notice (see CommandAdmission).
+    public boolean commandAdmissionEnabled = true;
+    // Commands running or waiting to run, past which only the critical ones get in.
+    public int commandAdmissionMaxInFlight = 2000;
+    // How long commands can wait for a thread before we start turning away the ones that can wait.
+    public long commandAdmissionMaxQueueDelayMillis = 1000;
+    // Text commands running or waiting in the same guild, past which that guild counts as busy.
+    public int commandAdmissionBusyGuildCommands = 10;
+    // Categories that always get in, and the ones (and commands) turned away first.
+    public List<String> commandAdmissionCriticalCategories = new ArrayList<>(List.of("MODERATION", "MUSIC", "OWNER"));
+    public List<String> commandAdmissionLowPriorityCategories = new ArrayList<>(List.of("IMAGE"));
+    public List<String> commandAdmissionLowPriorityCommands = new ArrayList<>(List.of("anime", "character"));
 
     public Config() { }
 
@@ -225,6 +256,86 @@ public class Config {
         return isPremiumBot() || isSelfHost() || isTesting();
     }
 
+    public boolean isGuildCacheEnabled() {
+        return guildCacheEnabled;
+    }
+
+    public long getGuildCacheMaxBytes() {
+        return guildCacheMaxBytes;
+    }
+
+    public int getGuildCacheExpiryMinutes() {
+        return guildCacheExpiryMinutes;
+    }
+
+    public boolean isWriteBehindEnabled() {
+        return writeBehindEnabled;
+    }
+
+    public long getWriteBehindDelayMillis() {
+        return writeBehindDelayMillis;
+    }
+
+    public String getWriteBehindDurability() {
+        return writeBehindDurability;
+    }
+
+    public long getBlacklistReconcileMinutes() {
+        return blacklistReconcileMinutes;
+    }
+
+    public long getLeaderboardRebuildMinutes() {
+        return leaderboardRebuildMinutes;
+    }
+
+    public int getBirthdayRequestsPerSecond() {
+        return birthdayRequestsPerSecond;
+    }
+
+    public boolean isCommandVirtualThreads() {
+        return commandVirtualThreads;
+    }
+
+    public int getCommandThreads() {
+        return commandThreads;
+    }
+
+    public long getSlashDeferThresholdMillis() {
+        return slashDeferThresholdMillis;
+    }
+
+    public long getCommandLaneStuckMillis() {
+        return commandLaneStuckMillis;
+    }
+
+    public boolean isCommandAdmissionEnabled() {
+        return commandAdmissionEnabled;
+    }
+
+    public int getCommandAdmissionMaxInFlight() {
+        return commandAdmissionMaxInFlight;
+    }
+
+    public long getCommandAdmissionMaxQueueDelayMillis() {
+        return commandAdmissionMaxQueueDelayMillis;
+    }
+
+    public int getCommandAdmissionBusyGuildCommands() {
+        return commandAdmissionBusyGuildCommands;
+    }
+
+    public List<String> getCommandAdmissionCriticalCategories() {
+        return commandAdmissionCriticalCategories;
+    }
+
+    public List<String> getCommandAdmissionLowPriorityCategories() {
+        return commandAdmissionLowPriorityCategories;
+    }
+
+    public List<String> getCommandAdmissionLowPriorityCommands() {
+        return commandAdmissionLowPriorityCommands;
+    }
+
     public String getMongoUri() {
         return mongoUri;
     }
@@ -92,7 +92,7 @@ public class I18n {
     }
 
     public static I18n of(String guildId) {
-        var lang = MantaroData.db().getGuild(guildId).getLang();
+        var lang = MantaroData.db().getGuildLang(guildId);
         return getForLanguage(lang);
     }
 
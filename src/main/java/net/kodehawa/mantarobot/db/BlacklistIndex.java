@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.db.entities.MantaroObject;
+import net.kodehawa.mantarobot.utils.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory copy of the guild and user blacklists in {@link MantaroObject}, so checking them doesn't hit the database.
+ * Reloaded whenever the blacklist is saved (on this node directly, on the others through the {@link InvalidationBus}),
+ * and every few minutes in case one of those notifications got lost.
+ */
+public class BlacklistIndex {
+    private static final Logger log = LoggerFactory.getLogger(BlacklistIndex.class);
+    private static final String TYPE = "blacklist";
+
+    private final ManagedDatabase database;
+    private final InvalidationBus invalidationBus;
+    private volatile Snapshot snapshot = new Snapshot(LongHashSet.empty(), LongHashSet.empty());
+
+    BlacklistIndex(ManagedDatabase database, InvalidationBus invalidationBus) {
+        this.database = database;
+        this.invalidationBus = invalidationBus;
+    }
+
+    void start(long reconcileMinutes) {
+        invalidationBus.register(TYPE, new InvalidationBus.Listener() {
+            @Override
+            public void invalidate(String id) {
+                refresh();
+            }
+
+            @Override
+            public void invalidateAll() {
+                refresh();
+            }
+        });
+
+        refresh();
+        var executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Blacklist Reconcile").setDaemon(true).build()
+        );
+
+        executor.scheduleAtFixedRate(this::refresh, reconcileMinutes, reconcileMinutes, TimeUnit.MINUTES);
+    }
+
+    public boolean isGuildBlacklisted(String guildId) {
+        return snapshot.guilds().contains(guildId);
+    }
+
+    public boolean isUserBlacklisted(String userId) {
+        return snapshot.users().contains(userId);
+    }
+
+    /**
+     * Reloads the blacklist here, and tells every other node to do the same.
+     */
+    void changed() {
+        refresh();
+        invalidationBus.publish(TYPE, MantaroObject.DB_TABLE);
+    }
+
+    // Synchronized so an older load can't overwrite a newer one.
+    private synchronized void refresh() {
+        try {
+            var data = database.findMantaroData();
+            if (data == null) {
+                snapshot = new Snapshot(LongHashSet.empty(), LongHashSet.empty());
+                return;
+            }
+
+            snapshot = new Snapshot(LongHashSet.ofIds(data.getBlackListedGuilds()), LongHashSet.ofIds(data.getBlackListedUsers()));
+            log.debug("Loaded blacklist ({} guilds, {} users)", snapshot.guilds().size(), snapshot.users().size());
+        } catch (Exception e) {
+            // Keep the last one we had, it'll be retried on the next change or reconcile.
+            log.error("Couldn't load the blacklist", e);
+        }
+    }
+
+    private record Snapshot(LongHashSet guilds, LongHashSet users) { }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import java.util.Map;
+
+/**
+ * A tracked change to a numeric field that gets written as $inc instead of $set, so two nodes changing the same counter
+ * at the same time don't overwrite each other.
+ * If required is above zero, the update only goes through if the stored value is at least that much, which keeps
+ * balances from going negative when something else spent the money in the meantime.
+ *
+ * @param amount   How much to add to the stored value. Negative to subtract.
+ * @param required The minimum stored value for this update to apply, or 0 if the update isn't conditional.
+ */
+public record Increment(long amount, long required) {
+    public boolean isGuarded() {
+        return required > 0;
+    }
+
+    /**
+     * Records a delta on a field tracker, merging it with a previous one for the same key.
+     * If the key was already set to an absolute value, the current in-memory value is set instead.
+     *
+     * @param tracker The field tracker of the entity.
+     * @param key     The field that changed.
+     * @param delta   How much it changed by.
+     * @param current The in-memory value after the change.
+     */
+    public static void track(Map<String, Object> tracker, String key, long delta, long current) {
+        merge(tracker, key, new Increment(delta, 0), current);
+    }
+
+    /**
+     * Same as {@link #track(Map, String, long, long)}, but the write will only go through if the stored value doesn't
+     * go below zero at any point of the tracked changes.
+     */
+    public static void trackGuarded(Map<String, Object> tracker, String key, long delta, long current) {
+        merge(tracker, key, new Increment(delta, Math.max(0, -delta)), current);
+    }
+
+    private static void merge(Map<String, Object> tracker, String key, Increment increment, long current) {
+        tracker.merge(key, increment, (old, value) -> {
+            if (old instanceof Increment previous) {
+                var amount = previous.amount + increment.amount;
+                // The stored value has to cover the lowest point it would reach across every change so far.
+                var required = increment.isGuarded() ? Math.max(previous.required, -amount) : previous.required;
+                return new Increment(amount, required);
+            }
+
+            return current;
+        });
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import net.kodehawa.mantarobot.db.annotations.DatabaseIndex;
+import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.db.entities.MantaroObject;
+import net.kodehawa.mantarobot.db.entities.Marriage;
+import net.kodehawa.mantarobot.db.entities.MongoGuild;
+import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.db.entities.PlayerStats;
+import net.kodehawa.mantarobot.db.entities.PremiumKey;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Every index declared with {@link DatabaseIndex} on the entities, and the code to make sure they exist.
+ * Only the master node should call {@link #ensureIndexes(MongoDatabase)}, building an index on a big collection isn't free.
+ */
+public final class IndexRegistry {
+    private static final Logger log = LoggerFactory.getLogger(IndexRegistry.class);
+    // Collection name of every entity that can declare indexes.
+    private static final Map<Class<? extends ManagedMongoObject>, String> ENTITIES = Map.of(
+            CustomCommand.class, CustomCommand.DB_TABLE,
+            MantaroObject.class, MantaroObject.DB_TABLE,
+            Marriage.class, Marriage.DB_TABLE,
+            MongoGuild.class, MongoGuild.DB_TABLE,
+            MongoUser.class, MongoUser.DB_TABLE,
+            Player.class, Player.DB_TABLE,
+            PlayerStats.class, PlayerStats.DB_TABLE,
+            PremiumKey.class, PremiumKey.DB_TABLE
+    );
+
+    private IndexRegistry() { }
+
+    public static List<RequiredIndex> required() {
+        List<RequiredIndex> indexes = new ArrayList<>();
+        ENTITIES.forEach((entity, table) -> {
+            for (var index : entity.getAnnotationsByType(DatabaseIndex.class)) {
+                var keys = new Document();
+                for (var field : index.value()) {
+                    if (field.startsWith("-")) {
+                        keys.append(field.substring(1), -1);
+                    } else {
+                        keys.append(field, 1);
+                    }
+                }
+
+                indexes.add(new RequiredIndex(table, keys, index.sparse()));
+            }
+        });
+
+        return indexes;
+    }
+
+    /**
+     * Creates every declared index that doesn't exist yet, then reports the ones that are missing or haven't been used
+     * since the database started, both on the log and as {@link Metrics#DATABASE_INDEXES}.
+     */
+    public static void ensureIndexes(MongoDatabase database) {
+        var byTable = required().stream().collect(Collectors.groupingBy(RequiredIndex::table));
+        byTable.forEach((table, indexes) -> {
+            try {
+                var collection = database.getCollection(table);
+                var existing = new HashSet<Map<String, Integer>>();
+                for (var index : collection.listIndexes()) {
+                    existing.add(normalize(index.get("key", Document.class)));
+                }
+
+                var missing = 0;
+                for (var index : indexes) {
+                    if (existing.contains(normalize(index.keys()))) {
+                        continue;
+                    }
+
+                    try {
+                        log.info("Creating index {} on {}", index.keys().toJson(), table);
+                        collection.createIndex(index.keys(), new IndexOptions().sparse(index.sparse()));
+                    } catch (Exception e) {
+                        log.error("Couldn't create index {} on {}", index.keys().toJson(), table, e);
+                        missing++;
+                    }
+                }
+
+                Metrics.DATABASE_INDEXES.labels(table, "missing").set(missing);
+                reportUnused(database, table, indexes);
+            } catch (Exception e) {
+                log.error("Couldn't check the indexes of {}", table, e);
+            }
+        });
+    }
+
+    // Access counts are kept by every mongod since it started, so an index only shows up here after it had a fair chance to be used.
+    private static void reportUnused(MongoDatabase database, String table, List<RequiredIndex> indexes) {
+        var required = new HashSet<Map<String, Integer>>();
+        for (var index : indexes) {
+            required.add(normalize(index.keys()));
+        }
+
+        var unused = 0;
+        var stats = database.getCollection(table).aggregate(List.of(new Document("$indexStats", new Document())));
+        for (var stat : stats) {
+            var keys = normalize(stat.get("key", Document.class));
+            var accesses = stat.get("accesses", Document.class);
+            if (!required.contains(keys) || accesses == null) {
+                continue;
+            }
+
+            var ops = accesses.get("ops");
+            if (ops instanceof Number number && number.longValue() == 0) {
+                log.warn("Index {} on {} hasn't been used since {}", stat.getString("name"), table, accesses.get("since"));
+                unused++;
+            }
+        }
+
+        Metrics.DATABASE_INDEXES.labels(table, "unused").set(unused);
+    }
+
+    // Indexes created by hand might have 1.0 instead of 1, which is the same index.
+    private static Map<String, Integer> normalize(Document keys) {
+        var normalized = new LinkedHashMap<String, Integer>();
+        if (keys == null) {
+            return normalized;
+        }
+
+        keys.forEach((field, direction) -> normalized.put(field,
+                direction instanceof Number number ? (int) Math.signum(number.doubleValue()) : 0
+        ));
+
+        return normalized;
+    }
+
+    /**
+     * @param keys Field to direction (1 or -1), in order.
+     */
+    public record RequiredIndex(String table, Document keys, boolean sparse) {
+        /**
+         * @return Whether queries filtering or sorting on just this field can use this index.
+         */
+        public boolean covers(String field) {
+            return keys.keySet().iterator().next().equals(field);
+        }
+    }
+}
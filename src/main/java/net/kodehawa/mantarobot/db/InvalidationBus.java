@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broadcasts cache invalidations to every other node through Redis pub/sub.
+ * Messages look like "node:type:id", and messages sent by this same node are skipped, as the local cache
+ * was already invalidated by whoever published it.
+ */
+public class InvalidationBus {
+    private static final Logger log = LoggerFactory.getLogger(InvalidationBus.class);
+    private static final String NODE_ID = UUID.randomUUID().toString();
+
+    private final Map<String, Listener> listeners = new ConcurrentHashMap<>();
+    private final Config config;
+    private final String channel;
+    private volatile boolean started = false;
+
+    public InvalidationBus(Config config) {
+        this.config = config;
+        this.channel = "mantaro-invalidation-" + config.getClientId();
+    }
+
+    public void register(String type, Listener listener) {
+        listeners.put(type, listener);
+    }
+
+    public void publish(String type, String id) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            jedis.publish(channel, NODE_ID + ":" + type + ":" + id);
+        } catch (Exception e) {
+            // Other nodes will still catch up once their entries expire.
+            log.warn("Couldn't publish invalidation for {} {}", type, id, e);
+        }
+    }
+
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+
+        var thread = new Thread(this::listen, "Mantaro Invalidation Listener");
+        thread.setDaemon(true);
+        thread.start();
+        started = true;
+    }
+
+    private void listen() {
+        //noinspection InfiniteLoopStatement
+        while (true) {
+            // Subscribing blocks the connection for good, so don't take it from the pool.
+            try (var jedis = new Jedis(config.getJedisPoolAddress(), config.getJedisPoolPort())) {
+                jedis.subscribe(new JedisPubSub() {
+                    @Override
+                    public void onSubscribe(String channel, int subscribedChannels) {
+                        // We might have missed messages while we weren't listening, so start over.
+                        listeners.values().forEach(Listener::invalidateAll);
+                        log.info("Listening for cache invalidations on {}", channel);
+                    }
+
+                    @Override
+                    public void onMessage(String channel, String message) {
+                        handle(message);
+                    }
+                }, channel);
+            } catch (Exception e) {
+                log.warn("Lost invalidation subscription, retrying in 5 seconds", e);
+            }
+
+            try {
+                TimeUnit.SECONDS.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void handle(String message) {
+        var parts = message.split(":", 3);
+        if (parts.length != 3 || parts[0].equals(NODE_ID)) {
+            return;
+        }
+
+        var listener = listeners.get(parts[1]);
+        if (listener != null) {
+            listener.invalidate(parts[2]);
+        }
+    }
+
+    public interface Listener {
+        void invalidate(String id);
+
+        void invalidateAll();
+    }
+}
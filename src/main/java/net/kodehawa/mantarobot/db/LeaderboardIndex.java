@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.db.entities.PlayerStats;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * Leaderboards kept in Redis sorted sets, so getting the top of one (or someone's position in it) doesn't sort a whole
+ * collection. The sets are updated whenever one of the fields they track gets written, and rebuilt from MongoDB every
+ * few hours by the master node, in case something changed them without going through {@link ManagedDatabase}.
+ * Only values above zero are kept: anyone missing from a set is at zero, which is also what a new entity starts at.
+ */
+public class LeaderboardIndex {
+    private static final Logger log = LoggerFactory.getLogger(LeaderboardIndex.class);
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private final ManagedDatabase database;
+
+    LeaderboardIndex(ManagedDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Rebuilds every leaderboard every few minutes, and right away if one doesn't exist yet.
+     * Should only run on one node.
+     */
+    public void startRebuilding(long rebuildMinutes) {
+        var executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("Mantaro Leaderboard Rebuild").setDaemon(true).build()
+        );
+
+        executor.execute(() -> {
+            for (var board : Board.values()) {
+                if (!exists(board)) {
+                    rebuild();
+                    return;
+                }
+            }
+        });
+
+        executor.scheduleAtFixedRate(this::rebuild, rebuildMinutes, rebuildMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @return The top of the leaderboard, highest first, or null if it hasn't been built yet.
+     */
+    @Nullable
+    public List<Entry> top(Board board, int count) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var tuples = jedis.zrevrangeWithScores(board.key(), 0, count - 1);
+            if (tuples.isEmpty() && !jedis.exists(board.key())) {
+                return null;
+            }
+
+            List<Entry> entries = new ArrayList<>(tuples.size());
+            for (var tuple : tuples) {
+                entries.add(new Entry(tuple.getElement(), (long) tuple.getScore()));
+            }
+
+            return entries;
+        }
+    }
+
+    /**
+     * @return The position of the entity in the leaderboard, starting from 1, or 0 if it isn't on it.
+     */
+    public long rank(Board board, String id) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var rank = jedis.zrevrank(board.key(), id);
+            return rank == null ? 0 : rank + 1;
+        }
+    }
+
+    // Called with the tracked set of an entity that was just written, before it gets cleared.
+    void changed(String table, String id, Map<String, Object> fields) {
+        Map<Board, Object> changes = null;
+        for (var board : Board.values()) {
+            if (board.table.equals(table) && fields.containsKey(board.field)) {
+                if (changes == null) {
+                    changes = new HashMap<>();
+                }
+
+                changes.put(board, fields.get(board.field));
+            }
+        }
+
+        if (changes == null) {
+            return;
+        }
+
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource(); var pipeline = jedis.pipelined()) {
+            changes.forEach((board, value) -> {
+                // Same as the update that went to MongoDB: deltas go on top of what's there.
+                if (value instanceof Increment increment) {
+                    pipeline.zincrby(board.key(), increment.amount(), id);
+                    // Taking money away can leave it at zero (or below, if it wasn't on the set): those aren't kept.
+                    if (increment.amount() < 0) {
+                        pipeline.zremrangeByScore(board.key(), "-inf", "0");
+                    }
+                } else if (value instanceof Number number) {
+                    if (number.longValue() > 0) {
+                        pipeline.zadd(board.key(), number.doubleValue(), id);
+                    } else {
+                        pipeline.zrem(board.key(), id);
+                    }
+                }
+            });
+
+            pipeline.sync();
+        } catch (Exception e) {
+            // The next rebuild will pick it up.
+            log.warn("Couldn't update leaderboards for {}:{}", table, id, e);
+        }
+    }
+
+    // Called when a whole entity was replaced or deleted.
+    void replaced(ManagedMongoObject object, boolean deleted) {
+        var boards = Arrays.stream(Board.values())
+                .filter(board -> board.table.equals(object.getTableName()))
+                .toList();
+
+        if (boards.isEmpty()) {
+            return;
+        }
+
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource(); var pipeline = jedis.pipelined()) {
+            for (var board : boards) {
+                var value = deleted ? 0 : board.getter.applyAsLong(object);
+                if (value > 0) {
+                    pipeline.zadd(board.key(), value, object.getId());
+                } else {
+                    pipeline.zrem(board.key(), object.getId());
+                }
+            }
+
+            pipeline.sync();
+        } catch (Exception e) {
+            log.warn("Couldn't update leaderboards for {}:{}", object.getTableName(), object.getId(), e);
+        }
+    }
+
+    /**
+     * Builds every leaderboard again from what's in MongoDB. Each one is built on a separate key and swapped in
+     * when done, so nobody sees a half-built leaderboard.
+     */
+    public synchronized void rebuild() {
+        for (var board : Board.values()) {
+            try {
+                rebuild(board);
+            } catch (Exception e) {
+                log.error("Couldn't rebuild the {} leaderboard", board, e);
+            }
+        }
+    }
+
+    private void rebuild(Board board) {
+        var start = System.currentTimeMillis();
+        var temporary = board.key() + ":rebuild";
+        var collection = database.dbMantaro().getCollection(board.table);
+        var count = 0L;
+
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            jedis.del(temporary);
+            var batch = new HashMap<String, Double>();
+            for (Document document : collection.find(Filters.gt(board.field, 0)).projection(Projections.include(board.field))) {
+                var value = document.get(board.field);
+                if (!(value instanceof Number number)) {
+                    continue;
+                }
+
+                batch.put(String.valueOf(document.get("_id")), number.doubleValue());
+                if (batch.size() >= REBUILD_BATCH_SIZE) {
+                    jedis.zadd(temporary, batch);
+                    count += batch.size();
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                jedis.zadd(temporary, batch);
+                count += batch.size();
+            }
+
+            if (count == 0) {
+                jedis.del(board.key());
+            } else {
+                jedis.rename(temporary, board.key());
+            }
+        }
+
+        log.info("Rebuilt the {} leaderboard ({} entries, took {}ms)", board, count, System.currentTimeMillis() - start);
+    }
+
+    private boolean exists(Board board) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            return jedis.exists(board.key());
+        }
+    }
+
+    public enum Board {
+        MONEY(Player.DB_TABLE, "newMoney", o -> ((Player) o).getNewMoney()),
+        OLD_MONEY(Player.DB_TABLE, "oldMoney", o -> ((Player) o).getOldMoney()),
+        REPUTATION(Player.DB_TABLE, "reputation", o -> ((Player) o).getReputation()),
+        DAILY_STREAK(Player.DB_TABLE, "dailyStreak", o -> ((Player) o).getDailyStreak()),
+        GAMES_WON(Player.DB_TABLE, "gamesWon", o -> ((Player) o).getGamesWon()),
+        GAMBLE_WINS(PlayerStats.DB_TABLE, "gambleWins", o -> ((PlayerStats) o).getGambleWins()),
+        SLOTS_WINS(PlayerStats.DB_TABLE, "slotsWins", o -> ((PlayerStats) o).getSlotsWins()),
+        TIMES_CLAIMED(MongoUser.DB_TABLE, "timesClaimed", o -> ((MongoUser) o).getTimesClaimed());
+
+        private final String table;
+        private final String field;
+        private final ToLongFunction<ManagedMongoObject> getter;
+
+        Board(String table, String field, ToLongFunction<ManagedMongoObject> getter) {
+            this.table = table;
+            this.field = field;
+            this.getter = getter;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public String key() {
+            return "lb:" + table + ":" + field;
+        }
+    }
+
+    public record Entry(String id, long value) { }
+}
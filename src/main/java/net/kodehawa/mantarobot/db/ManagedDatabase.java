@@ -17,12 +17,17 @@
 
 package net.kodehawa.mantarobot.db;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
 import com.google.common.collect.Lists;
+import com.mongodb.WriteConcern;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
@@ -31,7 +36,10 @@ import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.kodehawa.mantarobot.ExtraRuntimeOptions;
+import net.kodehawa.mantarobot.core.command.helpers.GuildCommandPermissions;
+import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.db.entities.GuildCommandSettings;
 import net.kodehawa.mantarobot.db.entities.MongoGuild;
 import net.kodehawa.mantarobot.db.entities.MantaroObject;
 import net.kodehawa.mantarobot.db.entities.Marriage;
@@ -39,7 +47,13 @@ import net.kodehawa.mantarobot.db.entities.MongoUser;
 import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.db.entities.PlayerStats;
 import net.kodehawa.mantarobot.db.entities.PremiumKey;
+import net.kodehawa.mantarobot.db.entities.UserCommandSettings;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.bson.BsonType;
+import org.bson.BsonValue;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
 import org.bson.conversions.Bson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,16 +62,108 @@ import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class ManagedDatabase {
     private static final Logger log = LoggerFactory.getLogger(ManagedDatabase.class);
     private final MongoClient mongoClient;
+    private final InvalidationBus invalidationBus;
+
+    // Guilds are kept as their raw BSON, weighted by size, and decoded on every request.
+    // This way nobody shares a mutable MongoGuild, and we still skip the round trip, which is the expensive part.
+    // An empty Optional means the guild has no document yet.
+    private final Cache<String, Optional<RawBsonDocument>> guildCache;
+    private final Codec<MongoGuild> guildCodec;
+    private final Codec<GuildCommandSettings> guildSettingsCodec;
+    // Bumped on every guild invalidation, so a load that raced with a write doesn't cache what it read.
+    private final AtomicLong guildInvalidations = new AtomicLong();
+    // Keyed by guild id, and only valid while the cached document they were built from is still the cached one.
+    private final Cache<String, CompiledPermissions> permissionCache;
+    // Custom prefix of guilds we've seen, empty if they don't have one. Dropped along with the guild.
+    private final Map<String, String> customPrefixes = new ConcurrentHashMap<>();
+    // Null unless write-behind is enabled in the config.
+    private final WriteBehindQueue writeBehind;
+    private final BlacklistIndex blacklist;
+    private final LeaderboardIndex leaderboards;
 
     public ManagedDatabase(@Nonnull MongoClient mongoClient) {
         this.mongoClient = mongoClient;
+
+        var config = MantaroData.config().get();
+        this.guildCodec = dbMantaro().getCodecRegistry().get(MongoGuild.class);
+        this.guildSettingsCodec = dbMantaro().getCodecRegistry().get(GuildCommandSettings.class);
+        this.writeBehind = config.isWriteBehindEnabled() ?
+                new WriteBehindQueue(this, config.getWriteBehindDelayMillis(), writeConcern(config.getWriteBehindDurability())) : null;
+        this.invalidationBus = new InvalidationBus(config);
+        this.blacklist = new BlacklistIndex(this, invalidationBus);
+        this.leaderboards = new LeaderboardIndex(this);
+        if (config.isGuildCacheEnabled()) {
+            this.guildCache = CacheBuilder.newBuilder()
+                    .maximumWeight(config.getGuildCacheMaxBytes())
+                    .<String, Optional<RawBsonDocument>>weigher((id, doc) -> doc.map(d -> d.getByteBuffer().remaining()).orElse(16))
+                    // Safety net in case an invalidation never arrives.
+                    .expireAfterWrite(config.getGuildCacheExpiryMinutes(), TimeUnit.MINUTES)
+                    .concurrencyLevel(8)
+                    .removalListener(notification -> {
+                        // Don't keep the document around through its compiled permissions.
+                        if (this.permissionCache != null) {
+                            this.permissionCache.invalidate(notification.getKey());
+                        }
+
+                        customPrefixes.remove(notification.getKey());
+
+                        if (notification.wasEvicted()) {
+                            Metrics.DATABASE_CACHE.labels("guild", "eviction").inc();
+                        } else if (notification.getCause() == RemovalCause.EXPLICIT) {
+                            Metrics.DATABASE_CACHE.labels("guild", "invalidation").inc();
+                        }
+                    })
+                    .build();
+
+            this.permissionCache = CacheBuilder.newBuilder()
+                    .expireAfterAccess(config.getGuildCacheExpiryMinutes(), TimeUnit.MINUTES)
+                    .concurrencyLevel(8)
+                    .build();
+
+            this.invalidationBus.register(MongoGuild.DB_TABLE, new InvalidationBus.Listener() {
+                @Override
+                public void invalidate(String id) {
+                    invalidateGuild(id, false);
+                }
+
+                @Override
+                public void invalidateAll() {
+                    guildInvalidations.incrementAndGet();
+                    guildCache.invalidateAll();
+                    customPrefixes.clear();
+                }
+            });
+        } else {
+            this.guildCache = null;
+            this.permissionCache = null;
+        }
+
+        this.invalidationBus.start();
+        this.blacklist.start(config.getBlacklistReconcileMinutes());
+    }
+
+    private static WriteConcern writeConcern(String durability) {
+        return switch (durability.toUpperCase()) {
+            case "UNACKNOWLEDGED" -> WriteConcern.UNACKNOWLEDGED;
+            case "JOURNALED" -> WriteConcern.JOURNALED;
+            case "MAJORITY" -> WriteConcern.MAJORITY;
+            default -> WriteConcern.ACKNOWLEDGED;
+        };
     }
 
     private static void log(String message, Object... fmtArgs) {
@@ -122,6 +228,26 @@ public class ManagedDatabase {
         return Lists.newArrayList(collection.find(Filters.eq("guildId", guildId)));
     }
 
+    /**
+     * Names of every custom command on a guild, loaded with an id-only projection.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Set<String> getCustomCommandNames(@Nonnull String guildId) {
+        log("Requesting Custom Command names from MongoDB on guild {}", guildId);
+        var collection = dbMantaro().getCollection(CustomCommand.DB_TABLE);
+        var names = new HashSet<String>();
+        for (var document : collection.find(Filters.eq("guildId", guildId)).projection(Projections.include("_id"))) {
+            // Ids are guildId:name
+            var id = document.getString("_id");
+            if (id != null && id.indexOf(':') != -1) {
+                names.add(id.substring(id.indexOf(':') + 1));
+            }
+        }
+
+        return names;
+    }
+
     @Nonnull
     @CheckReturnValue
     public List<CustomCommand> getCustomCommands(@Nonnull Guild guild) {
@@ -138,10 +264,161 @@ public class ManagedDatabase {
     @Nonnull
     @CheckReturnValue
     public MongoGuild getGuild(@Nonnull String guildId) {
-        log("Requesting Guild {} from MongoDB", guildId);
-        var collection = dbMantaro().getCollection(MongoGuild.DB_TABLE, MongoGuild.class);
-        var guild = collection.find().filter(Filters.eq(guildId)).first();
-        return guild == null ? MongoGuild.of(guildId) : guild;
+        if (guildCache == null) {
+            log("Requesting Guild {} from MongoDB", guildId);
+            var collection = dbMantaro().getCollection(MongoGuild.DB_TABLE, MongoGuild.class);
+            var guild = collection.find().filter(Filters.eq(guildId)).first();
+            return guild == null ? MongoGuild.of(guildId) : guild;
+        }
+
+        return getCachedGuild(guildId).map(doc -> doc.decode(guildCodec)).orElseGet(() -> MongoGuild.of(guildId));
+    }
+
+    /**
+     * Gets only what's needed to process a command on a guild, instead of the whole {@link MongoGuild}.
+     * Read-only: load the full guild to change anything.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandSettings getGuildCommandSettings(@Nonnull String guildId) {
+        if (guildCache == null) {
+            log("Requesting GuildCommandSettings {} from MongoDB", guildId);
+            var collection = dbMantaro().getCollection(MongoGuild.DB_TABLE, GuildCommandSettings.class);
+            var settings = collection.find(Filters.eq(guildId)).projection(Projections.include(GuildCommandSettings.FIELDS)).first();
+            return settings == null ? GuildCommandSettings.of(guildId) : settings;
+        }
+
+        // Cached as raw BSON already, so this only skips decoding the fields we don't need.
+        return getCachedGuild(guildId).map(doc -> doc.decode(guildSettingsCodec)).orElseGet(() -> GuildCommandSettings.of(guildId));
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandSettings getGuildCommandSettings(@Nonnull Guild guild) {
+        return getGuildCommandSettings(guild.getId());
+    }
+
+    /**
+     * Gets the language of a guild, without loading anything else from it.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public String getGuildLang(@Nonnull String guildId) {
+        BsonValue lang;
+        if (guildCache == null) {
+            log("Requesting language of Guild {} from MongoDB", guildId);
+            var collection = dbMantaro().getCollection(MongoGuild.DB_TABLE, RawBsonDocument.class);
+            var doc = collection.find(Filters.eq(guildId)).projection(Projections.include("lang")).first();
+            lang = doc == null ? null : doc.get("lang");
+        } else {
+            // Raw documents are read lazily, so this doesn't decode the rest of it.
+            lang = getCachedGuild(guildId).map(doc -> doc.get("lang")).orElse(null);
+        }
+
+        return lang != null && lang.isString() ? lang.asString().getValue() : "en_US";
+    }
+
+    /**
+     * Gets the compiled command permissions of a guild. When the guild cache is on, these are only rebuilt when
+     * the cached guild document changes.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandPermissions getCommandPermissions(@Nonnull String guildId) {
+        if (guildCache == null) {
+            return GuildCommandPermissions.of(getGuildCommandSettings(guildId));
+        }
+
+        // The cache hands out the same Optional for as long as the document stays cached, so that's our version.
+        var source = getCachedGuild(guildId);
+        var compiled = permissionCache.getIfPresent(guildId);
+        if (compiled == null || compiled.source() != source) {
+            var settings = source.map(doc -> doc.decode(guildSettingsCodec)).orElseGet(() -> GuildCommandSettings.of(guildId));
+            compiled = new CompiledPermissions(source, GuildCommandPermissions.of(settings));
+            permissionCache.put(guildId, compiled);
+        }
+
+        return compiled.permissions();
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandPermissions getCommandPermissions(@Nonnull Guild guild) {
+        return getCommandPermissions(guild.getId());
+    }
+
+    /**
+     * Gets the custom prefix of a guild only if we already have it, without ever going to the database.
+     * Meant for checking every message: if it's not known, load the guild settings as usual.
+     *
+     * @return The custom prefix, an empty string if the guild has none, or null if it isn't known
+     * (not cached, or the guild cache is off).
+     */
+    @Nullable
+    public String getCachedCustomPrefix(@Nonnull String guildId) {
+        if (guildCache == null) {
+            return null;
+        }
+
+        var prefix = customPrefixes.get(guildId);
+        if (prefix != null) {
+            return prefix;
+        }
+
+        var stamp = guildInvalidations.get();
+        var cached = guildCache.getIfPresent(guildId);
+        if (cached == null) {
+            return null;
+        }
+
+        var value = cached.map(doc -> doc.get("guildCustomPrefix")).orElse(null);
+        prefix = value != null && value.isString() ? value.asString().getValue() : "";
+        // Don't keep it if the guild changed while we were reading it, or right as we stored it.
+        customPrefixes.put(guildId, prefix);
+        if (stamp != guildInvalidations.get()) {
+            customPrefixes.remove(guildId, prefix);
+        }
+
+        return prefix;
+    }
+
+    /**
+     * Language of a guild, only if it's already in the guild cache. Never goes to MongoDB.
+     *
+     * @return The language, or null if the guild isn't cached (or the guild cache is disabled).
+     */
+    @Nullable
+    public String getCachedGuildLang(@Nonnull String guildId) {
+        if (guildCache == null) {
+            return null;
+        }
+
+        var cached = guildCache.getIfPresent(guildId);
+        if (cached == null) {
+            return null;
+        }
+
+        var lang = cached.map(doc -> doc.get("lang")).orElse(null);
+        return lang != null && lang.isString() ? lang.asString().getValue() : "en_US";
+    }
+
+    private Optional<RawBsonDocument> getCachedGuild(String guildId) {
+        var cached = guildCache.getIfPresent(guildId);
+        if (cached != null) {
+            Metrics.DATABASE_CACHE.labels("guild", "hit").inc();
+        } else {
+            Metrics.DATABASE_CACHE.labels("guild", "miss").inc();
+            log("Requesting Guild {} from MongoDB", guildId);
+
+            var stamp = guildInvalidations.get();
+            var collection = dbMantaro().getCollection(MongoGuild.DB_TABLE, RawBsonDocument.class);
+            cached = Optional.ofNullable(collection.find().filter(Filters.eq(guildId)).first());
+            if (stamp == guildInvalidations.get()) {
+                guildCache.put(guildId, cached);
+            }
+        }
+
+        return cached;
     }
 
     @Nonnull
@@ -164,20 +441,48 @@ public class ManagedDatabase {
         return getGuild(event.getGuild());
     }
 
+    /**
+     * Gets the guilds out of these that have both a birthday channel and a birthday role set, in a single query over _id.
+     * Goes straight to the database: it's meant for the birthday task, which would otherwise load (and cache) every guild it can see.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public List<MongoGuild> getBirthdayGuilds(@Nonnull Collection<String> guildIds) {
+        log("Requesting birthday guilds ({} ids) from MongoDB", guildIds.size());
+        if (guildIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        var collection = dbMantaro().getCollection(MongoGuild.DB_TABLE, MongoGuild.class);
+        return Lists.newArrayList(collection.find(Filters.and(
+                Filters.in("_id", guildIds),
+                Filters.type("birthdayChannel", BsonType.STRING),
+                Filters.type("birthdayRole", BsonType.STRING)
+        )));
+    }
+
     @Nonnull
     @CheckReturnValue
     public MantaroObject getMantaroData() {
         log("Requesting MantaroObject from MongoDB");
+        var obj = findMantaroData();
+        if (obj == null) {
+            obj = MantaroObject.create();
+            obj.insertOrReplace();
+        }
+
+        return obj;
+    }
+
+    // Same as above, but doesn't create it if it's missing, as the blacklist loads it while this is still being built.
+    @Nullable
+    MantaroObject findMantaroData() {
         var collection = dbMantaro().getCollection(MantaroObject.DB_TABLE, MantaroObject.class);
         var obj = collection.find().filter(Filters.eq("mantaro")).first();
         if (obj == null) {
             // quick fix for the id being wrong, just create obj from the old one -- should work.
             // next save should save it with the correct id, which should make this re-assigning superfluous after its fixed.
             obj = collection.find().first();
-            if (obj == null) {
-                obj = MantaroObject.create();
-                obj.insertOrReplace();
-            }
         }
 
         return obj;
@@ -186,7 +491,17 @@ public class ManagedDatabase {
     @Nonnull
     @CheckReturnValue
     public Player getPlayer(@Nonnull String userId) {
+        var unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null) {
+            return unitOfWork.get(Player.DB_TABLE, userId, this::loadPlayer);
+        }
+
+        return loadPlayer(userId);
+    }
+
+    private Player loadPlayer(String userId) {
         log("Requesting Player {} from MongoDB", userId);
+        awaitQueuedWrites(Player.DB_TABLE, userId);
         var collection = dbMantaro().getCollection(Player.DB_TABLE, Player.class);
         var player = collection.find().filter(Filters.eq(userId)).first();
 
@@ -208,7 +523,17 @@ public class ManagedDatabase {
     @Nonnull
     @CheckReturnValue
     public PlayerStats getPlayerStats(@Nonnull String userId) {
+        var unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null) {
+            return unitOfWork.get(PlayerStats.DB_TABLE, userId, this::loadPlayerStats);
+        }
+
+        return loadPlayerStats(userId);
+    }
+
+    private PlayerStats loadPlayerStats(String userId) {
         log("Requesting PlayerStats {} from MongoDB", userId);
+        awaitQueuedWrites(PlayerStats.DB_TABLE, userId);
         var collection = dbMantaro().getCollection(PlayerStats.DB_TABLE, PlayerStats.class);
         var stats = collection.find().filter(Filters.eq(userId)).first();
 
@@ -233,7 +558,17 @@ public class ManagedDatabase {
             return null;
         }
 
+        var unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null) {
+            return unitOfWork.get(Marriage.DB_TABLE, marriageId, this::loadMarriage);
+        }
+
+        return loadMarriage(marriageId);
+    }
+
+    private Marriage loadMarriage(String marriageId) {
         log("Requesting Marriage {} from MongoDB", marriageId);
+        awaitQueuedWrites(Marriage.DB_TABLE, marriageId);
         return dbMantaro().getCollection(Marriage.DB_TABLE, Marriage.class).find(Filters.eq(marriageId)).first();
     }
 
@@ -268,13 +603,38 @@ public class ManagedDatabase {
     @Nonnull
     @CheckReturnValue
     public MongoUser getUser(@Nonnull String userId) {
+        var unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null) {
+            return unitOfWork.get(MongoUser.DB_TABLE, userId, this::loadUser);
+        }
+
+        return loadUser(userId);
+    }
+
+    private MongoUser loadUser(String userId) {
         log("Requesting User {} from MongoDB", userId);
+        awaitQueuedWrites(MongoUser.DB_TABLE, userId);
         var collection = dbMantaro().getCollection(MongoUser.DB_TABLE, MongoUser.class);
         var user = collection.find().filter(Filters.eq(userId)).first();
 
         return user == null ? MongoUser.of(userId) : user;
     }
 
+    /**
+     * Gets only the language and premium key of a user, instead of the whole {@link MongoUser}.
+     * Read-only: load the full user to change anything.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public UserCommandSettings getUserCommandSettings(@Nonnull String userId) {
+        log("Requesting UserCommandSettings {} from MongoDB", userId);
+        awaitQueuedWrites(MongoUser.DB_TABLE, userId);
+        var collection = dbMantaro().getCollection(MongoUser.DB_TABLE, UserCommandSettings.class);
+        var settings = collection.find(Filters.eq(userId)).projection(Projections.include(UserCommandSettings.FIELDS)).first();
+
+        return settings == null ? UserCommandSettings.of(userId) : settings;
+    }
+
     @Nonnull
     @CheckReturnValue
     public MongoUser getUser(@Nonnull User user) {
@@ -290,77 +650,250 @@ public class ManagedDatabase {
     public <T extends ManagedMongoObject> void saveMongo(@Nonnull T object, Class<T> clazz) {
         log("Saving {} {}:{} to MongoDB (replacing whole)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
 
+        // A queued update landing after this would apply to the new document.
+        awaitQueuedWrites(object.getTableName(), object.getId());
         var collection = dbMantaro().getCollection(object.getTableName(), clazz);
         var returnDoc = new FindOneAndReplaceOptions().returnDocument(ReturnDocument.AFTER);
         var found = collection.findOneAndReplace(Filters.eq(object.getId()), object, returnDoc);
         if (found == null) { // New document?
             collection.insertOne(object);
         }
+
+        forgetInUnitOfWork(object);
+        invalidateCached(object);
+        leaderboards.replaced(object, false);
     }
 
     public <T extends ManagedMongoObject> void deleteMongo(@Nonnull T object, Class<T> clazz) {
         log("Deleting {} {}:{} from MongoDB (whole)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
 
+        awaitQueuedWrites(object.getTableName(), object.getId());
         MongoCollection<T> collection = dbMantaro().getCollection(object.getTableName(), clazz);
         collection.deleteOne(Filters.eq(object.getId()));
+        forgetInUnitOfWork(object);
+        invalidateCached(object);
+        leaderboards.replaced(object, true);
     }
 
     public void updateFieldValue(ManagedMongoObject object, String key, Object value) {
         log("Updating id {} key {} (from db {}) to {} (single value)", object.getId(), key, object.getTableName(), value);
 
+        awaitQueuedWrites(object.getTableName(), object.getId());
         var collection = dbMantaro().getCollection(object.getTableName());
         collection.updateOne(Filters.eq(object.getId()), Updates.set(key, value), new UpdateOptions().upsert(true));
+        invalidateCached(object);
+        leaderboards.changed(object.getTableName(), object.getId(), Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Writes every tracked change of an entity, and clears the tracker afterwards.
+     *
+     * @return false if a guarded {@link Increment} didn't go through (not enough balance stored), in which case nothing
+     * from this call was written. Earlier saves of the same entity deferred by the unit of work still are.
+     */
+    public boolean updateFieldValues(ManagedMongoObject object, Map<String, Object> map) {
+        // Entities handed out by the current unit of work get written once, when it closes.
+        // Conditional writes can't wait for that, as the caller needs to know whether they went through.
+        var unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null && !hasGuard(map) && unitOfWork.defer(object, map)) {
+            log("Deferring update for id {} (db: {}) to the end of the unit of work", object.getId(), object.getTableName());
+            return true;
+        }
+
+        return writeFieldValues(object, map);
     }
 
-    public void updateFieldValues(ManagedMongoObject object, Map<String, Object> map) {
+    boolean writeFieldValues(ManagedMongoObject object, Map<String, Object> map) {
         log("Updating tracked set for id {} (db: {}, set size: {}) (batch values)", object.getId(), object.getTableName(), map.size(), object.getTableName());
 
         // No need to try and save an empty set, just bail out.
         if (map.isEmpty()) {
             log("Empty tracked set when requesting update!");
-            return;
+            return true;
         }
 
+        // Guilds and the blacklist are cached, so they're written right away to keep the caches and their
+        // invalidations in step.
+        var guarded = hasGuard(map);
+        if (writeBehind != null && !guarded && !isCachedTable(object.getTableName()) &&
+                writeBehind.enqueue(object.getTableName(), object.getId(), map)) {
+            leaderboards.changed(object.getTableName(), object.getId(), map);
+            map.clear();
+            return true;
+        }
+
+        // A guard has to be checked against everything we wrote before it.
+        awaitQueuedWrites(object.getTableName(), object.getId());
         var collection = dbMantaro().getCollection(object.getTableName());
+        List<Bson> filters = new ArrayList<>();
+        filters.add(Filters.eq(object.getId()));
         List<Bson> updates = new ArrayList<>();
         map.forEach((key, value) -> {
-            if (value instanceof Map<?, ?> e) {
-                var keySet = e.keySet();
-                Object next = null;
-                if(!keySet.isEmpty()) {
-                    next = keySet.iterator().next();
+            // Deltas are applied on top of whatever is stored, instead of overwriting it with our (maybe stale) value.
+            if (value instanceof Increment increment) {
+                updates.add(Updates.inc(key, increment.amount()));
+                if (increment.isGuarded()) {
+                    filters.add(Filters.gte(key, increment.required()));
                 }
 
-                // If key is of type Enum<T> or int/long, we need to convert them to String.
-                // Thankfully both have rather easy methods to do so: Enum returns the equivalent of name() on its default implementation,
-                // and String.valueOf works if you pass an object, which in the case of int/long, will give a String representation of the numerical value.
-                if (!keySet.isEmpty() && next instanceof Enum<?>) {
-                    updates.add(Updates.set(
-                            key,
-                            // Yes, seemingly this is needed.
-                            new Document(e.entrySet().stream().collect(Collectors.toMap(k -> k.getKey().toString(), Map.Entry::getValue))))
-                    );
-
-                    return; // This acts like continue; in a forEach loop
-                }
-
-                if (!keySet.isEmpty() && (next instanceof Integer || next instanceof Long)) {
-                    updates.add(Updates.set(
-                            key,
-                            // Yes, seemingly this is needed.
-                            new Document(e.entrySet().stream().collect(Collectors.toMap(k -> String.valueOf(k.getKey()), Map.Entry::getValue))))
-                    );
-
-                    return; // This acts like continue; in a forEach loop
-                }
+                return;
             }
 
-            updates.add(Updates.set(key, value));
+            updates.add(toUpdate(key, value));
         });
 
         log("Database Update with content: {}", updates.toString());
         // Reminder: you NEED to use Updates.combine, else somehow Map objects will act really strangely (ex. will not remove deleted items, but will add new ones)
         // Upsert means it's adding the document/embedded document if it does not exist on the current collection/document.
-        collection.updateOne(Filters.eq(object.getId()), Updates.combine(updates), new UpdateOptions().upsert(true));
+        // Not on guarded updates though: a failed guard would make it try to insert a second document with the same id.
+        var result = collection.updateOne(Filters.and(filters), Updates.combine(updates), new UpdateOptions().upsert(!guarded));
+        if (guarded && result.getMatchedCount() == 0) {
+            log.debug("Guarded update for id {} (db: {}) didn't match, discarding tracked set", object.getId(), object.getTableName());
+            map.clear();
+            // What we have in memory wasn't written, so anything else in this command has to load it again.
+            var unitOfWork = UnitOfWork.current();
+            if (unitOfWork != null) {
+                unitOfWork.discard(object);
+            }
+
+            return false;
+        }
+
+        leaderboards.changed(object.getTableName(), object.getId(), map);
+        // Deltas aren't idempotent, so they can't be sent twice.
+        map.clear();
+        invalidateCached(object);
+        return true;
+    }
+
+    // Turns a tracked absolute value into a $set.
+    static Bson toUpdate(String key, Object value) {
+        if (value instanceof Map<?, ?> e) {
+            var keySet = e.keySet();
+            Object next = null;
+            if(!keySet.isEmpty()) {
+                next = keySet.iterator().next();
+            }
+
+            // If key is of type Enum<T> or int/long, we need to convert them to String.
+            // Thankfully both have rather easy methods to do so: Enum returns the equivalent of name() on its default implementation,
+            // and String.valueOf works if you pass an object, which in the case of int/long, will give a String representation of the numerical value.
+            if (!keySet.isEmpty() && next instanceof Enum<?>) {
+                return Updates.set(
+                        key,
+                        // Yes, seemingly this is needed.
+                        new Document(e.entrySet().stream().collect(Collectors.toMap(k -> k.getKey().toString(), Map.Entry::getValue)))
+                );
+            }
+
+            if (!keySet.isEmpty() && (next instanceof Integer || next instanceof Long)) {
+                return Updates.set(
+                        key,
+                        // Yes, seemingly this is needed.
+                        new Document(e.entrySet().stream().collect(Collectors.toMap(k -> String.valueOf(k.getKey()), Map.Entry::getValue)))
+                );
+            }
+        }
+
+        return Updates.set(key, value);
+    }
+
+    private static boolean hasGuard(Map<String, Object> map) {
+        for (var value : map.values()) {
+            if (value instanceof Increment increment && increment.isGuarded()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Drops a guild from the local cache, and optionally tells every other node to do the same.
+     *
+     * @param guildId The guild to invalidate.
+     * @param broadcast Whether to send this invalidation to the other nodes.
+     */
+    public void invalidateGuild(@Nonnull String guildId, boolean broadcast) {
+        if (guildCache == null) {
+            return;
+        }
+
+        guildInvalidations.incrementAndGet();
+        guildCache.invalidate(guildId);
+        // Might have outlived the cached guild, so the removal listener won't always get to it.
+        customPrefixes.remove(guildId);
+        if (broadcast) {
+            invalidationBus.publish(MongoGuild.DB_TABLE, guildId);
+        }
+    }
+
+    /**
+     * Listens for invalidations of this type sent by other nodes, for caches that live outside of here.
+     */
+    public void registerInvalidationListener(@Nonnull String type, @Nonnull InvalidationBus.Listener listener) {
+        invalidationBus.register(type, listener);
+    }
+
+    /**
+     * Tells every other node something of this type changed. The id can't be empty, but can have anything else in it.
+     */
+    public void publishInvalidation(@Nonnull String type, @Nonnull String id) {
+        invalidationBus.publish(type, id);
+    }
+
+    /**
+     * Checks the in-memory blacklist, kept up to date whenever {@link MantaroObject} is saved.
+     */
+    public boolean isGuildBlacklisted(@Nonnull String guildId) {
+        return blacklist.isGuildBlacklisted(guildId);
+    }
+
+    public boolean isUserBlacklisted(@Nonnull String userId) {
+        return blacklist.isUserBlacklisted(userId);
+    }
+
+    /**
+     * Leaderboards kept up to date on every write of the fields they track.
+     */
+    public LeaderboardIndex getLeaderboards() {
+        return leaderboards;
+    }
+
+    /**
+     * Writes everything still queued for write-behind. Called on shutdown, no-op if write-behind is disabled.
+     */
+    public void flushQueuedWrites() {
+        if (writeBehind != null) {
+            writeBehind.shutdown();
+        }
+    }
+
+    private void awaitQueuedWrites(String table, String id) {
+        if (writeBehind != null) {
+            writeBehind.awaitPending(table, id);
+        }
+    }
+
+    private record CompiledPermissions(Optional<RawBsonDocument> source, GuildCommandPermissions permissions) { }
+
+    private void forgetInUnitOfWork(ManagedMongoObject object) {
+        var unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null) {
+            unitOfWork.forget(object);
+        }
+    }
+
+    // Tables kept in memory here, which have to be invalidated as soon as they're written (see invalidateCached).
+    private static boolean isCachedTable(String table) {
+        return MongoGuild.DB_TABLE.equals(table) || MantaroObject.DB_TABLE.equals(table);
+    }
+
+    private void invalidateCached(ManagedMongoObject object) {
+        if (MongoGuild.DB_TABLE.equals(object.getTableName())) {
+            invalidateGuild(object.getId(), true);
+        } else if (MantaroObject.DB_TABLE.equals(object.getTableName())) {
+            blacklist.changed();
+        }
     }
 }
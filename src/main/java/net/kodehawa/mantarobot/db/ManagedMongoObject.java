@@ -25,8 +25,13 @@ public interface ManagedMongoObject {
         MantaroData.db().updateFieldValue(this, key, value);
     }
 
+    /**
+     * Writes every tracked change of this entity.
+     *
+     * @return false if a conditional change (ex. removing money) didn't go through because the stored value was too low.
+     */
     @BsonIgnore
-    default void updateAllChanged() {
+    default boolean updateAllChanged() {
         throw new UnsupportedOperationException();
     }
 
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import org.bson.codecs.configuration.CodecRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Identity map for a single command invocation.
+ * While a unit of work is open on a thread, {@link ManagedDatabase} hands out the same Player/MongoUser/PlayerStats/Marriage
+ * instance for the same id, and {@link ManagedMongoObject#updateAllChanged()} on those instances is held until {@link #close()},
+ * which writes every entity that asked to be saved exactly once.
+ * Anything done from another thread (queue() callbacks, operations) bypasses this and goes straight to the database.
+ */
+public class UnitOfWork implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(UnitOfWork.class);
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private final CodecRegistry registry;
+    private final FieldWriter writer;
+    private final UnitOfWork previous;
+    private final Map<String, ManagedMongoObject> entities = new HashMap<>();
+    // Insertion order doesn't matter here, only that an entity is written once.
+    // An entity can have more than one tracker (equipment and pets keep their own), so keep all of them.
+    private final Map<ManagedMongoObject, List<Map<String, Object>>> pending = new IdentityHashMap<>();
+    // A copy of each tracker as of its last deferred write, in case the entity has to be dropped before we close.
+    private final Map<Map<String, Object>, Map<String, Object>> deferred = new IdentityHashMap<>();
+    private boolean closed = false;
+
+    private UnitOfWork(CodecRegistry registry, FieldWriter writer, UnitOfWork previous) {
+        this.registry = registry;
+        this.writer = writer;
+        this.previous = previous;
+    }
+
+    /**
+     * Opens a unit of work bound to the current thread. Must be closed on the same thread, ideally with try-with-resources.
+     *
+     * @param database The database to flush to.
+     * @return The new unit of work.
+     */
+    public static UnitOfWork open(@Nonnull ManagedDatabase database) {
+        return open(database.dbMantaro().getCodecRegistry(), database::writeFieldValues);
+    }
+
+    static UnitOfWork open(CodecRegistry registry, FieldWriter writer) {
+        var unitOfWork = new UnitOfWork(registry, writer, CURRENT.get());
+        CURRENT.set(unitOfWork);
+        return unitOfWork;
+    }
+
+    @Nullable
+    public static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends ManagedMongoObject> T get(String table, String id, Function<String, T> loader) {
+        var key = table + ":" + id;
+        var entity = (T) entities.get(key);
+        if (entity == null) {
+            entity = loader.apply(id);
+            if (entity != null) {
+                entities.put(key, entity);
+            }
+        }
+
+        return entity;
+    }
+
+    /**
+     * Holds the write of an entity until the unit of work closes, if this unit of work handed it out.
+     *
+     * @return Whether the write was deferred. If false, the caller has to write it now.
+     */
+    boolean defer(ManagedMongoObject object, Map<String, Object> fields) {
+        if (closed || entities.get(key(object)) != object) {
+            return false;
+        }
+
+        var trackers = pending.computeIfAbsent(object, o -> new ArrayList<>());
+        if (trackers.stream().noneMatch(tracker -> tracker == fields)) {
+            trackers.add(fields);
+        }
+
+        deferred.put(fields, WriteBehindQueue.snapshot(registry, fields));
+        return true;
+    }
+
+    /**
+     * Stops tracking an entity, because it was replaced or deleted as a whole.
+     */
+    void forget(ManagedMongoObject object) {
+        var tracked = entities.remove(key(object));
+        var trackers = tracked == null ? null : pending.remove(tracked);
+        if (trackers != null) {
+            trackers.forEach(deferred::remove);
+        }
+    }
+
+    /**
+     * Stops tracking an entity whose guarded write didn't go through, so anything else has to load it again.
+     * What was deferred for it before that is still written, as far as it was when deferred: those saves already
+     * returned true, it's only what changed after them that went with the guarded write.
+     */
+    void discard(ManagedMongoObject object) {
+        var tracked = entities.remove(key(object));
+        var trackers = tracked == null ? null : pending.remove(tracked);
+        if (trackers == null) {
+            return;
+        }
+
+        for (var fields : trackers) {
+            writer.write(tracked, deferred.remove(fields));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+
+        for (var entry : pending.entrySet()) {
+            var object = entry.getKey();
+            // Not merged into a single update, as a pet tracker ("pet.health") would conflict with a player one ("pet").
+            for (var fields : entry.getValue()) {
+                try {
+                    writer.write(object, fields);
+                } catch (Exception e) {
+                    log.error("Couldn't flush {}:{} at the end of the unit of work", object.getTableName(), object.getId(), e);
+                }
+            }
+        }
+
+        pending.clear();
+        deferred.clear();
+        entities.clear();
+    }
+
+    /**
+     * Where deferred writes go, {@link ManagedDatabase#writeFieldValues} outside of tests.
+     */
+    interface FieldWriter {
+        boolean write(ManagedMongoObject object, Map<String, Object> fields);
+    }
+
+    private static String key(ManagedMongoObject object) {
+        return object.getTableName() + ":" + object.getId();
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds tracked updates for a few milliseconds, merging the ones that hit the same document, and then writes them
+ * with one unordered bulk write per collection instead of one updateOne per updateAllChanged() call.
+ * Only plain updates go through here: guarded increments need their result right away, and are written directly.
+ */
+public class WriteBehindQueue {
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private final CodecRegistry registry;
+    private final long delayMillis;
+    private final BulkWriter writer;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Mantaro Write-Behind").setDaemon(true).build()
+    );
+    private final Object flushLock = new Object();
+
+    // table -> id -> field maps, oldest first. There's more than one per id only when a later update touches a path
+    // that conflicts with an earlier one (ex. "pet" and "pet.health"), as those can't go in the same update.
+    private Map<String, Map<String, List<Map<String, Object>>>> pending = new HashMap<>();
+    // What the current flush is writing, so reads can wait for it.
+    private Map<String, Map<String, List<Map<String, Object>>>> inFlight = Map.of();
+    private boolean scheduled = false;
+    private boolean shutdown = false;
+
+    WriteBehindQueue(ManagedDatabase database, long delayMillis, WriteConcern writeConcern) {
+        this(database.dbMantaro().getCodecRegistry(), delayMillis, (table, models) -> database.dbMantaro()
+                .getCollection(table, Document.class)
+                .withWriteConcern(writeConcern)
+                .bulkWrite(models, new BulkWriteOptions().ordered(false))
+        );
+    }
+
+    /**
+     * @param registry Used to turn tracked values into BSON when they're queued.
+     * @param writer   Does the actual writing, one unordered bulk write per call.
+     */
+    public WriteBehindQueue(CodecRegistry registry, long delayMillis, BulkWriter writer) {
+        this.registry = registry;
+        this.delayMillis = delayMillis;
+        this.writer = writer;
+    }
+
+    /**
+     * Queues a tracked set to be written on the next flush. The values are copied, so changing them afterwards
+     * doesn't change what gets written.
+     *
+     * @return false if the queue was already shut down, in which case the caller has to write it.
+     */
+    public synchronized boolean enqueue(String table, String id, Map<String, Object> fields) {
+        if (shutdown) {
+            return false;
+        }
+
+        var snapshot = snapshot(registry, fields);
+        var updates = pending.computeIfAbsent(table, t -> new LinkedHashMap<>()).computeIfAbsent(id, i -> new ArrayList<>());
+        if (updates.isEmpty() || !merge(updates.get(updates.size() - 1), snapshot)) {
+            updates.add(snapshot);
+        }
+
+        if (!scheduled) {
+            scheduled = true;
+            executor.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return true;
+    }
+
+    /**
+     * Makes sure nothing queued for this document is still unwritten, so a read right after a write sees it.
+     */
+    void awaitPending(String table, String id) {
+        boolean queued;
+        synchronized (this) {
+            queued = contains(pending, table, id) || contains(inFlight, table, id);
+        }
+
+        if (queued) {
+            flush();
+        }
+    }
+
+    /**
+     * Stops accepting updates and writes everything still queued. Called from the shutdown hook.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+
+        executor.shutdown();
+        flush();
+    }
+
+    // Flushes are serialized, so two updates to the same document can't land out of order.
+    private void flush() {
+        synchronized (flushLock) {
+            Map<String, Map<String, List<Map<String, Object>>>> batch;
+            synchronized (this) {
+                batch = pending;
+                inFlight = batch;
+                pending = new HashMap<>();
+                scheduled = false;
+            }
+
+            try {
+                batch.forEach(this::write);
+            } finally {
+                synchronized (this) {
+                    inFlight = Map.of();
+                }
+            }
+        }
+    }
+
+    private void write(String table, Map<String, List<Map<String, Object>>> documents) {
+        // Each round takes at most one update per document, so a bulk write never has two for the same one.
+        for (int round = 0; ; round++) {
+            List<WriteModel<Document>> models = new ArrayList<>();
+            for (var entry : documents.entrySet()) {
+                if (entry.getValue().size() > round) {
+                    models.add(new UpdateOneModel<>(
+                            Filters.eq(entry.getKey()), toUpdate(entry.getValue().get(round)), new UpdateOptions().upsert(true)
+                    ));
+                }
+            }
+
+            if (models.isEmpty()) {
+                return;
+            }
+
+            Metrics.WRITE_BEHIND_BATCH_SIZE.labels(table).observe(models.size());
+            var timer = Metrics.WRITE_BEHIND_FLUSH_LATENCY.labels(table).startTimer();
+            try {
+                writer.write(table, models);
+            } catch (MongoBulkWriteException e) {
+                // Unordered, so everything else in the batch still went through.
+                Metrics.WRITE_BEHIND_FAILURES.labels(table).inc(e.getWriteErrors().size());
+                log.error("{} out of {} queued updates to {} failed", e.getWriteErrors().size(), models.size(), table, e);
+            } catch (Exception e) {
+                Metrics.WRITE_BEHIND_FAILURES.labels(table).inc(models.size());
+                log.error("Couldn't flush {} queued updates to {}", models.size(), table, e);
+            } finally {
+                timer.observeDuration();
+            }
+        }
+    }
+
+    // Tracked values are mostly the entity's own lists, maps and objects, which the command that saved them (and
+    // whatever loads the same entity next) can keep changing until the flush. So anything that isn't immutable is
+    // turned into BSON here, going through the same conversion the update does.
+    static Map<String, Object> snapshot(CodecRegistry registry, Map<String, Object> fields) {
+        var snapshot = new HashMap<String, Object>(fields.size());
+        fields.forEach((key, value) -> snapshot.put(key, isImmutable(value) ? value : toBson(registry, key, value)));
+        return snapshot;
+    }
+
+    private static BsonValue toBson(CodecRegistry registry, String key, Object value) {
+        return ManagedDatabase.toUpdate(key, value).toBsonDocument(BsonDocument.class, registry).getDocument("$set").get(key);
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null || value instanceof Increment || value instanceof Number || value instanceof String ||
+                value instanceof Boolean || value instanceof Enum<?>;
+    }
+
+    private static Bson toUpdate(Map<String, Object> fields) {
+        List<Bson> updates = new ArrayList<>();
+        fields.forEach((key, value) -> {
+            if (value instanceof Increment increment) {
+                updates.add(Updates.inc(key, increment.amount()));
+            } else {
+                updates.add(ManagedDatabase.toUpdate(key, value));
+            }
+        });
+
+        return Updates.combine(updates);
+    }
+
+    /**
+     * Merges a tracked set into a queued one for the same document.
+     *
+     * @return false if they can't be sent as a single update, in which case target is left untouched.
+     */
+    private static boolean merge(Map<String, Object> target, Map<String, Object> fields) {
+        for (var entry : fields.entrySet()) {
+            var key = entry.getKey();
+            for (var existing : target.keySet()) {
+                if (!existing.equals(key) && (existing.startsWith(key + ".") || key.startsWith(existing + "."))) {
+                    return false;
+                }
+            }
+
+            // A delta on top of a value we set can be folded into it, as long as it's a number.
+            var queued = target.get(key);
+            if (entry.getValue() instanceof Increment && queued != null && !(queued instanceof Increment) && !(queued instanceof Number)) {
+                return false;
+            }
+        }
+
+        fields.forEach((key, value) -> {
+            var queued = target.get(key);
+            if (value instanceof Increment increment) {
+                if (queued instanceof Increment previous) {
+                    target.put(key, new Increment(previous.amount() + increment.amount(), 0));
+                    return;
+                }
+
+                if (queued instanceof Number number) {
+                    target.put(key, number.longValue() + increment.amount());
+                    return;
+                }
+            }
+
+            // A value we set wins over whatever was queued before it.
+            target.put(key, value);
+        });
+
+        return true;
+    }
+
+    private static boolean contains(Map<String, Map<String, List<Map<String, Object>>>> queue, String table, String id) {
+        var documents = queue.get(table);
+        return documents != null && documents.containsKey(id);
+    }
+
+    public interface BulkWriter {
+        void write(String table, List<WriteModel<Document>> models);
+    }
+}
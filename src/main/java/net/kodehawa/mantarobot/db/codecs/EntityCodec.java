@@ -0,0 +1,226 @@
+package net.kodehawa.mantarobot.db.codecs;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Base for the hand-written entity codecs, which read and write fields directly instead of going through PojoCodec.
+ * Documents look the same as the ones PojoCodec writes: the id goes in _id and null values are left out.
+ * When reading, unknown fields are skipped and null ones leave the default value in place.
+ */
+public abstract class EntityCodec<T> implements Codec<T> {
+    private final Class<T> encoderClass;
+
+    protected EntityCodec(Class<T> encoderClass) {
+        this.encoderClass = encoderClass;
+    }
+
+    /**
+     * @return An empty entity for {@link #decode(BsonReader, DecoderContext)} to fill.
+     */
+    protected abstract T create();
+
+    /**
+     * Reads the current value into the entity.
+     *
+     * @return Whether the field is known. Unknown ones get skipped.
+     */
+    protected abstract boolean decodeField(String name, BsonReader reader, DecoderContext context, T entity);
+
+    @Override
+    public T decode(BsonReader reader, DecoderContext context) {
+        var entity = create();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            var name = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+            } else if (!decodeField(name, reader, context, entity)) {
+                reader.skipValue();
+            }
+        }
+
+        reader.readEndDocument();
+        return entity;
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return encoderClass;
+    }
+
+    // Numbers might've been written as a different type (by hand, or by an old $inc), same as the driver codecs we accept all of them.
+    protected static long readLong(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case INT32 -> reader.readInt32();
+            case DOUBLE -> (long) reader.readDouble();
+            default -> reader.readInt64();
+        };
+    }
+
+    protected static int readInt(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case INT64 -> (int) reader.readInt64();
+            case DOUBLE -> (int) reader.readDouble();
+            default -> reader.readInt32();
+        };
+    }
+
+    protected static void writeString(BsonWriter writer, String name, String value) {
+        if (value != null) {
+            writer.writeString(name, value);
+        }
+    }
+
+    /**
+     * For values left to whatever codec the registry has for them, like nested POJOs.
+     */
+    protected static <V> void writeValue(BsonWriter writer, String name, Codec<V> codec, V value, EncoderContext context) {
+        if (value != null) {
+            writer.writeName(name);
+            context.encodeWithChildContext(codec, writer, value);
+        }
+    }
+
+    /**
+     * Reads an enum by name.
+     *
+     * @return The value, or the given fallback if that name doesn't exist anymore.
+     */
+    protected static <E extends Enum<E>> E readEnum(BsonReader reader, Class<E> enumClass, E fallback) {
+        try {
+            return Enum.valueOf(enumClass, reader.readString());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+
+    protected static void writeEnum(BsonWriter writer, String name, Enum<?> value) {
+        if (value != null) {
+            writer.writeString(name, value.name());
+        }
+    }
+
+    protected static <C extends Collection<String>> C readStrings(BsonReader reader, C target) {
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                target.add(null);
+            } else {
+                target.add(reader.readString());
+            }
+        }
+
+        reader.readEndArray();
+        return target;
+    }
+
+    protected static void writeStrings(BsonWriter writer, String name, Collection<String> values) {
+        if (values != null) {
+            writer.writeName(name);
+            writeStrings(writer, values);
+        }
+    }
+
+    protected static void writeStrings(BsonWriter writer, Collection<String> values) {
+        writer.writeStartArray();
+        for (var value : values) {
+            if (value == null) {
+                writer.writeNull();
+            } else {
+                writer.writeString(value);
+            }
+        }
+
+        writer.writeEndArray();
+    }
+
+    /**
+     * Reads enums by name. Names that don't exist anymore are dropped.
+     */
+    protected static <E extends Enum<E>, C extends Collection<E>> C readEnums(BsonReader reader, Class<E> enumClass, C target) {
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (reader.getCurrentBsonType() != BsonType.STRING) {
+                reader.skipValue();
+                continue;
+            }
+
+            try {
+                target.add(Enum.valueOf(enumClass, reader.readString()));
+            } catch (IllegalArgumentException ignored) { }
+        }
+
+        reader.readEndArray();
+        return target;
+    }
+
+    protected static void writeEnums(BsonWriter writer, String name, Collection<? extends Enum<?>> values) {
+        if (values != null) {
+            writer.writeName(name);
+            writeEnums(writer, values);
+        }
+    }
+
+    protected static void writeEnums(BsonWriter writer, Collection<? extends Enum<?>> values) {
+        writer.writeStartArray();
+        for (var value : values) {
+            if (value == null) {
+                writer.writeNull();
+            } else {
+                writer.writeString(value.name());
+            }
+        }
+
+        writer.writeEndArray();
+    }
+
+    protected static <V> Map<String, V> readMap(BsonReader reader, Function<BsonReader, V> valueReader) {
+        var map = new HashMap<String, V>();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            var key = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                map.put(key, null);
+            } else {
+                map.put(key, valueReader.apply(reader));
+            }
+        }
+
+        reader.readEndDocument();
+        return map;
+    }
+
+    protected static <V> void writeMap(BsonWriter writer, String name, Map<String, V> map, BiConsumer<BsonWriter, V> valueWriter) {
+        if (map != null) {
+            writer.writeName(name);
+            writeMap(writer, map, valueWriter);
+        }
+    }
+
+    protected static <V> void writeMap(BsonWriter writer, Map<String, V> map, BiConsumer<BsonWriter, V> valueWriter) {
+        writer.writeStartDocument();
+        for (var entry : map.entrySet()) {
+            writer.writeName(entry.getKey());
+            if (entry.getValue() == null) {
+                writer.writeNull();
+            } else {
+                valueWriter.accept(writer, entry.getValue());
+            }
+        }
+
+        writer.writeEndDocument();
+    }
+}
@@ -0,0 +1,40 @@
+package net.kodehawa.mantarobot.db.codecs;
+
+import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.db.entities.GuildCommandSettings;
+import net.kodehawa.mantarobot.db.entities.MongoGuild;
+import net.kodehawa.mantarobot.db.entities.PlayerStats;
+import net.kodehawa.mantarobot.db.entities.PremiumKey;
+import net.kodehawa.mantarobot.db.entities.UserCommandSettings;
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.util.Map;
+
+/**
+ * Hand-written codecs for the entities we read the most. Anything not in here goes through PojoCodec as usual.
+ * Every codec here is checked against PojoCodec in EntityCodecTest, which is why Player isn't: it can't be made
+ * there without the items, and through them the bot config.
+ * Has to be registered before the PojoCodecProvider.
+ */
+public class EntityCodecProvider implements CodecProvider {
+    private final Map<Class<?>, Codec<?>> codecs = Map.of(
+            PlayerStats.class, new PlayerStats.Codec(),
+            PremiumKey.class, new PremiumKey.Codec(),
+            CustomCommand.class, new CustomCommand.Codec(),
+            GuildCommandSettings.class, new GuildCommandSettings.Codec(),
+            UserCommandSettings.class, new UserCommandSettings.Codec()
+    );
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+        // Polls are left to the registry.
+        if (clazz == MongoGuild.class) {
+            return (Codec<T>) new MongoGuild.Codec(registry);
+        }
+
+        return (Codec<T>) codecs.get(clazz);
+    }
+}
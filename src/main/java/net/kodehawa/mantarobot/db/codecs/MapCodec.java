@@ -19,15 +19,29 @@ public class MapCodec<K, T> implements Codec<Map<K, T>> {
     private final Class<Map<K, T>> encoderClass;
     private final Codec<K> keyCodec;
     private final Codec<T> valueCodec;
+    // Null if the key isn't a String, Enum, Long nor Integer, in which case it goes through keyCodec.
+    private final KeyConverter<K> keyConverter;
 
-    MapCodec(final Class<Map<K, T>> encoderClass, final Codec<K> keyCodec, final Codec<T> valueCodec) {
+    MapCodec(final Class<Map<K, T>> encoderClass, final Class<K> keyClass, final Codec<K> keyCodec, final Codec<T> valueCodec) {
         this.encoderClass = encoderClass;
         this.keyCodec = keyCodec;
         this.valueCodec = valueCodec;
+        this.keyConverter = KeyConverter.of(keyClass);
     }
 
     @Override
     public void encode(final BsonWriter writer, final Map<K, T> map, final EncoderContext encoderContext) {
+        if (keyConverter != null) {
+            writer.writeStartDocument();
+            for (final Map.Entry<K, T> entry : map.entrySet()) {
+                writer.writeName(keyConverter.toName(entry.getKey()));
+                valueCodec.encode(writer, entry.getValue(), encoderContext);
+            }
+
+            writer.writeEndDocument();
+            return;
+        }
+
         try (var dummyWriter = new BsonDocumentWriter(new BsonDocument())) {
             dummyWriter.writeStartDocument();
             writer.writeStartDocument();
@@ -50,6 +64,23 @@ public class MapCodec<K, T> implements Codec<Map<K, T>> {
 
     @Override
     public Map<K, T> decode(final BsonReader reader, final DecoderContext context) {
+        if (keyConverter != null) {
+            reader.readStartDocument();
+            Map<K, T> map = getInstance();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                var key = keyConverter.fromName(reader.readName());
+                if (reader.getCurrentBsonType() == BsonType.NULL) {
+                    reader.readNull();
+                    map.put(key, null);
+                } else {
+                    map.put(key, valueCodec.decode(reader, context));
+                }
+            }
+
+            reader.readEndDocument();
+            return map;
+        }
+
         reader.readStartDocument();
         Map<K, T> map = getInstance();
         while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
@@ -87,4 +118,76 @@ public class MapCodec<K, T> implements Codec<Map<K, T>> {
             throw new CodecConfigurationException(e.getMessage(), e);
         }
     }
+
+    /**
+     * Turns keys straight into field names and back, for the key types we actually use.
+     * Enums are written by name, same as their codec does.
+     */
+    private interface KeyConverter<K> {
+        String toName(K key);
+
+        K fromName(String name);
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        static <K> KeyConverter<K> of(Class<K> keyClass) {
+            if (keyClass == String.class) {
+                return (KeyConverter<K>) new KeyConverter<String>() {
+                    @Override
+                    public String toName(String key) {
+                        return key;
+                    }
+
+                    @Override
+                    public String fromName(String name) {
+                        return name;
+                    }
+                };
+            }
+
+            if (keyClass == Long.class) {
+                return (KeyConverter<K>) new KeyConverter<Long>() {
+                    @Override
+                    public String toName(Long key) {
+                        return key.toString();
+                    }
+
+                    @Override
+                    public Long fromName(String name) {
+                        return Long.parseLong(name);
+                    }
+                };
+            }
+
+            if (keyClass == Integer.class) {
+                return (KeyConverter<K>) new KeyConverter<Integer>() {
+                    @Override
+                    public String toName(Integer key) {
+                        return key.toString();
+                    }
+
+                    @Override
+                    public Integer fromName(String name) {
+                        return Integer.parseInt(name);
+                    }
+                };
+            }
+
+            if (keyClass != null && keyClass.isEnum()) {
+                var enumClass = (Class<? extends Enum>) keyClass;
+                return (KeyConverter<K>) new KeyConverter<Enum>() {
+                    @Override
+                    public String toName(Enum key) {
+                        return key.name();
+                    }
+
+                    @Override
+                    public Enum fromName(String name) {
+                        return Enum.valueOf(enumClass, name);
+                    }
+                };
+            }
+
+            return null;
+        }
+    }
 }
@@ -12,7 +12,8 @@ public class MapCodecProvider implements PropertyCodecProvider {
     @SuppressWarnings({"rawtypes", "unchecked"})
     public <T> Codec<T> get(final TypeWithTypeParameters<T> type, final PropertyCodecRegistry registry) {
         if (Map.class.isAssignableFrom(type.getType()) && type.getTypeParameters().size() == 2) {
-            return new MapCodec(type.getType(), registry.get(type.getTypeParameters().get(0)), registry.get(type.getTypeParameters().get(1)));
+            var keyType = type.getTypeParameters().get(0);
+            return new MapCodec(type.getType(), keyType.getType(), registry.get(keyType), registry.get(type.getTypeParameters().get(1)));
         } else {
             return null;
         }
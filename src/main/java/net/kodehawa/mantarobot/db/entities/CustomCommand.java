@@ -19,7 +19,13 @@ package net.kodehawa.mantarobot.db.entities;
 
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedMongoObject;
+import net.kodehawa.mantarobot.db.annotations.DatabaseIndex;
+import net.kodehawa.mantarobot.db.codecs.EntityCodec;
 import net.kodehawa.mantarobot.utils.Utils;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.bson.codecs.pojo.annotations.BsonCreator;
 import org.bson.codecs.pojo.annotations.BsonId;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
@@ -27,9 +33,12 @@ import org.bson.codecs.pojo.annotations.BsonProperty;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+// Every custom command of a guild, for listing them and for CustomCmds' name filter.
+@DatabaseIndex("guildId")
 public class CustomCommand implements ManagedMongoObject {
     @BsonIgnore
     public static final String DB_TABLE = "commands";
@@ -41,6 +50,11 @@ public class CustomCommand implements ManagedMongoObject {
     private boolean nsfw;
     private boolean locked;
 
+    // Used by the codec, which fills it in afterwards.
+    private CustomCommand() {
+        this.values = new ArrayList<>();
+    }
+
     @BsonCreator
     public CustomCommand(@BsonId String id, @BsonProperty("guildId") String guildId, @BsonProperty("values") List<String> values,
                          @BsonProperty("owner") String owner, @BsonProperty("nsfw") boolean nsfw, @BsonProperty("locked") boolean locked) {
@@ -127,4 +141,51 @@ public class CustomCommand implements ManagedMongoObject {
     public void delete() {
         MantaroData.db().deleteMongo(this, CustomCommand.class);
     }
+
+    public static class Codec extends EntityCodec<CustomCommand> {
+        public Codec() {
+            super(CustomCommand.class);
+        }
+
+        @Override
+        public void encode(BsonWriter writer, CustomCommand command, EncoderContext context) {
+            writer.writeStartDocument();
+            writeString(writer, "_id", command.id);
+            writeString(writer, "guildId", command.guildId);
+            if (command.values != null) {
+                writer.writeName("values");
+                writeStrings(writer, command.values);
+            }
+
+            writeString(writer, "owner", command.owner);
+            writer.writeBoolean("nsfw", command.nsfw);
+            writer.writeBoolean("locked", command.locked);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        protected CustomCommand create() {
+            return new CustomCommand();
+        }
+
+        @Override
+        protected boolean decodeField(String name, BsonReader reader, DecoderContext context, CustomCommand command) {
+            switch (name) {
+                case "_id" -> command.id = reader.readString();
+                case "guildId" -> command.guildId = reader.readString();
+                // Same as the constructor does.
+                case "values" -> command.values = readStrings(reader, new ArrayList<>()).stream()
+                        .map(Utils::decodeURL)
+                        .collect(Collectors.toList());
+                case "owner" -> command.owner = reader.readString();
+                case "nsfw" -> command.nsfw = reader.readBoolean();
+                case "locked" -> command.locked = reader.readBoolean();
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db.entities;
+
+import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.codecs.EntityCodec;
+import net.kodehawa.mantarobot.utils.APIUtils;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.pojo.annotations.BsonId;
+import org.bson.codecs.pojo.annotations.BsonIgnore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Read-only slice of a {@link MongoGuild}, with only what's needed to process a command (prefix, language and permissions).
+ * Loaded with a projection, so the rest of the guild document doesn't have to be sent nor decoded on every message.
+ * Anything that needs to write should load the full {@link MongoGuild}.
+ */
+@SuppressWarnings("unused")
+public class GuildCommandSettings {
+    @BsonIgnore
+    public static final String[] FIELDS = {
+            "lang", "guildCustomPrefix", "premiumKey", "premiumUntil", "mpLinkedTo", "commandWarningDisplay",
+            "disabledCommands", "channelSpecificDisabledCommands", "disabledUsers", "disabledChannels", "disabledCategories",
+            "channelSpecificDisabledCategories", "disabledRoles", "roleSpecificDisabledCommands", "roleSpecificDisabledCategories"
+    };
+    @BsonIgnore
+    private static final Config config = MantaroData.config().get();
+
+    @BsonId
+    private String id;
+    private String lang = "en_US";
+    private String guildCustomPrefix = null;
+    private String premiumKey;
+    private long premiumUntil = 0L;
+    private String mpLinkedTo = null;
+    private boolean commandWarningDisplay = false;
+    private Set<String> disabledCommands = new HashSet<>();
+    private Map<String, List<String>> channelSpecificDisabledCommands = new HashMap<>();
+    private List<String> disabledUsers = new ArrayList<>();
+    private Set<String> disabledChannels = new HashSet<>();
+    private Set<CommandCategory> disabledCategories = new HashSet<>();
+    private Map<String, List<CommandCategory>> channelSpecificDisabledCategories = new HashMap<>();
+    private Set<String> disabledRoles = new HashSet<>();
+    private Map<String, List<String>> roleSpecificDisabledCommands = new HashMap<>();
+    private Map<String, List<CommandCategory>> roleSpecificDisabledCategories = new HashMap<>();
+
+    public GuildCommandSettings() { }
+
+    private GuildCommandSettings(String id) {
+        this.id = id;
+    }
+
+    public static GuildCommandSettings of(String guildId) {
+        return new GuildCommandSettings(guildId);
+    }
+
+    /**
+     * Same as {@link MongoGuild#isPremium()}. Guilds with a key go through the full guild, as checking them can
+     * also clean up expired keys and link them to their owner.
+     */
+    @BsonIgnore
+    public boolean isPremium() {
+        if (premiumKey != null) {
+            return MantaroData.db().getGuild(id).isPremium();
+        }
+
+        if (config.isPremiumBot() && mpLinkedTo != null) {
+            var pledgeInfo = APIUtils.getFullPledgeInformation(mpLinkedTo);
+            if (pledgeInfo != null && pledgeInfo.getReward().getKeyAmount() >= 3) {
+                return true;
+            }
+        }
+
+        return currentTimeMillis() < premiumUntil;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public void setLang(String lang) {
+        this.lang = lang;
+    }
+
+    public String getGuildCustomPrefix() {
+        return guildCustomPrefix;
+    }
+
+    public void setGuildCustomPrefix(String guildCustomPrefix) {
+        this.guildCustomPrefix = guildCustomPrefix;
+    }
+
+    public String getPremiumKey() {
+        return premiumKey;
+    }
+
+    public void setPremiumKey(String premiumKey) {
+        this.premiumKey = premiumKey;
+    }
+
+    public long getPremiumUntil() {
+        return premiumUntil;
+    }
+
+    public void setPremiumUntil(long premiumUntil) {
+        this.premiumUntil = premiumUntil;
+    }
+
+    public String getMpLinkedTo() {
+        return mpLinkedTo;
+    }
+
+    public void setMpLinkedTo(String mpLinkedTo) {
+        this.mpLinkedTo = mpLinkedTo;
+    }
+
+    public boolean isCommandWarningDisplay() {
+        return commandWarningDisplay;
+    }
+
+    public void setCommandWarningDisplay(boolean commandWarningDisplay) {
+        this.commandWarningDisplay = commandWarningDisplay;
+    }
+
+    public Set<String> getDisabledCommands() {
+        return disabledCommands;
+    }
+
+    public void setDisabledCommands(Set<String> disabledCommands) {
+        this.disabledCommands = disabledCommands;
+    }
+
+    public Map<String, List<String>> getChannelSpecificDisabledCommands() {
+        return channelSpecificDisabledCommands;
+    }
+
+    public void setChannelSpecificDisabledCommands(Map<String, List<String>> channelSpecificDisabledCommands) {
+        this.channelSpecificDisabledCommands = channelSpecificDisabledCommands;
+    }
+
+    public List<String> getDisabledUsers() {
+        return disabledUsers;
+    }
+
+    public void setDisabledUsers(List<String> disabledUsers) {
+        this.disabledUsers = disabledUsers;
+    }
+
+    public Set<String> getDisabledChannels() {
+        return disabledChannels;
+    }
+
+    public void setDisabledChannels(Set<String> disabledChannels) {
+        this.disabledChannels = disabledChannels;
+    }
+
+    public Set<CommandCategory> getDisabledCategories() {
+        return disabledCategories;
+    }
+
+    public void setDisabledCategories(Set<CommandCategory> disabledCategories) {
+        this.disabledCategories = disabledCategories;
+    }
+
+    public Map<String, List<CommandCategory>> getChannelSpecificDisabledCategories() {
+        return channelSpecificDisabledCategories;
+    }
+
+    public void setChannelSpecificDisabledCategories(Map<String, List<CommandCategory>> channelSpecificDisabledCategories) {
+        this.channelSpecificDisabledCategories = channelSpecificDisabledCategories;
+    }
+
+    public Set<String> getDisabledRoles() {
+        return disabledRoles;
+    }
+
+    public void setDisabledRoles(Set<String> disabledRoles) {
+        this.disabledRoles = disabledRoles;
+    }
+
+    public Map<String, List<String>> getRoleSpecificDisabledCommands() {
+        return roleSpecificDisabledCommands;
+    }
+
+    public void setRoleSpecificDisabledCommands(Map<String, List<String>> roleSpecificDisabledCommands) {
+        this.roleSpecificDisabledCommands = roleSpecificDisabledCommands;
+    }
+
+    public Map<String, List<CommandCategory>> getRoleSpecificDisabledCategories() {
+        return roleSpecificDisabledCategories;
+    }
+
+    public void setRoleSpecificDisabledCategories(Map<String, List<CommandCategory>> roleSpecificDisabledCategories) {
+        this.roleSpecificDisabledCategories = roleSpecificDisabledCategories;
+    }
+
+    /**
+     * Read on pretty much every command, so this skips PojoCodec. Only ever used to decode, but encodes too to keep the tests honest.
+     */
+    public static class Codec extends EntityCodec<GuildCommandSettings> {
+        public Codec() {
+            super(GuildCommandSettings.class);
+        }
+
+        @Override
+        public void encode(BsonWriter writer, GuildCommandSettings settings, EncoderContext context) {
+            writer.writeStartDocument();
+            writeString(writer, "_id", settings.id);
+            writeString(writer, "lang", settings.lang);
+            writeString(writer, "guildCustomPrefix", settings.guildCustomPrefix);
+            writeString(writer, "premiumKey", settings.premiumKey);
+            writer.writeInt64("premiumUntil", settings.premiumUntil);
+            writeString(writer, "mpLinkedTo", settings.mpLinkedTo);
+            writer.writeBoolean("commandWarningDisplay", settings.commandWarningDisplay);
+            writeStrings(writer, "disabledCommands", settings.disabledCommands);
+            writeMap(writer, "channelSpecificDisabledCommands", settings.channelSpecificDisabledCommands, EntityCodec::writeStrings);
+            writeStrings(writer, "disabledUsers", settings.disabledUsers);
+            writeStrings(writer, "disabledChannels", settings.disabledChannels);
+            writeEnums(writer, "disabledCategories", settings.disabledCategories);
+            writeMap(writer, "channelSpecificDisabledCategories", settings.channelSpecificDisabledCategories, EntityCodec::writeEnums);
+            writeStrings(writer, "disabledRoles", settings.disabledRoles);
+            writeMap(writer, "roleSpecificDisabledCommands", settings.roleSpecificDisabledCommands, EntityCodec::writeStrings);
+            writeMap(writer, "roleSpecificDisabledCategories", settings.roleSpecificDisabledCategories, EntityCodec::writeEnums);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        protected GuildCommandSettings create() {
+            return new GuildCommandSettings();
+        }
+
+        @Override
+        protected boolean decodeField(String name, BsonReader reader, DecoderContext context, GuildCommandSettings settings) {
+            switch (name) {
+                case "_id" -> settings.id = reader.readString();
+                case "lang" -> settings.lang = reader.readString();
+                case "guildCustomPrefix" -> settings.guildCustomPrefix = reader.readString();
+                case "premiumKey" -> settings.premiumKey = reader.readString();
+                case "premiumUntil" -> settings.premiumUntil = readLong(reader);
+                case "mpLinkedTo" -> settings.mpLinkedTo = reader.readString();
+                case "commandWarningDisplay" -> settings.commandWarningDisplay = reader.readBoolean();
+                case "disabledCommands" -> settings.disabledCommands = readStrings(reader, new HashSet<>());
+                case "channelSpecificDisabledCommands" ->
+                        settings.channelSpecificDisabledCommands = readMap(reader, r -> readStrings(r, new ArrayList<>()));
+                case "disabledUsers" -> settings.disabledUsers = readStrings(reader, new ArrayList<>());
+                case "disabledChannels" -> settings.disabledChannels = readStrings(reader, new HashSet<>());
+                case "disabledCategories" -> settings.disabledCategories = readEnums(reader, CommandCategory.class, new HashSet<>());
+                case "channelSpecificDisabledCategories" ->
+                        settings.channelSpecificDisabledCategories = readMap(reader, r -> readEnums(r, CommandCategory.class, new ArrayList<>()));
+                case "disabledRoles" -> settings.disabledRoles = readStrings(reader, new HashSet<>());
+                case "roleSpecificDisabledCommands" ->
+                        settings.roleSpecificDisabledCommands = readMap(reader, r -> readStrings(r, new ArrayList<>()));
+                case "roleSpecificDisabledCategories" ->
+                        settings.roleSpecificDisabledCategories = readMap(reader, r -> readEnums(r, CommandCategory.class, new ArrayList<>()));
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
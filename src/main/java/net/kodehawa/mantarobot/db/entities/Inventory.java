@@ -28,18 +28,38 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
+/**
+ * Amount of every item, indexed by item id, so checking or changing an amount doesn't need to build anything.
+ * Stored in the database as a map of translation slice to amount (see {@link #toMap()}), lists and maps of
+ * {@link ItemStack} are only built when asked for.
+ * Amounts are always between 0 and {@link ItemStack#MAX_STACK_SIZE}.
+ */
 public class Inventory {
     private static final Logger LOGGER = LoggerFactory.getLogger("Inventory");
-    private Map<String, Integer> stored = new HashMap<>();
+    private final int[] amounts = new int[ItemHelper.itemCount()];
 
     public List<ItemStack> asList() {
-        return unserialize(stored);
+        var list = new ArrayList<ItemStack>();
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] != 0) {
+                list.add(new ItemStack(ItemHelper.fromId(id), amounts[id]));
+            }
+        }
+
+        return list;
     }
 
     public Map<Item, ItemStack> asMap() {
-        return ItemStack.mapped(asList());
+        var map = new HashMap<Item, ItemStack>();
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] != 0) {
+                var item = ItemHelper.fromId(id);
+                map.put(item, new ItemStack(item, amounts[id]));
+            }
+        }
+
+        return map;
     }
 
     // Serialization constructor
@@ -47,48 +67,59 @@ public class Inventory {
     public Inventory() { }
 
     public void clear() {
-        replaceWith(new ArrayList<>());
+        Arrays.fill(amounts, 0);
     }
 
     @SuppressWarnings("unused")
     public void clearOnlySellables() {
-        List<ItemStack> ns = asList().stream().filter(item -> !item.getItem().isSellable()).collect(Collectors.toList());
-        replaceWith(ns);
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] != 0 && ItemHelper.fromId(id).isSellable()) {
+                amounts[id] = 0;
+            }
+        }
     }
 
     public boolean containsItem(Item item) {
-        return asMap().containsKey(item);
+        return getAmount(item) != 0;
     }
 
     @SuppressWarnings("unused")
     public ItemStack getStackOf(Item item) {
-        if (containsItem(item)) {
-            return asMap().get(item);
-        } else {
-            return null;
-        }
+        var amount = getAmount(item);
+        return amount == 0 ? null : new ItemStack(item, amount);
     }
 
     public int getAmount(Item item) {
-        return asMap().getOrDefault(item, new ItemStack(item, 0)).getAmount();
+        var id = ItemHelper.idOf(item);
+        return id == -1 ? 0 : amounts[id];
     }
 
+    /**
+     * Adds (or removes, if negative) every stack. Stacks of the same item are added up before applying them.
+     *
+     * @return Whether any item went over {@link ItemStack#MAX_STACK_SIZE}. Those get capped at it.
+     */
     public boolean merge(List<ItemStack> inv) {
-        Map<String, Integer> map = new HashMap<>(stored);
-        Map<String, Integer> toAdd = serialize(inv);
-        boolean[] hadOverflow = {false};
-        toAdd.forEach((id, amount) -> {
-            int currentAmount = map.getOrDefault(id, 0);
-            if (currentAmount + amount > ItemStack.MAX_STACK_SIZE) {
-                currentAmount = ItemStack.MAX_STACK_SIZE;
-                hadOverflow[0] = true;
-            } else {
-                currentAmount += amount;
+        var hadOverflow = false;
+        for (int i = 0; i < inv.size(); i++) {
+            var item = inv.get(i).getItem();
+            var id = ItemHelper.idOf(item);
+            if (id == -1 || seenBefore(inv, i, item)) {
+                continue;
             }
-            map.put(id, currentAmount);
-        });
-        replaceWith(unserialize(map));
-        return hadOverflow[0];
+
+            long amount = 0;
+            for (int j = i; j < inv.size(); j++) {
+                var stack = inv.get(j);
+                if (stack.getItem() == item) {
+                    amount += stack.getAmount();
+                }
+            }
+
+            hadOverflow |= add(id, amount);
+        }
+
+        return hadOverflow;
     }
 
     public void process(List<ItemStack> is) {
@@ -98,25 +129,83 @@ public class Inventory {
     }
 
     public void process(ItemStack... stacks) {
+        if (stacks.length == 1) {
+            var id = ItemHelper.idOf(stacks[0].getItem());
+            if (id != -1) {
+                add(id, stacks[0].getAmount());
+            }
+
+            return;
+        }
+
         merge(Arrays.asList(stacks));
     }
 
     public void replaceWith(List<ItemStack> inv) {
-        stored = serialize(inv);
+        clear();
+        merge(inv);
+    }
+
+    /**
+     * Replaces the contents with a stored map. Unknown items are skipped.
+     */
+    public void load(Map<String, Integer> map) {
+        clear();
+        if (map == null) {
+            return;
+        }
+
+        for (var entry : map.entrySet()) {
+            var id = ItemHelper.idOfTranslationSlice(entry.getKey());
+            if (id != -1 && entry.getValue() != null) {
+                amounts[id] = clamp(amounts[id] + (long) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return What gets stored in the database: translation slice to amount, without empty items.
+     */
+    public Map<String, Integer> toMap() {
+        var map = new HashMap<String, Integer>();
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] != 0) {
+                map.merge(ItemHelper.translationSliceOf(id), amounts[id], Integer::sum);
+            }
+        }
+
+        return map;
     }
 
     public static Map<String, Integer> serialize(List<ItemStack> list) {
-        Map<String, Integer> collect = list.stream().filter(stack -> stack.getAmount() != 0)
-                .collect(Collectors.toMap(stack -> stack.getItem().getTranslatedName().split("\\.")[1], ItemStack::getAmount, Integer::sum));
-        collect.values().remove(0);
-        return collect;
+        var inventory = new Inventory();
+        inventory.merge(list);
+        return inventory.toMap();
     }
 
     public static List<ItemStack> unserialize(Map<String, Integer> map) {
-        //noinspection OptionalGetWithoutIsPresent
-        return map.entrySet().stream().filter(e -> e.getValue() != 0)
-                .filter(e -> ItemHelper.fromTranslationSlice(e.getKey()).isPresent())
-                .map(entry -> new ItemStack(ItemHelper.fromTranslationSlice(entry.getKey()).get(), Math.max(Math.min(entry.getValue(), ItemStack.MAX_STACK_SIZE), 0)))
-                .collect(Collectors.toList());
+        var inventory = new Inventory();
+        inventory.load(map);
+        return inventory.asList();
+    }
+
+    private boolean add(int id, long amount) {
+        var result = amounts[id] + amount;
+        amounts[id] = clamp(result);
+        return result > ItemStack.MAX_STACK_SIZE;
+    }
+
+    private static boolean seenBefore(List<ItemStack> inv, int index, Item item) {
+        for (int i = 0; i < index; i++) {
+            if (inv.get(i).getItem() == item) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static int clamp(long amount) {
+        return (int) Math.max(0, Math.min(amount, ItemStack.MAX_STACK_SIZE));
     }
 }
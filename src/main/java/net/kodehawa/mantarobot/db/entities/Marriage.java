@@ -247,8 +247,8 @@ public class Marriage implements ManagedMongoObject {
 
     @BsonIgnore
     @Override
-    public void updateAllChanged() {
-        MantaroData.db().updateFieldValues(this, fieldTracker);
+    public boolean updateAllChanged() {
+        return MantaroData.db().updateFieldValues(this, fieldTracker);
     }
 
     //it's 3am and i cba to replace usages of this so whatever
@@ -2,14 +2,19 @@ package net.kodehawa.mantarobot.db.entities;
 
 import net.kodehawa.mantarobot.commands.utils.polls.Poll;
 import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
-import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.data.annotations.ConfigName;
 import net.kodehawa.mantarobot.data.annotations.HiddenConfig;
 import net.kodehawa.mantarobot.db.ManagedMongoObject;
+import net.kodehawa.mantarobot.db.codecs.EntityCodec;
 import net.kodehawa.mantarobot.utils.APIUtils;
 import net.kodehawa.mantarobot.utils.Pair;
 import net.kodehawa.mantarobot.utils.patreon.PatreonPledge;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.codecs.pojo.annotations.BsonId;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
 import org.jetbrains.annotations.NotNull;
@@ -32,8 +37,6 @@ public class MongoGuild implements ManagedMongoObject {
     @BsonIgnore
     public static final String DB_TABLE = "guilds";
     @BsonIgnore
-    private final Config config = MantaroData.config().get();
-    @BsonIgnore
     public Map<String, Object> fieldTracker = new HashMap<>();
 
     @BsonId
@@ -210,8 +213,8 @@ public class MongoGuild implements ManagedMongoObject {
 
     @BsonIgnore
     @Override
-    public void updateAllChanged() {
-        MantaroData.db().updateFieldValues(this, fieldTracker);
+    public boolean updateAllChanged() {
+        return MantaroData.db().updateFieldValues(this, fieldTracker);
     }
 
     @BsonIgnore
@@ -257,7 +260,7 @@ public class MongoGuild implements ManagedMongoObject {
 
         //Patreon bot link check.
         String linkedTo = getMpLinkedTo();
-        if (config.isPremiumBot() && linkedTo != null && key == null) { //Key should always be null in MP anyway.
+        if (MantaroData.config().get().isPremiumBot() && linkedTo != null && key == null) { //Key should always be null in MP anyway.
             PatreonPledge pledgeInfo = APIUtils.getFullPledgeInformation(linkedTo);
             if (pledgeInfo != null && pledgeInfo.getReward().getKeyAmount() >= 3) {
                 // Subscribed to MP properly.
@@ -1310,4 +1313,177 @@ public class MongoGuild implements ManagedMongoObject {
         runningPolls.remove(id);
         fieldTracker.put("runningPolls", this.runningPolls);
     }
+
+    /**
+     * Polls are left to whatever codec the registry has for them.
+     */
+    public static class Codec extends EntityCodec<MongoGuild> {
+        private final CodecRegistry registry;
+
+        public Codec(CodecRegistry registry) {
+            super(MongoGuild.class);
+            this.registry = registry;
+        }
+
+        @Override
+        public void encode(BsonWriter writer, MongoGuild guild, EncoderContext context) {
+            var pollCodec = registry.get(Poll.PollDatabaseObject.class);
+            writer.writeStartDocument();
+            writeString(writer, "_id", guild.id);
+            writer.writeInt64("premiumUntil", guild.premiumUntil);
+            writeMap(writer, "autoroles", guild.autoroles, BsonWriter::writeString);
+            writeString(writer, "birthdayChannel", guild.birthdayChannel);
+            writeString(writer, "birthdayRole", guild.birthdayRole);
+            writer.writeInt64("cases", guild.cases);
+            writeMap(writer, "channelSpecificDisabledCategories", guild.channelSpecificDisabledCategories, EntityCodec::writeEnums);
+            writeMap(writer, "channelSpecificDisabledCommands", guild.channelSpecificDisabledCommands, EntityCodec::writeStrings);
+            writeEnums(writer, "disabledCategories", guild.disabledCategories);
+            writeStrings(writer, "disabledChannels", guild.disabledChannels);
+            writeStrings(writer, "disabledCommands", guild.disabledCommands);
+            writeStrings(writer, "disabledRoles", guild.disabledRoles);
+            writeStrings(writer, "disabledUsers", guild.disabledUsers);
+            writeString(writer, "guildAutoRole", guild.guildAutoRole);
+            writeString(writer, "guildCustomPrefix", guild.guildCustomPrefix);
+            writeString(writer, "guildLogChannel", guild.guildLogChannel);
+            writeString(writer, "joinMessage", guild.joinMessage);
+            writeString(writer, "leaveMessage", guild.leaveMessage);
+            writeStrings(writer, "logExcludedChannels", guild.logExcludedChannels);
+            writeString(writer, "logJoinLeaveChannel", guild.logJoinLeaveChannel);
+            writer.writeInt32("maxFairQueue", guild.maxFairQueue);
+            writeStrings(writer, "modlogBlacklistedPeople", guild.modlogBlacklistedPeople);
+            writer.writeBoolean("musicAnnounce", guild.musicAnnounce);
+            writeString(writer, "musicChannel", guild.musicChannel);
+            writeString(writer, "mutedRole", guild.mutedRole);
+            writer.writeBoolean("noMentionsAction", guild.noMentionsAction);
+            writeString(writer, "premiumKey", guild.premiumKey);
+            writer.writeInt64("ranPolls", guild.ranPolls);
+            writeStrings(writer, "rolesBlockedFromCommands", guild.rolesBlockedFromCommands);
+            writer.writeInt64("setModTimeout", guild.setModTimeout);
+            writer.writeInt32("timeDisplay", guild.timeDisplay);
+            writeString(writer, "gameTimeoutExpectedAt", guild.gameTimeoutExpectedAt);
+            writer.writeBoolean("ignoreBotsWelcomeMessage", guild.ignoreBotsWelcomeMessage);
+            writer.writeBoolean("ignoreBotsAutoRole", guild.ignoreBotsAutoRole);
+            writeStrings(writer, "blackListedImageTags", guild.blackListedImageTags);
+            writeString(writer, "logJoinChannel", guild.logJoinChannel);
+            writeString(writer, "logLeaveChannel", guild.logLeaveChannel);
+            writeMap(writer, "roleSpecificDisabledCategories", guild.roleSpecificDisabledCategories, EntityCodec::writeEnums);
+            writeMap(writer, "roleSpecificDisabledCommands", guild.roleSpecificDisabledCommands, EntityCodec::writeStrings);
+            writeString(writer, "lang", guild.lang);
+            writer.writeBoolean("musicVote", guild.musicVote);
+            writeStrings(writer, "extraJoinMessages", guild.extraJoinMessages);
+            writeStrings(writer, "extraLeaveMessages", guild.extraLeaveMessages);
+            writeString(writer, "birthdayMessage", guild.birthdayMessage);
+            writer.writeBoolean("customAdminLockNew", guild.customAdminLockNew);
+            writeString(writer, "mpLinkedTo", guild.mpLinkedTo);
+            writeStrings(writer, "modLogBlacklistWords", guild.modLogBlacklistWords);
+            writeMap(writer, "autoroleCategories", guild.autoroleCategories, EntityCodec::writeStrings);
+            writeString(writer, "editMessageLog", guild.editMessageLog);
+            writeString(writer, "deleteMessageLog", guild.deleteMessageLog);
+            writeString(writer, "bannedMemberLog", guild.bannedMemberLog);
+            writeString(writer, "unbannedMemberLog", guild.unbannedMemberLog);
+            writeString(writer, "kickedMemberLog", guild.kickedMemberLog);
+            writer.writeBoolean("commandWarningDisplay", guild.commandWarningDisplay);
+            writer.writeBoolean("hasReceivedGreet", guild.hasReceivedGreet);
+            writeStrings(writer, "birthdayBlockedIds", guild.birthdayBlockedIds);
+            writer.writeBoolean("gameMultipleDisabled", guild.gameMultipleDisabled);
+            writeString(writer, "logTimezone", guild.logTimezone);
+            writeStrings(writer, "allowedBirthdays", guild.allowedBirthdays);
+            writer.writeBoolean("notifiedFromBirthdayChange", guild.notifiedFromBirthdayChange);
+            writer.writeBoolean("disableExplicit", guild.disableExplicit);
+            writeString(writer, "djRoleId", guild.djRoleId);
+            if (guild.musicQueueSizeLimit != null) {
+                writer.writeInt64("musicQueueSizeLimit", guild.musicQueueSizeLimit);
+            }
+
+            writeMap(writer, "runningPolls", guild.runningPolls, (w, poll) -> context.encodeWithChildContext(pollCodec, w, poll));
+            writer.writeEndDocument();
+        }
+
+        @Override
+        protected MongoGuild create() {
+            return new MongoGuild();
+        }
+
+        @Override
+        protected boolean decodeField(String name, BsonReader reader, DecoderContext context, MongoGuild guild) {
+            switch (name) {
+                case "_id" -> guild.id = reader.readString();
+                case "premiumUntil" -> guild.premiumUntil = readLong(reader);
+                case "autoroles" -> guild.autoroles = readMap(reader, BsonReader::readString);
+                case "birthdayChannel" -> guild.birthdayChannel = reader.readString();
+                case "birthdayRole" -> guild.birthdayRole = reader.readString();
+                case "cases" -> guild.cases = readLong(reader);
+                case "channelSpecificDisabledCategories" ->
+                        guild.channelSpecificDisabledCategories = readMap(reader, r -> readEnums(r, CommandCategory.class, new ArrayList<>()));
+                case "channelSpecificDisabledCommands" ->
+                        guild.channelSpecificDisabledCommands = readMap(reader, r -> readStrings(r, new ArrayList<>()));
+                case "disabledCategories" -> guild.disabledCategories = readEnums(reader, CommandCategory.class, new HashSet<>());
+                case "disabledChannels" -> guild.disabledChannels = readStrings(reader, new HashSet<>());
+                case "disabledCommands" -> guild.disabledCommands = readStrings(reader, new HashSet<>());
+                case "disabledRoles" -> guild.disabledRoles = readStrings(reader, new HashSet<>());
+                case "disabledUsers" -> guild.disabledUsers = readStrings(reader, new ArrayList<>());
+                case "guildAutoRole" -> guild.guildAutoRole = reader.readString();
+                case "guildCustomPrefix" -> guild.guildCustomPrefix = reader.readString();
+                case "guildLogChannel" -> guild.guildLogChannel = reader.readString();
+                case "joinMessage" -> guild.joinMessage = reader.readString();
+                case "leaveMessage" -> guild.leaveMessage = reader.readString();
+                case "logExcludedChannels" -> guild.logExcludedChannels = readStrings(reader, new HashSet<>());
+                case "logJoinLeaveChannel" -> guild.logJoinLeaveChannel = reader.readString();
+                case "maxFairQueue" -> guild.maxFairQueue = readInt(reader);
+                case "modlogBlacklistedPeople" -> guild.modlogBlacklistedPeople = readStrings(reader, new HashSet<>());
+                case "musicAnnounce" -> guild.musicAnnounce = reader.readBoolean();
+                case "musicChannel" -> guild.musicChannel = reader.readString();
+                case "mutedRole" -> guild.mutedRole = reader.readString();
+                case "noMentionsAction" -> guild.noMentionsAction = reader.readBoolean();
+                case "premiumKey" -> guild.premiumKey = reader.readString();
+                case "ranPolls" -> guild.ranPolls = readLong(reader);
+                case "rolesBlockedFromCommands" -> guild.rolesBlockedFromCommands = readStrings(reader, new ArrayList<>());
+                case "setModTimeout" -> guild.setModTimeout = readLong(reader);
+                case "timeDisplay" -> guild.timeDisplay = readInt(reader);
+                case "gameTimeoutExpectedAt" -> guild.gameTimeoutExpectedAt = reader.readString();
+                case "ignoreBotsWelcomeMessage" -> guild.ignoreBotsWelcomeMessage = reader.readBoolean();
+                case "ignoreBotsAutoRole" -> guild.ignoreBotsAutoRole = reader.readBoolean();
+                case "blackListedImageTags" -> guild.blackListedImageTags = readStrings(reader, new HashSet<>());
+                case "logJoinChannel" -> guild.logJoinChannel = reader.readString();
+                case "logLeaveChannel" -> guild.logLeaveChannel = reader.readString();
+                case "roleSpecificDisabledCategories" ->
+                        guild.roleSpecificDisabledCategories = readMap(reader, r -> readEnums(r, CommandCategory.class, new ArrayList<>()));
+                case "roleSpecificDisabledCommands" ->
+                        guild.roleSpecificDisabledCommands = readMap(reader, r -> readStrings(r, new ArrayList<>()));
+                case "lang" -> guild.lang = reader.readString();
+                case "musicVote" -> guild.musicVote = reader.readBoolean();
+                case "extraJoinMessages" -> guild.extraJoinMessages = readStrings(reader, new ArrayList<>());
+                case "extraLeaveMessages" -> guild.extraLeaveMessages = readStrings(reader, new ArrayList<>());
+                case "birthdayMessage" -> guild.birthdayMessage = reader.readString();
+                case "customAdminLockNew" -> guild.customAdminLockNew = reader.readBoolean();
+                case "mpLinkedTo" -> guild.mpLinkedTo = reader.readString();
+                case "modLogBlacklistWords" -> guild.modLogBlacklistWords = readStrings(reader, new ArrayList<>());
+                case "autoroleCategories" -> guild.autoroleCategories = readMap(reader, r -> readStrings(r, new ArrayList<>()));
+                case "editMessageLog" -> guild.editMessageLog = reader.readString();
+                case "deleteMessageLog" -> guild.deleteMessageLog = reader.readString();
+                case "bannedMemberLog" -> guild.bannedMemberLog = reader.readString();
+                case "unbannedMemberLog" -> guild.unbannedMemberLog = reader.readString();
+                case "kickedMemberLog" -> guild.kickedMemberLog = reader.readString();
+                case "commandWarningDisplay" -> guild.commandWarningDisplay = reader.readBoolean();
+                case "hasReceivedGreet" -> guild.hasReceivedGreet = reader.readBoolean();
+                case "birthdayBlockedIds" -> guild.birthdayBlockedIds = readStrings(reader, new ArrayList<>());
+                case "gameMultipleDisabled" -> guild.gameMultipleDisabled = reader.readBoolean();
+                case "logTimezone" -> guild.logTimezone = reader.readString();
+                case "allowedBirthdays" -> guild.allowedBirthdays = readStrings(reader, new ArrayList<>());
+                case "notifiedFromBirthdayChange" -> guild.notifiedFromBirthdayChange = reader.readBoolean();
+                case "disableExplicit" -> guild.disableExplicit = reader.readBoolean();
+                case "djRoleId" -> guild.djRoleId = reader.readString();
+                case "musicQueueSizeLimit" -> guild.musicQueueSizeLimit = readLong(reader);
+                case "runningPolls" -> {
+                    var pollCodec = registry.get(Poll.PollDatabaseObject.class);
+                    guild.runningPolls = readMap(reader, r -> context.decodeWithChildContext(pollCodec, r));
+                }
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
 }
@@ -24,6 +24,7 @@ import net.kodehawa.mantarobot.commands.currency.item.PlayerEquipment;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedMongoObject;
+import net.kodehawa.mantarobot.db.annotations.DatabaseIndex;
 import net.kodehawa.mantarobot.utils.APIUtils;
 import net.kodehawa.mantarobot.utils.Pair;
 import net.kodehawa.mantarobot.utils.Utils;
@@ -46,6 +47,9 @@ import java.util.concurrent.TimeUnit;
 import static java.lang.System.currentTimeMillis;
 
 // Reminder: all setters MUST be protected!
+// Claim leaderboard, and the users with a birthday set for BirthdayCacher.
+@DatabaseIndex("-timesClaimed")
+@DatabaseIndex(value = "birthday", sparse = true)
 @SuppressWarnings("unused")
 public class MongoUser implements ManagedMongoObject {
     @BsonIgnore
@@ -579,8 +583,8 @@ public class MongoUser implements ManagedMongoObject {
 
     @BsonIgnore
     @Override
-    public void updateAllChanged() {
-        MantaroData.db().updateFieldValues(this, fieldTracker);
+    public boolean updateAllChanged() {
+        return MantaroData.db().updateFieldValues(this, fieldTracker);
     }
 
     @Override
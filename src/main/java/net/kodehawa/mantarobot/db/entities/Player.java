@@ -29,7 +29,9 @@ import net.kodehawa.mantarobot.commands.currency.profile.ProfileComponent;
 import net.kodehawa.mantarobot.commands.currency.profile.inventory.InventorySortType;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.Increment;
 import net.kodehawa.mantarobot.db.ManagedMongoObject;
+import net.kodehawa.mantarobot.db.annotations.DatabaseIndex;
 import org.bson.codecs.pojo.annotations.BsonId;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
 import org.bson.codecs.pojo.annotations.BsonProperty;
@@ -43,8 +45,12 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
-import static net.kodehawa.mantarobot.db.entities.Inventory.serialize;
-
+// Leaderboards, and rebuilding them on LeaderboardIndex.
+@DatabaseIndex("-newMoney")
+@DatabaseIndex("-oldMoney")
+@DatabaseIndex("-reputation")
+@DatabaseIndex("-dailyStreak")
+@DatabaseIndex("-gamesWon")
 public class Player implements ManagedMongoObject {
     @BsonIgnore
     private static final Config config = MantaroData.config().get();
@@ -104,7 +110,7 @@ public class Player implements ManagedMongoObject {
         this.level = level == null ? 0 : level;
         this.oldMoney = oldMoney == null ? 0 : oldMoney;
         this.reputation = reputation == null ? 0 : reputation;
-        this.inventoryObject.replaceWith(Inventory.unserialize(inventory));
+        this.inventoryObject.load(inventory);
     }
 
     /**
@@ -243,7 +249,7 @@ public class Player implements ManagedMongoObject {
     }
 
     public Map<String, Integer> getInventory() {
-        return serialize(inventoryObject.asList());
+        return inventoryObject.toMap();
     }
 
     // -- Setters (protected if possible)
@@ -411,7 +417,7 @@ public class Player implements ManagedMongoObject {
     @SuppressWarnings("unused")
     public void setInventory(Map<String, Integer> inventory) {
         this.inventory = inventory;
-        this.inventoryObject.replaceWith(Inventory.unserialize(inventory));
+        this.inventoryObject.load(inventory);
     }
 
     // -- Tracking setters (always public)
@@ -548,28 +554,55 @@ public class Player implements ManagedMongoObject {
         fieldTracker.put("profileComponents", profileComponents);
     }
 
+    @BsonIgnore
+    public void incrementGamesWon() {
+        this.gamesWon += 1;
+        Increment.track(fieldTracker, "gamesWon", 1, this.gamesWon);
+    }
+
+    @BsonIgnore
+    public void addCratesOpened(long amount) {
+        this.cratesOpened += amount;
+        Increment.track(fieldTracker, "cratesOpened", amount, this.cratesOpened);
+    }
+
+    @BsonIgnore
+    public void incrementTimesMopped() {
+        this.timesMopped += 1;
+        Increment.track(fieldTracker, "timesMopped", 1, this.timesMopped);
+    }
+
+    @BsonIgnore
+    public void incrementSharksCaught() {
+        this.sharksCaught += 1;
+        Increment.track(fieldTracker, "sharksCaught", 1, this.sharksCaught);
+    }
+
     @BsonIgnore
     public void incrementMiningExperience(Random random) {
-        this.miningExperience = miningExperience + (random.nextInt(5) + 1);
-        fieldTracker.put("miningExperience", miningExperience);
+        var amount = random.nextInt(5) + 1;
+        this.miningExperience = miningExperience + amount;
+        Increment.track(fieldTracker, "miningExperience", amount, miningExperience);
     }
 
     @BsonIgnore
     public void incrementFishingExperience(Random random) {
-        this.fishingExperience = fishingExperience + (random.nextInt(5) + 1);
-        fieldTracker.put("fishingExperience", fishingExperience);
+        var amount = random.nextInt(5) + 1;
+        this.fishingExperience = fishingExperience + amount;
+        Increment.track(fieldTracker, "fishingExperience", amount, fishingExperience);
     }
 
     @BsonIgnore
     public void incrementChopExperience(Random random) {
-        this.chopExperience = chopExperience + (random.nextInt(5) + 1);
-        fieldTracker.put("chopExperience", chopExperience);
+        var amount = random.nextInt(5) + 1;
+        this.chopExperience = chopExperience + amount;
+        Increment.track(fieldTracker, "chopExperience", amount, chopExperience);
     }
 
     @SuppressWarnings("unused")
     @BsonProperty("inventory")
     public Map<String, Integer> rawInventory() {
-        return serialize(inventoryObject.asList());
+        return inventoryObject.toMap();
     }
 
     public long getNewMoney() {
@@ -752,10 +785,10 @@ public class Player implements ManagedMongoObject {
 
         if (useOld) {
             setOldMoney(money);
-            fieldTracker.put("oldMoney", money);
+            Increment.track(fieldTracker, "oldMoney", toAdd, money);
         } else {
             setNewMoney(money);
-            fieldTracker.put("newMoney", money);
+            Increment.track(fieldTracker, "newMoney", toAdd, money);
         }
 
         return true;
@@ -770,11 +803,12 @@ public class Player implements ManagedMongoObject {
     public void addReputation(long rep) {
         this.reputation += rep;
         this.setReputation(reputation);
-        fieldTracker.put("reputation", this.reputation);
+        Increment.track(fieldTracker, "reputation", rep, this.reputation);
     }
 
     /**
      * Removes x amount of money from the player. Only goes though if money removed sums more than zero (avoids negative values).
+     * The same check is done again when saving, so {@link #updateAllChanged()} returns false if the money was spent somewhere else meanwhile.
      *
      * @param toRemove How much?
      */
@@ -789,10 +823,10 @@ public class Player implements ManagedMongoObject {
 
         if (useOld) {
             setOldMoney(money);
-            fieldTracker.put("oldMoney", money);
+            Increment.trackGuarded(fieldTracker, "oldMoney", -toRemove, money);
         } else {
             setNewMoney(money);
-            fieldTracker.put("newMoney", money);
+            Increment.trackGuarded(fieldTracker, "newMoney", -toRemove, money);
         }
 
         return true;
@@ -856,8 +890,8 @@ public class Player implements ManagedMongoObject {
 
     @BsonIgnore
     @Override
-    public void updateAllChanged() {
-        MantaroData.db().updateFieldValues(this, fieldTracker);
+    public boolean updateAllChanged() {
+        return MantaroData.db().updateFieldValues(this, fieldTracker);
     }
 
     @Override
@@ -20,7 +20,14 @@ package net.kodehawa.mantarobot.db.entities;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.Increment;
 import net.kodehawa.mantarobot.db.ManagedMongoObject;
+import net.kodehawa.mantarobot.db.annotations.DatabaseIndex;
+import net.kodehawa.mantarobot.db.codecs.EntityCodec;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.bson.codecs.pojo.annotations.BsonId;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
 
@@ -28,6 +35,9 @@ import javax.annotation.Nonnull;
 import java.util.HashMap;
 import java.util.Map;
 
+// Leaderboards, and rebuilding them on LeaderboardIndex.
+@DatabaseIndex("-gambleWins")
+@DatabaseIndex("-slotsWins")
 @SuppressWarnings("unused")
 public class PlayerStats implements ManagedMongoObject {
     @BsonIgnore
@@ -177,85 +187,85 @@ public class PlayerStats implements ManagedMongoObject {
     @BsonIgnore
     public void addGambleWin(long amount) {
         this.gambleWinAmount += amount;
-        fieldTracker.put("gambleWinAmount", this.gambleWinAmount);
+        Increment.track(fieldTracker, "gambleWinAmount", amount, this.gambleWinAmount);
     }
 
     @BsonIgnore
     public void addSlotsWin(long amount) {
         this.slotsWinAmount += amount;
-        fieldTracker.put("slotsWinAmount", this.slotsWinAmount);
+        Increment.track(fieldTracker, "slotsWinAmount", amount, this.slotsWinAmount);
     }
 
     @BsonIgnore
     public void incrementMined() {
         this.mined += 1;
-        fieldTracker.put("mined", this.mined);
+        Increment.track(fieldTracker, "mined", 1, this.mined);
     }
 
     @BsonIgnore
     public void incrementLooted() {
         this.looted += 1;
-        fieldTracker.put("looted", this.looted);
+        Increment.track(fieldTracker, "looted", 1, this.looted);
     }
 
     @BsonIgnore
     public void incrementGambleWins() {
         this.gambleWins += 1;
-        fieldTracker.put("gambleWins", this.gambleWins);
+        Increment.track(fieldTracker, "gambleWins", 1, this.gambleWins);
     }
 
     @BsonIgnore
     public void incrementSlotsWins() {
         this.slotsWins += 1;
-        fieldTracker.put("slotsWins", this.slotsWins);
+        Increment.track(fieldTracker, "slotsWins", 1, this.slotsWins);
     }
 
     @BsonIgnore
     public void incrementGambleLose() {
-        gambleLose += 1;
-        fieldTracker.put("gambleLose", this.gambleLose);
+        this.gambleLose += 1;
+        Increment.track(fieldTracker, "gambleLose", 1, this.gambleLose);
     }
 
     @BsonIgnore
     public void incrementSlotsLose() {
-        slotsLose += 1;
-        fieldTracker.put("slotsLose", this.slotsLose);
+        this.slotsLose += 1;
+        Increment.track(fieldTracker, "slotsLose", 1, this.slotsLose);
     }
 
     @BsonIgnore
     public void incrementToolsBroken() {
         this.toolsBroken++;
-        fieldTracker.put("toolsBroken", this.toolsBroken);
+        Increment.track(fieldTracker, "toolsBroken", 1, this.toolsBroken);
     }
 
     @BsonIgnore
     public void incrementCraftedItems() {
         this.craftedItems++;
-        fieldTracker.put("craftedItems", this.craftedItems);
+        Increment.track(fieldTracker, "craftedItems", 1, this.craftedItems);
     }
 
     @BsonIgnore
     public void incrementCraftedItems(int amount) {
         this.craftedItems += amount;
-        fieldTracker.put("craftedItems", this.craftedItems);
+        Increment.track(fieldTracker, "craftedItems", amount, this.craftedItems);
     }
 
     @BsonIgnore
     public void incrementRepairedItems() {
         this.repairedItems++;
-        fieldTracker.put("repairedItems", this.repairedItems);
+        Increment.track(fieldTracker, "repairedItems", 1, this.repairedItems);
     }
 
     @BsonIgnore
     public void incrementSalvagedItems() {
         this.salvagedItems++;
-        fieldTracker.put("salvagedItems", this.salvagedItems);
+        Increment.track(fieldTracker, "salvagedItems", 1, this.salvagedItems);
     }
 
     @BsonIgnore
     @Override
-    public void updateAllChanged() {
-        MantaroData.db().updateFieldValues(this, fieldTracker);
+    public boolean updateAllChanged() {
+        return MantaroData.db().updateFieldValues(this, fieldTracker);
     }
 
     @Override
@@ -267,4 +277,58 @@ public class PlayerStats implements ManagedMongoObject {
     public void delete() {
         MantaroData.db().deleteMongo(this, PlayerStats.class);
     }
+
+    public static class Codec extends EntityCodec<PlayerStats> {
+        public Codec() {
+            super(PlayerStats.class);
+        }
+
+        @Override
+        public void encode(BsonWriter writer, PlayerStats stats, EncoderContext context) {
+            writer.writeStartDocument();
+            writeString(writer, "_id", stats.id);
+            writer.writeInt64("gambleWins", stats.gambleWins);
+            writer.writeInt64("slotsWins", stats.slotsWins);
+            writer.writeInt64("gambleWinAmount", stats.gambleWinAmount);
+            writer.writeInt64("slotsWinAmount", stats.slotsWinAmount);
+            writer.writeInt64("craftedItems", stats.craftedItems);
+            writer.writeInt64("repairedItems", stats.repairedItems);
+            writer.writeInt64("salvagedItems", stats.salvagedItems);
+            writer.writeInt64("toolsBroken", stats.toolsBroken);
+            writer.writeInt64("looted", stats.looted);
+            writer.writeInt64("mined", stats.mined);
+            writer.writeInt64("gambleLose", stats.gambleLose);
+            writer.writeInt64("slotsLose", stats.slotsLose);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        protected PlayerStats create() {
+            return new PlayerStats();
+        }
+
+        @Override
+        protected boolean decodeField(String name, BsonReader reader, DecoderContext context, PlayerStats stats) {
+            switch (name) {
+                case "_id" -> stats.id = reader.readString();
+                case "gambleWins" -> stats.gambleWins = readLong(reader);
+                case "slotsWins" -> stats.slotsWins = readLong(reader);
+                case "gambleWinAmount" -> stats.gambleWinAmount = readLong(reader);
+                case "slotsWinAmount" -> stats.slotsWinAmount = readLong(reader);
+                case "craftedItems" -> stats.craftedItems = readLong(reader);
+                case "repairedItems" -> stats.repairedItems = readLong(reader);
+                case "salvagedItems" -> stats.salvagedItems = readLong(reader);
+                case "toolsBroken" -> stats.toolsBroken = readLong(reader);
+                case "looted" -> stats.looted = readLong(reader);
+                case "mined" -> stats.mined = readLong(reader);
+                case "gambleLose" -> stats.gambleLose = readLong(reader);
+                case "slotsLose" -> stats.slotsLose = readLong(reader);
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
 }
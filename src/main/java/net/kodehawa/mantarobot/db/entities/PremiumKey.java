@@ -20,8 +20,13 @@ package net.kodehawa.mantarobot.db.entities;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.ManagedMongoObject;
+import net.kodehawa.mantarobot.db.codecs.EntityCodec;
 import net.kodehawa.mantarobot.utils.APIUtils;
 import net.kodehawa.mantarobot.utils.Pair;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
 import org.bson.codecs.pojo.annotations.BsonId;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
 
@@ -188,4 +193,46 @@ public class PremiumKey implements ManagedMongoObject {
     public void delete() {
         MantaroData.db().deleteMongo(this, PremiumKey.class);
     }
+
+    public static class Codec extends EntityCodec<PremiumKey> {
+        public Codec() {
+            super(PremiumKey.class);
+        }
+
+        @Override
+        public void encode(BsonWriter writer, PremiumKey key, EncoderContext context) {
+            writer.writeStartDocument();
+            writeString(writer, "_id", key.id);
+            writer.writeInt64("duration", key.duration);
+            writer.writeBoolean("enabled", key.enabled);
+            writer.writeInt64("expiration", key.expiration);
+            writeString(writer, "owner", key.owner);
+            writer.writeInt32("type", key.type);
+            writeString(writer, "linkedTo", key.linkedTo);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        protected PremiumKey create() {
+            return new PremiumKey();
+        }
+
+        @Override
+        protected boolean decodeField(String name, BsonReader reader, DecoderContext context, PremiumKey key) {
+            switch (name) {
+                case "_id" -> key.id = reader.readString();
+                case "duration" -> key.duration = readLong(reader);
+                case "enabled" -> key.enabled = reader.readBoolean();
+                case "expiration" -> key.expiration = readLong(reader);
+                case "owner" -> key.owner = reader.readString();
+                case "type" -> key.type = readInt(reader);
+                case "linkedTo" -> key.linkedTo = reader.readString();
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db.entities;
+
+import net.kodehawa.mantarobot.db.codecs.EntityCodec;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.pojo.annotations.BsonId;
+import org.bson.codecs.pojo.annotations.BsonIgnore;
+
+/**
+ * Read-only slice of a {@link MongoUser}, with only what's needed before running a command (language and premium key).
+ * Anything that needs to write should load the full {@link MongoUser}.
+ */
+@SuppressWarnings("unused")
+public class UserCommandSettings {
+    @BsonIgnore
+    public static final String[] FIELDS = { "lang", "premiumKey", "receivedExpirationWarning" };
+
+    @BsonId
+    private String id;
+    private String lang;
+    private String premiumKey;
+    private boolean receivedExpirationWarning = false;
+
+    public UserCommandSettings() { }
+
+    private UserCommandSettings(String id) {
+        this.id = id;
+    }
+
+    public static UserCommandSettings of(String userId) {
+        return new UserCommandSettings(userId);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getLang() {
+        return lang;
+    }
+
+    public void setLang(String lang) {
+        this.lang = lang;
+    }
+
+    public String getPremiumKey() {
+        return premiumKey;
+    }
+
+    public void setPremiumKey(String premiumKey) {
+        this.premiumKey = premiumKey;
+    }
+
+    public boolean isReceivedExpirationWarning() {
+        return receivedExpirationWarning;
+    }
+
+    public void setReceivedExpirationWarning(boolean receivedExpirationWarning) {
+        this.receivedExpirationWarning = receivedExpirationWarning;
+    }
+
+    public static class Codec extends EntityCodec<UserCommandSettings> {
+        public Codec() {
+            super(UserCommandSettings.class);
+        }
+
+        @Override
+        public void encode(BsonWriter writer, UserCommandSettings settings, EncoderContext context) {
+            writer.writeStartDocument();
+            writeString(writer, "_id", settings.id);
+            writeString(writer, "lang", settings.lang);
+            writeString(writer, "premiumKey", settings.premiumKey);
+            writer.writeBoolean("receivedExpirationWarning", settings.receivedExpirationWarning);
+            writer.writeEndDocument();
+        }
+
+        @Override
+        protected UserCommandSettings create() {
+            return new UserCommandSettings();
+        }
+
+        @Override
+        protected boolean decodeField(String name, BsonReader reader, DecoderContext context, UserCommandSettings settings) {
+            switch (name) {
+                case "_id" -> settings.id = reader.readString();
+                case "lang" -> settings.lang = reader.readString();
+                case "premiumKey" -> settings.premiumKey = reader.readString();
+                case "receivedExpirationWarning" -> settings.receivedExpirationWarning = reader.readBoolean();
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
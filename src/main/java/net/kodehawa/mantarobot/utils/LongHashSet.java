@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable open-addressing hash set of longs (usually Discord ids), so lookups don't box nor walk a list.
+ * Build a new one to change it.
+ */
+public final class LongHashSet {
+    private static final LongHashSet EMPTY = new LongHashSet(new long[0]);
+
+    // 0 marks an empty slot, so whether 0 itself is in the set is kept apart.
+    private final long[] table;
+    private final int mask;
+    private final boolean containsZero;
+    private final int size;
+
+    private LongHashSet(long[] values) {
+        var capacity = Integer.highestOneBit(Math.max(2, values.length * 2 - 1)) << 1;
+        var table = new long[capacity];
+        var mask = capacity - 1;
+        var containsZero = false;
+        var size = 0;
+
+        for (var value : values) {
+            if (value == 0) {
+                if (!containsZero) {
+                    containsZero = true;
+                    size++;
+                }
+
+                continue;
+            }
+
+            var slot = mix(value) & mask;
+            while (table[slot] != 0 && table[slot] != value) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (table[slot] == 0) {
+                table[slot] = value;
+                size++;
+            }
+        }
+
+        this.table = table;
+        this.mask = mask;
+        this.containsZero = containsZero;
+        this.size = size;
+    }
+
+    public static LongHashSet empty() {
+        return EMPTY;
+    }
+
+    public static LongHashSet of(long... values) {
+        return values.length == 0 ? EMPTY : new LongHashSet(values);
+    }
+
+    /**
+     * Builds a set out of string ids. Anything that isn't a number is skipped.
+     */
+    public static LongHashSet ofIds(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return EMPTY;
+        }
+
+        var values = new long[ids.size()];
+        var count = 0;
+        for (var id : ids) {
+            var value = parse(id);
+            if (value != -1) {
+                values[count++] = value;
+            }
+        }
+
+        return of(count == values.length ? values : Arrays.copyOf(values, count));
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+
+        var slot = mix(value) & mask;
+        long current;
+        while ((current = table[slot]) != 0) {
+            if (current == value) {
+                return true;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Whether the id is in the set. Ids that aren't numbers are never in it.
+     */
+    public boolean contains(String id) {
+        var value = parse(id);
+        return value != -1 && contains(value);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static int mix(long value) {
+        var hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static long parse(String id) {
+        if (id == null || id.isEmpty()) {
+            return -1;
+        }
+
+        try {
+            var value = Long.parseLong(id.trim());
+            return value < 0 ? -1 : value;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.utils;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs every task on its own virtual thread, and keeps the same counts a ThreadPoolExecutor would
+ * so both can be compared on the same metrics (see ThreadPoolCollector).
+ * The carrier threads they run on aren't reachable from here: JFRExports reports when virtual threads get stuck on them.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+    private final ThreadFactory threadFactory;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger largest = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final Object terminationLock = new Object();
+    private volatile boolean shutdown;
+
+    /**
+     * @param name Prefix of the thread names, followed by a number.
+     */
+    public VirtualThreadExecutor(String name) {
+        this.threadFactory = Thread.ofVirtual().name(name, 0).factory();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+
+        submitted.increment();
+        largest.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    command.run();
+                } finally {
+                    finished();
+                }
+            }).start();
+        } catch (Throwable t) {
+            finished();
+            throw t;
+        }
+    }
+
+    private void finished() {
+        completed.increment();
+        if (active.decrementAndGet() == 0 && shutdown) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getLargestPoolSize() {
+        return largest.get();
+    }
+
+    public long getTaskCount() {
+        return submitted.sum();
+    }
+
+    public long getCompletedTaskCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return How many carrier threads the virtual threads are meant to run on.
+     */
+    public int getCarrierParallelism() {
+        // Same as the JDK works it out when it isn't set.
+        return Integer.getInteger("jdk.virtualThreadScheduler.parallelism", Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    // Threads can't be taken back once started, so this is the same as shutdown.
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        return List.of();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && active.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        var deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                var left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, left);
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.utils.commands;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Immutable weighted collection, sampled in constant time using Walker's alias method.
+ * Unlike {@link RandomCollection}, this is meant to be built once and shared: sampling doesn't change it.
+ */
+public class LootTable<E> {
+    private final List<E> entries;
+    private final double[] weights;
+    // Chance to keep the picked column instead of going to its alias, and the alias itself.
+    private final double[] probability;
+    private final int[] alias;
+
+    private LootTable(List<E> entries, double[] weights) {
+        var size = weights.length;
+        this.entries = List.copyOf(entries);
+        this.weights = weights;
+        this.probability = new double[size];
+        this.alias = new int[size];
+
+        var total = 0D;
+        for (var weight : weights) {
+            total += weight;
+        }
+
+        // Scale so the average is 1, then pair every column under 1 with one over it.
+        var scaled = new double[size];
+        var small = new int[size];
+        var large = new int[size];
+        int smallCount = 0, largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            scaled[i] = weights[i] * size / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            var less = small[--smallCount];
+            var more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+
+        // Whatever is left is 1 give or take floating point error.
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+    }
+
+    public static <E> Builder<E> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @return A random entry, going by their weights. Null if the table is empty.
+     */
+    @Nullable
+    public E next(Random random) {
+        if (probability.length == 0) {
+            return null;
+        }
+
+        var column = random.nextInt(probability.length);
+        return entries.get(random.nextDouble() < probability[column] ? column : alias[column]);
+    }
+
+    public List<E> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return The chance of {@link #next(Random)} returning the entry at this index.
+     */
+    public double getChance(int index) {
+        var total = 0D;
+        for (var weight : weights) {
+            total += weight;
+        }
+
+        return weights[index] / total;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public static class Builder<E> {
+        private final List<E> entries = new ArrayList<>();
+        private final List<Double> weights = new ArrayList<>();
+        private final List<Double> gates = new ArrayList<>();
+
+        public Builder<E> add(double weight, E entry) {
+            return addGated(weight, 1, entry);
+        }
+
+        /**
+         * Adds an entry that only makes it into the pool some of the time, the same as filtering a list with a random
+         * check and then picking from what's left by weight. The weights of the table are set so each entry
+         * comes out as often as it would that way, so gated entries need a whole number as their weight.
+         *
+         * @param weight How likely it is to be picked once it's in the pool.
+         * @param gate Chance of it being in the pool, between 0 and 1.
+         */
+        public Builder<E> addGated(double weight, double gate, E entry) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight should be over zero.");
+            }
+
+            if (gate <= 0 || gate > 1) {
+                throw new IllegalArgumentException("Gate should be over zero and at most one.");
+            }
+
+            if (gate < 1 && weight != Math.rint(weight)) {
+                throw new IllegalArgumentException("Gated entries need a whole number as their weight.");
+            }
+
+            entries.add(entry);
+            weights.add(weight);
+            gates.add(gate);
+            return this;
+        }
+
+        public LootTable<E> build() {
+            var size = entries.size();
+            var array = new double[size];
+            var gated = false;
+            for (int i = 0; i < size; i++) {
+                array[i] = weights.get(i);
+                gated |= gates.get(i) < 1;
+            }
+
+            if (gated) {
+                array = gatedWeights();
+            }
+
+            return new LootTable<>(entries, array);
+        }
+
+        // The chance of each entry being picked is gate * E[weight / (weight + weight of everything else in the pool)].
+        // Everything else is a sum of independent weight * Bernoulli(gate), so with whole weights we can get its exact
+        // distribution by convolution. Entries with the same weight and gate have the same chance, so it's only done
+        // once for each of those.
+        private double[] gatedWeights() {
+            var size = entries.size();
+            for (var weight : weights) {
+                if (weight != Math.rint(weight)) {
+                    throw new IllegalStateException("Tables with gated entries need every weight to be a whole number.");
+                }
+            }
+
+            var total = (int) weights.stream().mapToDouble(Double::doubleValue).sum();
+
+            var chances = new HashMap<List<Double>, Double>();
+            var result = new double[size];
+            for (int i = 0; i < size; i++) {
+                var weight = weights.get(i);
+                var gate = gates.get(i);
+                var index = i;
+                result[i] = chances.computeIfAbsent(List.of(weight, gate), k -> {
+                    var others = new double[total + 1];
+                    others[0] = 1;
+                    for (int j = 0; j < size; j++) {
+                        if (j != index) {
+                            addBernoulli(others, weights.get(j).intValue(), gates.get(j));
+                        }
+                    }
+
+                    var chance = 0D;
+                    for (int sum = 0; sum <= total; sum++) {
+                        chance += others[sum] * weight / (weight + sum);
+                    }
+
+                    return chance * gate;
+                });
+            }
+
+            return result;
+        }
+
+        private static void addBernoulli(double[] distribution, int weight, double chance) {
+            if (chance >= 1) {
+                System.arraycopy(distribution, 0, distribution, weight, distribution.length - weight);
+                Arrays.fill(distribution, 0, weight, 0);
+                return;
+            }
+
+            for (int sum = distribution.length - 1; sum >= 0; sum--) {
+                distribution[sum] = distribution[sum] * (1 - chance) + (sum >= weight ? distribution[sum - weight] * chance : 0);
+            }
+        }
+    }
+}
@@ -17,9 +17,12 @@
 
 package net.kodehawa.mantarobot.utils.commands.ratelimit;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.apache.commons.io.IOUtils;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
@@ -28,8 +31,8 @@ import redis.clients.jedis.exceptions.JedisNoScriptException;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -46,6 +49,11 @@ import java.util.concurrent.TimeUnit;
  */
 public class IncreasingRateLimiter {
     private static final String SCRIPT;
+    private static final int LOCAL_COOLDOWN_CACHE_SIZE = 50_000;
+    // How many arguments the script takes for each key.
+    private static final int ARGUMENTS_PER_KEY = 7;
+    // Same script for every ratelimiter.
+    private static volatile String scriptSha;
     private final Config config = MantaroData.config().get();
 
     static {
@@ -67,10 +75,12 @@ public class IncreasingRateLimiter {
     private final int spamBeforeCooldownIncrease;
     private final int cooldownIncrease;
     private final int maxCooldown;
-    private String scriptSha;
     private final boolean randomIncrement;
     private final boolean premiumAware;
     private final int incrementDivider;
+    // Keys we know are on cooldown, so hitting them again doesn't need to go to redis. See Cooldown.
+    private final Cache<String, Cooldown> cooldowns;
+    private final String metricName;
 
     private IncreasingRateLimiter(JedisPool pool, String prefix, int limit, int cooldown,
                                   int spamBeforeCooldownIncrease, int cooldownIncrease, int maxCooldown,
@@ -85,58 +95,229 @@ public class IncreasingRateLimiter {
         this.randomIncrement = randomIncrement;
         this.premiumAware = premiumAware;
         this.incrementDivider = incrementDivider;
+        this.cooldowns = CacheBuilder.newBuilder()
+                .maximumSize(LOCAL_COOLDOWN_CACHE_SIZE)
+                // Only to free up memory, entries are checked against their reset anyway.
+                .expireAfterWrite(Math.max(cooldown * 2L, maxCooldown), TimeUnit.MILLISECONDS)
+                .build();
+        this.metricName = prefix.isEmpty() ? "none" : prefix.substring(0, prefix.length() - 1);
     }
 
+    public RateLimit limit(String key) {
+        return limit(check(key))[0];
+    }
+
+    /**
+     * @return A check on this ratelimiter for {@link #limit(Check...)}.
+     */
+    public Check check(String key) {
+        return new Check(this, key);
+    }
+
+    /**
+     * Checks several ratelimits in order, stopping at the first one that's hit. Same as calling {@link #limit(String)}
+     * on each of them one after the other, but in a single round trip to redis (or none, if the first one we get to
+     * is known to be on cooldown). Every ratelimiter has to use the same pool.
+     *
+     * @return The result of each check, in the same order. Everything after the first one that was hit is null, as it never got checked.
+     */
+    public static RateLimit[] limit(Check... checks) {
+        for (var check : checks) {
+            if (check.rateLimiter().pool != checks[0].rateLimiter().pool) {
+                throw new IllegalArgumentException("Ratelimiters checked together must use the same pool");
+            }
+        }
+
+        var results = new RateLimit[checks.length];
+        long start = Instant.now().toEpochMilli();
+        int next = 0;
+        while (next < checks.length) {
+            // Hits we know about are answered here, and nothing after them gets checked.
+            var local = checks[next].rateLimiter().hitLocally(checks[next].key(), start);
+            if (local != null) {
+                results[next] = local;
+                return results;
+            }
+
+            // Everything up to the next one we know is hit goes to redis at once.
+            int end = next + 1;
+            while (end < checks.length && !checks[end].rateLimiter().isKnownHit(checks[end].key(), start)) {
+                end++;
+            }
+
+            var remote = limitRemote(checks, next, end, start);
+            System.arraycopy(remote, 0, results, next, remote.length);
+            if (remote.length < end - next || remote[remote.length - 1].getTriesLeft() < 1) {
+                return results;
+            }
+
+            next = end;
+        }
+
+        return results;
+    }
+
+    private RateLimit hitLocally(String key, long now) {
+        var cooldown = cooldowns.getIfPresent(prefix + key);
+        var rateLimit = cooldown == null ? null : cooldown.hit(now, spamBeforeCooldownIncrease, cooldownIncrease);
+        if (rateLimit != null) {
+            Metrics.RATELIMIT_CHECKS.labels(metricName, "local").inc();
+        }
+
+        return rateLimit;
+    }
+
+    private boolean isKnownHit(String key, long now) {
+        var cooldown = cooldowns.getIfPresent(prefix + key);
+        return cooldown != null && cooldown.canHit(now, spamBeforeCooldownIncrease, cooldownIncrease);
+    }
+
+    // Runs the script over checks[from, to), which stops at the first one that's hit.
     @SuppressWarnings("unchecked")
-    private RateLimit limit0(String key) {
-        try (Jedis j = pool.getResource()) {
+    private static RateLimit[] limitRemote(Check[] checks, int from, int to, long start) {
+        var keys = new ArrayList<String>(to - from);
+        var arguments = new ArrayList<String>((to - from) * ARGUMENTS_PER_KEY);
+        var pendingSpam = new int[to - from];
+        for (int i = from; i < to; i++) {
+            var rateLimiter = checks[i].rateLimiter();
+            var key = rateLimiter.prefix + checks[i].key();
+            var cooldown = rateLimiter.cooldowns.getIfPresent(key);
+            pendingSpam[i - from] = cooldown == null ? 0 : cooldown.takePendingSpam();
+            keys.add(key);
+            arguments.addAll(rateLimiter.scriptArguments(start, pendingSpam[i - from]));
+        }
+
+        List<Long> result;
+        try (Jedis j = checks[from].rateLimiter().pool.getResource()) {
             if (scriptSha == null) {
                 scriptSha = j.scriptLoad(SCRIPT);
             }
 
-            long start = Instant.now().toEpochMilli();
-            List<Long> result;
-            boolean premiumAwareness = premiumAware && config.isPremiumBot();
             try {
-                int cd = cooldown + (randomIncrement && !premiumAwareness ? ThreadLocalRandom.current().nextInt(cooldown / incrementDivider) : 0);
-                result = (List<Long>) j.evalsha(scriptSha,
-                        Collections.singletonList(key),
-                        Arrays.asList(
-                                String.valueOf(limit),
-                                String.valueOf(start),
-                                String.valueOf(premiumAwareness ? cd - ThreadLocalRandom.current().nextInt(cooldown / 4) : cd),
-                                String.valueOf(spamBeforeCooldownIncrease),
-                                String.valueOf(cooldownIncrease),
-                                String.valueOf(maxCooldown)
-                        )
-                );
+                result = (List<Long>) j.evalsha(scriptSha, keys, arguments);
             } catch (JedisNoScriptException e) {
                 //script not in cache. force load it and try again.
                 scriptSha = j.scriptLoad(SCRIPT);
-                return limit0(key);
+                result = (List<Long>) j.evalsha(scriptSha, keys, arguments);
             }
+        }
 
-            return new RateLimit(
+        var rateLimits = new RateLimit[result.size() / 3];
+        for (int i = 0; i < rateLimits.length; i++) {
+            var rateLimiter = checks[from + i].rateLimiter();
+            rateLimits[i] = new RateLimit(
                     start,
-                    (int) (limit - result.get(0)),
-                    result.get(1) - start,
-                    result.get(2).intValue()
+                    (int) (rateLimiter.limit - result.get(i * 3)),
+                    result.get(i * 3 + 1) - start,
+                    result.get(i * 3 + 2).intValue()
             );
+
+            rateLimiter.remember(keys.get(i), start, rateLimits[i]);
         }
+
+        // Whatever didn't get checked still has to send its spam next time.
+        for (int i = rateLimits.length; i < keys.size(); i++) {
+            var cooldown = checks[from + i].rateLimiter().cooldowns.getIfPresent(keys.get(i));
+            if (cooldown != null) {
+                cooldown.addPendingSpam(pendingSpam[i]);
+            }
+        }
+
+        return rateLimits;
     }
 
-    public RateLimit limit(String key) {
-        return limit0(prefix + key);
+    private List<String> scriptArguments(long start, int pendingSpam) {
+        boolean premiumAwareness = premiumAware && config.isPremiumBot();
+        int cd = cooldown + (randomIncrement && !premiumAwareness ? ThreadLocalRandom.current().nextInt(cooldown / incrementDivider) : 0);
+        return Arrays.asList(
+                String.valueOf(limit),
+                String.valueOf(start),
+                String.valueOf(premiumAwareness ? cd - ThreadLocalRandom.current().nextInt(cooldown / 4) : cd),
+                String.valueOf(spamBeforeCooldownIncrease),
+                String.valueOf(cooldownIncrease),
+                String.valueOf(maxCooldown),
+                String.valueOf(pendingSpam)
+        );
+    }
+
+    private void remember(String key, long start, RateLimit rateLimit) {
+        Metrics.RATELIMIT_CHECKS.labels(metricName, "redis").inc();
+        // Out of tries (or this was the last one): only the cooldown running out can change that, and it never happens early.
+        if (rateLimit.getTriesLeft() <= 1) {
+            cooldowns.put(key, new Cooldown(start + rateLimit.getCooldown(), rateLimit.getTriesLeft() < 1 ? rateLimit.getSpamAttempts() + 1 : 0));
+        } else {
+            cooldowns.invalidate(key);
+        }
     }
 
     public long getRemaniningCooldown(User user) {
+        var key = prefix + user.getId();
+        // Without a penalty increase the reset we know about can't have moved, so there's no need to ask.
+        var cooldown = cooldowns.getIfPresent(key);
+        var now = System.currentTimeMillis();
+        if (cooldown != null && cooldownIncrease == 0 && cooldown.canHit(now, spamBeforeCooldownIncrease, cooldownIncrease)) {
+            return cooldown.reset - now;
+        }
+
         try (Jedis j = pool.getResource()) {
-            String resetAt = j.hget(prefix + user.getId(), "reset");
+            String resetAt = j.hget(key, "reset");
             if (resetAt == null) {
                 return 0;
             }
 
-            return Long.parseLong(resetAt) - System.currentTimeMillis();
+            return Long.parseLong(resetAt) - now;
+        }
+    }
+
+    /**
+     * One key on one ratelimiter, to check along with others with {@link #limit(Check...)}.
+     */
+    public record Check(IncreasingRateLimiter rateLimiter, String key) { }
+
+    /**
+     * What we last heard from redis about a key that ran out of tries. Until the reset, hits on it are blocked no matter
+     * what any other node does (the reset only ever moves forward while on cooldown), so they can be answered here.
+     * The only thing redis needs to hear about them is the spam count, which goes along with the next call that does
+     * make it there. Once a hit would make the cooldown longer (past the spam tolerance), every hit goes to redis again.
+     */
+    private static final class Cooldown {
+        private final long reset;
+        // What redis would return as spam attempts on the next hit.
+        private int spam;
+        // Hits answered here that redis doesn't know about yet.
+        private int pendingSpam;
+
+        Cooldown(long reset, int spam) {
+            this.reset = reset;
+            this.spam = spam;
+        }
+
+        /**
+         * @return The answer redis would've given, or null if this has to go to redis.
+         */
+        synchronized RateLimit hit(long now, int spamTolerance, int cooldownIncrease) {
+            if (!canHit(now, spamTolerance, cooldownIncrease)) {
+                return null;
+            }
+
+            var rateLimit = new RateLimit(now, 0, reset - now, spam);
+            spam++;
+            pendingSpam++;
+            return rateLimit;
+        }
+
+        synchronized boolean canHit(long now, int spamTolerance, int cooldownIncrease) {
+            return now < reset && (cooldownIncrease == 0 || spam + 1 <= spamTolerance);
+        }
+
+        synchronized void addPendingSpam(int pending) {
+            pendingSpam += pending;
+        }
+
+        synchronized int takePendingSpam() {
+            var pending = pendingSpam;
+            pendingSpam = 0;
+            return pending;
         }
     }
 
@@ -17,37 +17,47 @@
 
 package net.kodehawa.mantarobot.utils.commands.ratelimit;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.utils.exporters.Metrics;
 
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 /**
  * <p>This class defines the x ratelimit that will be taken into account when x user inputs a command.
  * <p>The user will be not able to use the command until the ratelimit gets lifted, and instead it will send a message saying how much time is left (usually managed in
  * Currency commands themselves).</p>
  * <p>When the ratelimit gets reset, if the user tries to use the command again it will start all over again.</p>
+ * <p>This is a local (per node) ratelimiter, implemented as a GCRA: each key only keeps the time at which it'd be fully
+ * rested, updated with a compare-and-set. Up to max calls can be done at once, and after that one more every timeout / max.
+ * Keys that are fully rested get dropped every once in a while.</p>
  *
  * @author natanbc, modified by Kodehawa.
  * @since 01-06-2017
  */
 @SuppressWarnings("unused") // mostly unused class now, could prolly be removed at some point
 public class RateLimiter {
-    private static final ScheduledExecutorService ses = Executors.newScheduledThreadPool(1);
-
-    static {
-        Metrics.THREAD_POOL_COLLECTOR.add("rate-limiter", ses);
-    }
+    // Marks a key that got cleaned up. Whoever finds it has to start over with a new one.
+    private static final long REMOVED = Long.MIN_VALUE;
+    // Premium status of the people going through premium-aware limiters, so it isn't loaded from the database every time.
+    private static final Cache<String, Boolean> premiumCache = CacheBuilder.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .build();
 
     private final long max;
     private final long timeout;
-    private final ConcurrentHashMap<String, Pair<AtomicInteger, Long>> usersRateLimited = new ConcurrentHashMap<>();
+    // Current time in millis.
+    private final LongSupplier clock;
+    // When each key will be fully rested.
+    private final ConcurrentHashMap<String, AtomicLong> usersRateLimited = new ConcurrentHashMap<>();
+    private final AtomicLong lastCleanup;
     private boolean isPremiumAware = false;
 
     /**
@@ -56,8 +66,7 @@ public class RateLimiter {
      * @param timeout How much time until the ratelimit gets lifted
      */
     public RateLimiter(TimeUnit timeUnit, int timeout) {
-        this.max = 1;
-        this.timeout = timeUnit.toMillis(timeout);
+        this(timeUnit, 1, timeout);
     }
 
     /**
@@ -67,9 +76,8 @@ public class RateLimiter {
      * @param timeout How much time until the ratelimit gets lifted
      */
     public RateLimiter(TimeUnit timeUnit, int timeout, boolean isPremiumAware) {
-        this.max = 1;
+        this(timeUnit, 1, timeout);
         this.isPremiumAware = isPremiumAware;
-        this.timeout = timeUnit.toMillis(timeout);
     }
 
     /**
@@ -78,44 +86,66 @@ public class RateLimiter {
      * @param timeout  How much time until the ratelimit gets lifted.
      */
     public RateLimiter(TimeUnit timeUnit, int max, int timeout) {
+        this(timeUnit, max, timeout, System::currentTimeMillis);
+    }
+
+    /**
+     * Same as {@link #RateLimiter(TimeUnit, int, int)}, going by the given clock instead of the system one.
+     *
+     * @param clock The current time, in milliseconds.
+     */
+    public RateLimiter(TimeUnit timeUnit, int max, int timeout, LongSupplier clock) {
         this.max = max;
         this.timeout = timeUnit.toMillis(timeout);
+        this.clock = clock;
+        this.lastCleanup = new AtomicLong(clock.getAsLong());
     }
 
     //Basically where you get b1nzy'd.
     public boolean process(String key) {
-        boolean isPremium = isPremiumAware && MantaroData.db().getUser(key).isPremium();
-        Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
-
-        // Put the user on the RL map if they aren't here already, but we already let them pass.
-        if (p == null) {
-            usersRateLimited.put(key, p = new Pair<>());
-            p.first = new AtomicInteger();
-        }
-
-        AtomicInteger a = p.first;
-        long i = a.get();
-        if (i >= max) return false;
-
-        a.incrementAndGet();
-        long now = System.currentTimeMillis();
-
-        Long tryAgain = p.second;
-        if (tryAgain == null || tryAgain < now) {
-            p.second = now + (isPremium ? (long) (timeout * 0.75) : timeout);
+        var timeout = isPremiumAware && isPremium(key) ? (long) (this.timeout * 0.75) : this.timeout;
+        // Each call pushes the time at which the key is fully rested by one interval. The call goes through as long as
+        // that doesn't put it more than the whole timeout away.
+        var interval = Math.max(1, timeout / max);
+        var now = clock.getAsLong();
+        cleanup(now);
+
+        while (true) {
+            var restedAt = usersRateLimited.computeIfAbsent(key, k -> new AtomicLong(0));
+            var current = restedAt.get();
+            if (current == REMOVED) {
+                usersRateLimited.remove(key, restedAt);
+                continue;
+            }
+
+            var next = Math.max(current, now) + interval;
+            if (next - now > timeout) {
+                return false;
+            }
+
+            if (restedAt.compareAndSet(current, next)) {
+                return true;
+            }
         }
-
-        ses.schedule(a::decrementAndGet, isPremium ? (long) (timeout * 0.75) : timeout, TimeUnit.MILLISECONDS);
-        return true;
     }
 
     //Method overload.
     public long tryAgainIn(String key) {
-        Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
-        if (p == null || p.second == null)
+        var restedAt = usersRateLimited.get(key);
+        if (restedAt == null) {
             return 0;
+        }
 
-        return Math.max(p.second - System.currentTimeMillis(), 0);
+        var current = restedAt.get();
+        if (current == REMOVED) {
+            return 0;
+        }
+
+        // Same as process: the next call goes through once it'd fit within the timeout again.
+        var premium = isPremiumAware && Boolean.TRUE.equals(premiumCache.getIfPresent(key));
+        var timeout = premium ? (long) (this.timeout * 0.75) : this.timeout;
+        var interval = Math.max(1, timeout / max);
+        return Math.max(current + interval - timeout - clock.getAsLong(), 0);
     }
 
     public long tryAgainIn(Member key) {
@@ -134,12 +164,35 @@ public class RateLimiter {
         return process(member.getUser());
     }
 
-    public ConcurrentHashMap<String, Pair<AtomicInteger, Long>> getUsersRateLimited() {
-        return this.usersRateLimited;
+    /**
+     * @return How many keys are being kept track of, fully rested ones that weren't cleaned up yet included.
+     */
+    public int getTrackedKeys() {
+        return usersRateLimited.size();
+    }
+
+    // Drops the keys that are fully rested, at most once every timeout. Done by whoever calls process
+    // when it's time, so there's no task to schedule.
+    private void cleanup(long now) {
+        var last = lastCleanup.get();
+        if (now - last < timeout || !lastCleanup.compareAndSet(last, now)) {
+            return;
+        }
+
+        usersRateLimited.forEach((key, restedAt) -> {
+            var current = restedAt.get();
+            // Marked first, so anyone that got it right before it's removed knows to start over.
+            if (current != REMOVED && current <= now && restedAt.compareAndSet(current, REMOVED)) {
+                usersRateLimited.remove(key, restedAt);
+            }
+        });
     }
 
-    public static class Pair<F, S> {
-        F first;
-        S second;
+    private static boolean isPremium(String key) {
+        try {
+            return premiumCache.get(key, () -> MantaroData.db().getUser(key).isPremium());
+        } catch (ExecutionException e) {
+            return false;
+        }
     }
 }
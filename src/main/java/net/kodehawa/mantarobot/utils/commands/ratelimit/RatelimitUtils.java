@@ -43,16 +43,20 @@ public class RatelimitUtils {
 
     private static boolean ratelimit(IncreasingRateLimiter rateLimiter, String u, RateLimitContext ctx,
                                      I18nContext i18nContext, String extraMessage, boolean spamAware) {
+        if (!config.isHandleRatelimits()) {
+            return true;
+        }
+
+        return handleRatelimit(rateLimiter.limit(u), u, ctx, i18nContext, extraMessage, spamAware);
+    }
+
+    private static boolean handleRatelimit(RateLimit rateLimit, String u, RateLimitContext ctx,
+                                           I18nContext i18nContext, String extraMessage, boolean spamAware) {
         if (i18nContext == null) {
             //en_US
             i18nContext = new I18nContext();
         }
 
-        if (!config.isHandleRatelimits()) {
-            return true;
-        }
-
-        RateLimit rateLimit = rateLimiter.limit(u);
         if (rateLimit.getTriesLeft() < 1) {
             ctx.send(
                     String.format(i18nContext.get("general.ratelimit.header"),
@@ -145,6 +149,18 @@ public class RatelimitUtils {
         return ratelimit(rateLimiter, ctx.getAuthor().getId(), ctx.ratelimitContext(), languageContext, extra, spamAware);
     }
 
+    /**
+     * Same as the other overloads, but for a ratelimit that was already checked, usually along with others
+     * through {@link IncreasingRateLimiter#limit(IncreasingRateLimiter.Check...)}. Null (never checked) goes through.
+     */
+    public static boolean ratelimit(RateLimit rateLimit, IContext ctx, boolean spamAware) {
+        if (!config.isHandleRatelimits() || rateLimit == null) {
+            return true;
+        }
+
+        return handleRatelimit(rateLimit, ctx.getAuthor().getId(), ctx.ratelimitContext(), ctx.getLanguageContext(), null, spamAware);
+    }
+
     private static void onRateLimit(User user, String guildId, String channelId, String messageId) {
         var ratelimitedTimes = ratelimitedUsers.computeIfAbsent(user.getIdLong(), __ -> new AtomicInteger()).incrementAndGet();
 
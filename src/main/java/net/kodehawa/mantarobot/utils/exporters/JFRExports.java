@@ -131,6 +131,20 @@ public class JFRExports {
             .labelNames("area") //heap, nonheap
             .create();
 
+    //jdk.VirtualThreadPinned
+    private static final Histogram VIRTUAL_THREAD_PINNED = Histogram.build()
+            .name("jvm_virtual_thread_pinned_seconds")
+            .help("Time virtual threads spent blocked while pinned to their carrier, by our innermost frame")
+            .labelNames("location")
+            .buckets(0.020, 0.050, 0.100, 0.200, 0.400, 0.800, 1.600, 3, 5, 10)
+            .create();
+
+    //jdk.VirtualThreadSubmitFailed
+    private static final Counter VIRTUAL_THREAD_SUBMIT_FAILED = Counter.build()
+            .name("jvm_virtual_thread_submit_failed")
+            .help("Virtual threads that couldn't be started or unparked on a carrier thread")
+            .create();
+
     private static final Gauge.Child MEMORY_USAGE_HEAP = MEMORY_USAGE.labels("heap");
     private static final Gauge.Child MEMORY_USAGE_NONHEAP = MEMORY_USAGE.labels("nonheap");
 
@@ -152,6 +166,8 @@ public class JFRExports {
         CPU_SYSTEM.register();
         CPU_MACHINE.register();
         MEMORY_USAGE.register();
+        VIRTUAL_THREAD_PINNED.register();
+        VIRTUAL_THREAD_SUBMIT_FAILED.register();
         var rs = new RecordingStream();
         rs.setReuse(true);
         rs.setOrdered(true);
@@ -400,9 +416,58 @@ public class JFRExports {
                 AsyncInfoMonitor.setMachineMemoryUsage(e.getLong("usedSize"), e.getLong("totalSize"))).withPeriod(Prometheus.UPDATE_PERIOD
         );
 
+        /*
+         * jdk.VirtualThreadPinned {
+         *   startTime = 12:41:07.512
+         *   duration = 25,1 ms
+         *   eventThread = "Mantaro Virtual Thread-12" (javaThreadId = 94, virtual)
+         *   stackTrace = [
+         *     java.lang.VirtualThread.parkOnCarrierThread(boolean, long)
+         *     ...
+         *   ]
+         * }
+         */
+        // Blocking inside a synchronized block keeps the carrier thread busy too.
+        // It needs the stack trace to tell where it happened.
+        rs.enable("jdk.VirtualThreadPinned").withStackTrace();
+        rs.onEvent("jdk.VirtualThreadPinned", e -> VIRTUAL_THREAD_PINNED.labels(pinnedLocation(e))
+                .observe(e.getDuration().toNanos() / NANOSECONDS_PER_SECOND));
+
+        /*
+         * jdk.VirtualThreadSubmitFailed {
+         *   startTime = 12:41:07.512
+         *   javaThreadId = 94
+         *   exceptionMessage = "Queue capacity exceeded"
+         * }
+         */
+        // The carrier pool refused a virtual thread, so it never got to run (or to carry on).
+        event(rs, "jdk.VirtualThreadSubmitFailed", e -> VIRTUAL_THREAD_SUBMIT_FAILED.inc());
+
         rs.startAsync();
     }
 
+    // Innermost frame of ours, so the label doesn't end up being a different JDK method each time.
+    private static String pinnedLocation(RecordedEvent event) {
+        var stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return "unknown";
+        }
+
+        for (var frame : stackTrace.getFrames()) {
+            var method = frame.getMethod();
+            if (method == null) {
+                continue;
+            }
+
+            var type = method.getType().getName();
+            if (type.startsWith("net.kodehawa.")) {
+                return type.substring(type.lastIndexOf('.') + 1) + "." + method.getName();
+            }
+        }
+
+        return "other";
+    }
+
     private static EventSettings event(RecordingStream rs, String name, Consumer<RecordedEvent> c) {
         //default to no stacktrace
         var s = rs.enable(name).withoutStackTrace();
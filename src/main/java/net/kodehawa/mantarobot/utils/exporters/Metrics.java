@@ -91,5 +91,78 @@ public class Metrics {
             .help("HTTP Requests per-route (to discord)")
             .labelNames("route")
             .register();
+    public static final Counter DATABASE_CACHE = Counter.build()
+            .name("database_cache")
+            .help("Database cache lookups and removals (hit/miss/eviction/invalidation)")
+            .labelNames("cache", "type")
+            .register();
+    public static final Histogram WRITE_BEHIND_BATCH_SIZE = Histogram.build()
+            .name("database_write_behind_batch_size")
+            .help("Updates sent on each write-behind bulk write")
+            .buckets(1, 5, 10, 25, 50, 100, 250, 500, 1000)
+            .labelNames("collection")
+            .register();
+    public static final Histogram WRITE_BEHIND_FLUSH_LATENCY = Histogram.build()
+            .name("database_write_behind_flush_latency")
+            .help("Time it takes for a write-behind bulk write to go through.")
+            .labelNames("collection")
+            .register();
+    public static final Counter WRITE_BEHIND_FAILURES = Counter.build()
+            .name("database_write_behind_failures")
+            .help("Write-behind updates that failed to be written")
+            .labelNames("collection")
+            .register();
+    public static final Gauge DATABASE_INDEXES = Gauge.build()
+            .name("database_indexes")
+            .help("Declared indexes that are missing (couldn't be created) or unused since the database started")
+            .labelNames("collection", "state")
+            .register();
+    public static final Counter RATELIMIT_CHECKS = Counter.build()
+            .name("ratelimit_checks")
+            .help("Ratelimit checks, by where they were answered (local/redis)")
+            .labelNames("ratelimiter", "source")
+            .register();
+    public static final Gauge COMMAND_LANES = Gauge.build()
+            .name("command_lanes")
+            .help("Users with commands running or waiting to run")
+            .register();
+    public static final Histogram COMMAND_LANE_DEPTH = Histogram.build()
+            .name("command_lane_depth")
+            .help("Commands from the same user already running or waiting when a new one comes in")
+            .buckets(0, 1, 2, 3, 5, 10, 25)
+            .register();
+    public static final Counter COMMAND_LANE_STUCK = Counter.build()
+            .name("command_lane_stuck")
+            .help("Commands that ran for so long the user's next ones stopped waiting for them")
+            .register();
+    public static final Histogram INTERACTION_ACK_MARGIN = Histogram.build()
+            .name("interaction_ack_margin")
+            .help("Milliseconds left to acknowledge an interaction, when it started running (start), got deferred (defer) or got deferred before waiting in its lane (queued)")
+            .buckets(0, 250, 500, 1000, 1500, 2000, 2500, 3000)
+            .labelNames("type", "stage")
+            .register();
+    public static final Counter INTERACTION_EXPIRED = Counter.build()
+            .name("interaction_expired")
+            .help("Interactions dropped because they couldn't be acknowledged in time anymore")
+            .labelNames("type")
+            .register();
+    public static final Gauge COMMANDS_IN_FLIGHT = Gauge.build()
+            .name("commands_in_flight")
+            .help("Commands let in by admission control that haven't finished yet")
+            .register();
+    public static final Histogram COMMAND_QUEUE_DELAY = Histogram.build()
+            .name("command_queue_delay")
+            .help("Milliseconds commands waited for a thread on the command pool")
+            .buckets(1, 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000)
+            .register();
+    public static final Counter COMMANDS_SHED = Counter.build()
+            .name("commands_shed")
+            .help("Commands turned away by admission control, by type and priority")
+            .labelNames("type", "priority")
+            .register();
+    public static final Counter MESSAGES_FILTERED = Counter.build()
+            .name("messages_filtered")
+            .help("Messages dropped before reaching the command pool, as they can't be commands")
+            .register();
 
 }
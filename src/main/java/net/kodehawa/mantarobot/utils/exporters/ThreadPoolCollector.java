@@ -19,6 +19,7 @@ package net.kodehawa.mantarobot.utils.exporters;
 
 import io.prometheus.client.Collector;
 import io.prometheus.client.GaugeMetricFamily;
+import net.kodehawa.mantarobot.utils.VirtualThreadExecutor;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -32,9 +33,11 @@ import java.util.concurrent.TimeUnit;
 
 public class ThreadPoolCollector extends Collector {
     private final ConcurrentMap<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, VirtualThreadExecutor> virtualExecutors = new ConcurrentHashMap<>();
 
     @SuppressWarnings("unused")
     public ThreadPoolExecutor remove(String name) {
+        virtualExecutors.remove(name);
         return executors.remove(name);
     }
 
@@ -50,7 +53,13 @@ public class ThreadPoolCollector extends Collector {
             return add(name, threadPoolExecutor);
         }
 
-        throw new IllegalArgumentException("Provided executor is not a ThreadPoolExecutor");
+        // Reported under the same names, so both kinds can be compared on the same graphs.
+        if (executor instanceof VirtualThreadExecutor virtualThreadExecutor) {
+            Objects.requireNonNull(name, "Name may not be null");
+            return virtualExecutors.putIfAbsent(name, virtualThreadExecutor) == null;
+        }
+
+        throw new IllegalArgumentException("Provided executor is not a ThreadPoolExecutor or VirtualThreadExecutor");
     }
 
     @SuppressWarnings("unused")
@@ -67,7 +76,7 @@ public class ThreadPoolCollector extends Collector {
 
     @Override
     public List<MetricFamilySamples> collect() {
-        List<MetricFamilySamples> list = new ArrayList<>(8);
+        List<MetricFamilySamples> list = new ArrayList<>(11);
         GaugeMetricFamily activeCount = new GaugeMetricFamily(
                 "executor_active_count",
                 "Approximate number of threads that are actively executing tasks.",
@@ -124,6 +133,13 @@ public class ThreadPoolCollector extends Collector {
         );
 
         list.add(taskCount);
+        GaugeMetricFamily carrierParallelism = new GaugeMetricFamily(
+                "executor_carrier_parallelism",
+                "Number of carrier threads virtual threads are meant to run on.",
+                Collections.singletonList("executor")
+        );
+
+        list.add(carrierParallelism);
         for (var entry : executors.entrySet()) {
             var name = Collections.singletonList(entry.getKey());
             var executor = entry.getValue();
@@ -138,6 +154,21 @@ public class ThreadPoolCollector extends Collector {
             taskCount.addMetric(name, executor.getTaskCount());
         }
 
+        // Every task gets its own thread, so the pool is as big as whatever is running right now.
+        for (var entry : virtualExecutors.entrySet()) {
+            var name = Collections.singletonList(entry.getKey());
+            var executor = entry.getValue();
+
+            activeCount.addMetric(name, executor.getActiveCount());
+            completedTaskCount.addMetric(name, executor.getCompletedTaskCount());
+            largestPoolSize.addMetric(name, executor.getLargestPoolSize());
+            poolSize.addMetric(name, executor.getActiveCount());
+            taskCount.addMetric(name, executor.getTaskCount());
+
+            // Those threads still need a carrier to run on, which is where they'd actually wait (see JFRExports).
+            carrierParallelism.addMetric(name, executor.getCarrierParallelism());
+        }
+
         return list;
     }
 }
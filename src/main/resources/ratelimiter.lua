@@ -1,73 +1,102 @@
 --[[
-KEYS[1] - ratelimit key (redis hash)
-
-ARGV[1] - ratelimit limit
-ARGV[2] - current time
-ARGV[3] - initial cooldown
-ARGV[4] - maximum number of calls that can be done after limit is hit before cooldown is increased
-ARGV[5] - increase in cooldown for each call after limit is hit
-ARGV[6] - max cooldown time
+Checks one or more ratelimits in order, stopping at the first one that's hit (same as checking them one by one,
+but in a single round trip and without anything else getting in between).
+
+KEYS[n] - ratelimit key (redis hash)
+
+Each key takes 7 arguments, the ones for KEYS[n] starting at ARGV[(n - 1) * 7 + 1]:
+1 - ratelimit limit
+2 - current time
+3 - initial cooldown
+4 - maximum number of calls that can be done after limit is hit before cooldown is increased
+5 - increase in cooldown for each call after limit is hit
+6 - max cooldown time
+7 - calls answered by a node while it knew the key was on cooldown, which still count as spam
+
+Returns {count, reset, spam} for every key that got checked, one after the other in a single list.
 ]]
 
-local data = redis.call("HGETALL", KEYS[1]) or {}
-
-do
-    local tmp = {}
-    local k
-    for _,v in pairs(data) do
-        if not k then
-            k = v
-        else
-            tmp[k] = tonumber(v)
-            k = nil
-        end
+local ARGS_PER_KEY = 7
+
+for i = 1, #KEYS do
+    local base = (i - 1) * ARGS_PER_KEY
+    if tonumber(ARGV[base + 1]) < 1 then
+        return redis.error_reply("Limit must be at least 1")
+    end
+
+    if tonumber(ARGV[base + 3]) < 1 then
+        return redis.error_reply("Initial cooldown must be at least 1")
     end
-    data = tmp
 end
 
-local count = data.count or 0
+-- Returns count, reset and spam, and whether the ratelimit was hit.
+local function ratelimit(key, base)
+    local data = redis.call("HGETALL", key) or {}
 
-local reset = data.reset or 0
+    do
+        local tmp = {}
+        local k
+        for _,v in pairs(data) do
+            if not k then
+                k = v
+            else
+                tmp[k] = tonumber(v)
+                k = nil
+            end
+        end
+        data = tmp
+    end
 
-local limit = tonumber(ARGV[1])
-local now = tonumber(ARGV[2])
-local initialCooldown = tonumber(ARGV[3])
-local allowedSpam = tonumber(ARGV[4])
-local incr = math.max(0, tonumber(ARGV[5]))
-local maxCooldown = math.max(initialCooldown, tonumber(ARGV[6]))
+    local count = data.count or 0
 
-if limit < 1 then
-    return redis.error_reply("Limit must be at least 1")
-end
+    local reset = data.reset or 0
 
-if initialCooldown < 1 then
-    return redis.error_reply("Initial cooldown must be at least 1")
-end
+    local limit = tonumber(ARGV[base + 1])
+    local now = tonumber(ARGV[base + 2])
+    local initialCooldown = tonumber(ARGV[base + 3])
+    local allowedSpam = tonumber(ARGV[base + 4])
+    local incr = math.max(0, tonumber(ARGV[base + 5]))
+    local maxCooldown = math.max(initialCooldown, tonumber(ARGV[base + 6]))
+    local pendingSpam = math.max(0, tonumber(ARGV[base + 7]) or 0)
 
-if reset < now then
-    reset = now + initialCooldown
-    if count == limit then
-        count = 0
+    if reset < now then
+        reset = now + initialCooldown
+        if count == limit then
+            count = 0
+        end
     end
-end
 
-if count >= limit then
-    local spam = data.spam or 0
-    if spam + 1 > allowedSpam then
-        reset = math.min(reset + (incr * (spam - allowedSpam)), now + maxCooldown)
-    end
+    if count >= limit then
+        local spam = (data.spam or 0) + pendingSpam
+        if spam + 1 > allowedSpam then
+            reset = math.min(reset + (incr * (spam - allowedSpam)), now + maxCooldown)
+        end
 
-    redis.call("HMSET", KEYS[1], "count", count, "reset", reset, "spam", spam + 1)
-    -- I'm giving you all two chances to back off before resetting your cooldown.
-    -- Use them wisely.
-    if spam + 1 > allowedSpam + 2 then
-        redis.call("PEXPIRE", KEYS[1], reset)
-    end
+        redis.call("HMSET", key, "count", count, "reset", reset, "spam", spam + 1)
+        -- I'm giving you all two chances to back off before resetting your cooldown.
+        -- Use them wisely.
+        if spam + 1 > allowedSpam + 2 then
+            redis.call("PEXPIRE", key, reset)
+        end
 
-    return {count, reset, spam}
-else
-    redis.call("HMSET", KEYS[1], "count", count + 1, "reset", reset, "spam", 0)
-    redis.call("PEXPIRE", KEYS[1], reset)
+        return count, reset, spam, true
+    else
+        redis.call("HMSET", key, "count", count + 1, "reset", reset, "spam", 0)
+        redis.call("PEXPIRE", key, reset)
 
-    return {count, reset, 0}
+        return count, reset, 0, false
+    end
 end
+
+local result = {}
+for i = 1, #KEYS do
+    local count, reset, spam, hit = ratelimit(KEYS[i], (i - 1) * ARGS_PER_KEY)
+    result[#result + 1] = count
+    result[#result + 1] = reset
+    result[#result + 1] = spam
+    if hit then
+        break
+    end
+end
+
+return result
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.core.CommandRegistry.CommandInfo;
+import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
+import net.kodehawa.mantarobot.core.listeners.command.CommandAdmission;
+import net.kodehawa.mantarobot.core.listeners.command.CommandAdmission.Priority;
+import net.kodehawa.mantarobot.core.listeners.command.CommandTask;
+import net.kodehawa.mantarobot.data.Config;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class CommandAdmissionTest {
+    private static final CommandInfo BAN = new CommandInfo("ban", CommandCategory.MODERATION);
+    private static final CommandInfo PROFILE = new CommandInfo("profile", CommandCategory.CURRENCY);
+    private static final CommandInfo ANIME = new CommandInfo("anime", CommandCategory.FUN);
+    private static final CommandInfo CAT = new CommandInfo("cat", CommandCategory.IMAGE);
+
+    private static CommandAdmission admission() {
+        return new CommandAdmission(config(1000));
+    }
+
+    private static Config config(long maxQueueDelayMillis) {
+        var config = new Config();
+        config.commandAdmissionMaxInFlight = 10;
+        config.commandAdmissionMaxQueueDelayMillis = maxQueueDelayMillis;
+        config.commandAdmissionBusyGuildCommands = 3;
+        return config;
+    }
+
+    @Test
+    void testPriority() {
+        var admission = admission();
+        Assertions.assertEquals(Priority.CRITICAL, admission.priority(BAN));
+        Assertions.assertEquals(Priority.NORMAL, admission.priority(PROFILE));
+        Assertions.assertEquals(Priority.LOW, admission.priority(ANIME));
+        Assertions.assertEquals(Priority.LOW, admission.priority(CAT));
+        // Custom commands.
+        Assertions.assertEquals(Priority.NORMAL, admission.priority(null));
+    }
+
+    @Test
+    void testEverythingGetsInWhenKeepingUp() {
+        var admission = admission();
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertTrue(admission.tryAcquire(1, true, () -> CAT));
+        }
+
+        Assertions.assertFalse(admission.isFallingBehind());
+        Assertions.assertEquals(5, admission.inFlight());
+    }
+
+    @Test
+    void testQueueDelayShedsLowPriorityFirst() {
+        var admission = admission();
+        admission.started(TimeUnit.SECONDS.toNanos(2));
+        Assertions.assertTrue(admission.isFallingBehind());
+
+        Assertions.assertFalse(admission.tryAcquire(1, true, () -> CAT));
+        Assertions.assertFalse(admission.tryAcquire(1, false, () -> ANIME));
+        Assertions.assertTrue(admission.tryAcquire(1, true, () -> PROFILE));
+        Assertions.assertTrue(admission.tryAcquire(1, true, () -> BAN));
+
+        // Catching up again.
+        admission.started(0);
+        Assertions.assertTrue(admission.tryAcquire(1, true, () -> CAT));
+    }
+
+    @Test
+    void testBusyGuildsLoseTextCommandsFirst() {
+        var admission = admission();
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(admission.tryAcquire(1, true, () -> PROFILE));
+        }
+
+        admission.started(TimeUnit.SECONDS.toNanos(2));
+        Assertions.assertFalse(admission.tryAcquire(1, true, () -> PROFILE));
+        // Interactions have to be answered anyway, and other guilds aren't busy.
+        Assertions.assertTrue(admission.tryAcquire(1, false, () -> PROFILE));
+        Assertions.assertTrue(admission.tryAcquire(2, true, () -> PROFILE));
+
+        // Not busy once it's done with a few of them.
+        for (int i = 0; i < 3; i++) {
+            admission.release(1);
+        }
+
+        Assertions.assertTrue(admission.tryAcquire(1, true, () -> PROFILE));
+    }
+
+    @Test
+    void testOnlyCriticalPastMaxInFlight() {
+        var admission = admission();
+        for (long guild = 1; guild <= 10; guild++) {
+            Assertions.assertTrue(admission.tryAcquire(guild, false, () -> PROFILE));
+        }
+
+        Assertions.assertTrue(admission.isFallingBehind());
+        Assertions.assertFalse(admission.tryAcquire(11, false, () -> PROFILE));
+        Assertions.assertFalse(admission.tryAcquire(11, true, () -> PROFILE));
+        Assertions.assertTrue(admission.tryAcquire(11, true, () -> BAN));
+
+        admission.release(11);
+        admission.release(10);
+        Assertions.assertTrue(admission.tryAcquire(11, false, () -> PROFILE));
+    }
+
+    @Test
+    void testQueueDelayGoesStale() throws InterruptedException {
+        var admission = new CommandAdmission(config(50));
+        admission.started(TimeUnit.SECONDS.toNanos(2));
+        Assertions.assertTrue(admission.isFallingBehind());
+
+        // Nothing started since, but nothing's waiting either.
+        Thread.sleep(100);
+        Assertions.assertFalse(admission.isFallingBehind());
+    }
+
+    @Test
+    void testQueueDelayCountsWhatsWaiting() throws InterruptedException {
+        var queue = new PriorityBlockingQueue<Runnable>(8, CommandTask.ORDER);
+        var admission = new CommandAdmission(config(50), queue);
+        queue.add(CommandTask.of(CommandTask.Kind.MESSAGE, 0, () -> {}));
+        Assertions.assertFalse(admission.isFallingBehind());
+
+        // Nothing starts while it waits.
+        Thread.sleep(100);
+        Assertions.assertTrue(admission.isFallingBehind());
+
+        queue.clear();
+        Assertions.assertFalse(admission.isFallingBehind());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.core.listeners.command.CommandLanes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CommandLanesTest {
+    // Long enough that nothing here gets passed over, unless it's meant to.
+    private static final Duration STUCK_AFTER = Duration.ofMinutes(1);
+
+    @Test
+    void testSameKeyRunsInOrder() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(8);
+        var lanes = new CommandLanes(executor, STUCK_AFTER);
+        var ran = new ArrayList<Integer>();
+        var running = new AtomicInteger();
+        var done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            var number = i;
+            lanes.execute(1, () -> {
+                Assertions.assertEquals(1, running.incrementAndGet());
+                // Not synchronized on purpose: only one of these can be running at a time.
+                ran.add(number);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i, ran.get(i));
+        }
+    }
+
+    @Test
+    void testDifferentKeysRunInParallel() throws InterruptedException {
+        var executor = Executors.newCachedThreadPool();
+        var lanes = new CommandLanes(executor, STUCK_AFTER);
+        var bothRunning = new CountDownLatch(2);
+        var done = new CountDownLatch(2);
+        for (long key = 1; key <= 2; key++) {
+            lanes.execute(key, () -> {
+                bothRunning.countDown();
+                try {
+                    // Only gets through if the other key isn't waiting behind this one.
+                    if (bothRunning.await(10, TimeUnit.SECONDS)) {
+                        done.countDown();
+                    }
+                } catch (InterruptedException ignored) { }
+            });
+        }
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    void testErrorsDontStopTheLane() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var lanes = new CommandLanes(executor, STUCK_AFTER);
+        var done = new CountDownLatch(1);
+        lanes.execute(1, () -> {
+            throw new IllegalStateException("Expected");
+        });
+        lanes.execute(1, done::countDown);
+
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    void testStuckTaskIsPassedOver() throws InterruptedException {
+        var executor = Executors.newCachedThreadPool();
+        // Anything that has started counts as stuck.
+        var lanes = new CommandLanes(executor, Duration.ZERO);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var done = new CountDownLatch(1);
+        lanes.execute(1, () -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) { }
+        });
+
+        Assertions.assertTrue(started.await(10, TimeUnit.SECONDS));
+        lanes.execute(1, done::countDown);
+        Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // The stuck one finishing afterwards doesn't bring the lane back.
+        release.countDown();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, lanes.size());
+    }
+
+    @Test
+    void testRejectedTasksAreLetGo() {
+        var accepted = new ArrayList<Runnable>();
+        var accepting = new boolean[] { true };
+        Executor executor = task -> {
+            if (!accepting[0]) {
+                throw new RejectedExecutionException("Shutting down");
+            }
+
+            accepted.add(task);
+        };
+
+        var lanes = new CommandLanes(executor, STUCK_AFTER);
+        var ran = new AtomicInteger();
+        var rejected = new AtomicInteger();
+        lanes.execute(1, ran::incrementAndGet, rejected::incrementAndGet);
+        lanes.execute(1, ran::incrementAndGet, rejected::incrementAndGet);
+        Assertions.assertEquals(1, accepted.size());
+
+        // The next one is turned down once the first is done...
+        accepting[0] = false;
+        accepted.get(0).run();
+        Assertions.assertEquals(1, ran.get());
+        Assertions.assertEquals(1, rejected.get());
+        Assertions.assertFalse(lanes.isBusy(1));
+
+        // ...and so is one that would have started right away.
+        lanes.execute(2, ran::incrementAndGet, rejected::incrementAndGet);
+        Assertions.assertEquals(1, ran.get());
+        Assertions.assertEquals(2, rejected.get());
+        Assertions.assertEquals(0, lanes.size());
+    }
+
+    // A lot of users at once, a few commands each, sent from a lot of threads like the shards would.
+    // Every user's commands have to run in the order they were sent, and no lane should be left behind.
+    @Test
+    void testManyUsers() throws Exception {
+        var users = 10_000;
+        var commandsPerUser = 10;
+        var senders = 16;
+        var executor = Executors.newFixedThreadPool(64);
+        var lanes = new CommandLanes(executor, STUCK_AFTER);
+        var next = new ConcurrentHashMap<Long, AtomicInteger>();
+        var outOfOrder = new AtomicInteger();
+        var done = new CountDownLatch(users * commandsPerUser);
+
+        var sendingPool = Executors.newFixedThreadPool(senders);
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        for (int sender = 0; sender < senders; sender++) {
+            var senderNumber = sender;
+            futures.add(sendingPool.submit(() -> {
+                start.await();
+                for (int command = 0; command < commandsPerUser; command++) {
+                    // Each sender owns some of the users, so the order they're sent in is known.
+                    for (long user = senderNumber; user < users; user += senders) {
+                        var userId = user;
+                        var expected = command;
+                        lanes.execute(userId, () -> {
+                            var count = next.computeIfAbsent(userId, k -> new AtomicInteger());
+                            if (count.getAndIncrement() != expected) {
+                                outOfOrder.incrementAndGet();
+                            }
+
+                            done.countDown();
+                        });
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (var future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+
+        Assertions.assertTrue(done.await(1, TimeUnit.MINUTES));
+
+        sendingPool.shutdown();
+        executor.shutdown();
+        Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, outOfOrder.get());
+        Assertions.assertEquals(0, lanes.size());
+        for (var count : List.copyOf(next.values())) {
+            Assertions.assertEquals(commandsPerUser, count.get());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.dv8tion.jda.api.utils.TimeUtil;
+import net.kodehawa.mantarobot.core.listeners.command.CommandTask;
+import net.kodehawa.mantarobot.core.listeners.command.CommandTask.Kind;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.kodehawa.mantarobot.core.listeners.command.CommandTask.KIND_HEAD_START;
+
+class CommandTaskTest {
+    private static final long NOW = System.currentTimeMillis();
+
+    @Test
+    void testKindGoesFirst() {
+        var message = task(Kind.MESSAGE, 0);
+        var slash = task(Kind.SLASH, KIND_HEAD_START / 2);
+        var autocomplete = task(Kind.AUTOCOMPLETE, KIND_HEAD_START);
+        assertOrder(List.of(autocomplete, slash, message), message, slash, autocomplete);
+    }
+
+    // Anything that comes in more than the head start after a message has to wait for it, whatever its kind.
+    @Test
+    void testMessagesArentPassedOverForever() {
+        var message = task(Kind.MESSAGE, 0);
+        var slash = task(Kind.SLASH, 2 * KIND_HEAD_START + 1);
+        var autocomplete = task(Kind.AUTOCOMPLETE, 3 * KIND_HEAD_START + 1);
+        assertOrder(List.of(message, slash, autocomplete), autocomplete, slash, message);
+    }
+
+    @Test
+    void testSameKindGoesByDeadline() {
+        var first = task(Kind.SLASH, 0);
+        var second = task(Kind.SLASH, 1);
+        var alsoSecond = task(Kind.SLASH, 1);
+        assertOrder(List.of(first, second, alsoSecond), alsoSecond, second, first);
+    }
+
+    private static CommandTask task(Kind kind, long createdAfter) {
+        return CommandTask.of(kind, TimeUtil.getDiscordTimestamp(NOW + createdAfter), () -> { });
+    }
+
+    private static void assertOrder(List<CommandTask> expected, CommandTask... tasks) {
+        var sorted = new ArrayList<Runnable>(List.of(tasks));
+        sorted.sort(CommandTask.ORDER);
+        Assertions.assertEquals(expected, sorted);
+    }
+}
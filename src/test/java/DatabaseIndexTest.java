@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import net.kodehawa.mantarobot.db.IndexRegistry;
+import net.kodehawa.mantarobot.db.LeaderboardIndex;
+import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.db.entities.MongoUser;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.List;
+
+class DatabaseIndexTest {
+    private static final String MONGO_URI = "MANTARO_TEST_MONGO_URI";
+
+    @Test
+    void testLeaderboardsAreIndexed() {
+        var required = IndexRegistry.required();
+        for (var board : LeaderboardIndex.Board.values()) {
+            Assertions.assertTrue(
+                    required.stream().anyMatch(index -> index.table().equals(board.getTable()) && index.covers(board.getField())),
+                    "No index declared for the " + board + " leaderboard"
+            );
+        }
+    }
+
+    // Needs a MongoDB instance to run explain() against, it'll use (and drop) the mantaro-index-test database.
+    @Test
+    @EnabledIfEnvironmentVariable(named = MONGO_URI, matches = ".+")
+    void testHotQueriesUseIndexes() {
+        try (var client = MongoClients.create(System.getenv(MONGO_URI))) {
+            var database = client.getDatabase("mantaro-index-test");
+            database.drop();
+            for (var index : IndexRegistry.required()) {
+                // An empty collection doesn't exist, and explain() says as much instead of planning.
+                database.getCollection(index.table()).insertOne(new Document("_id", "1"));
+            }
+
+            IndexRegistry.ensureIndexes(database);
+
+            assertIndexed(database, CustomCommand.DB_TABLE, Filters.eq("guildId", "1"), null);
+            assertIndexed(database, MongoUser.DB_TABLE, Filters.gt("birthday", ""), null);
+            for (var board : LeaderboardIndex.Board.values()) {
+                assertIndexed(database, board.getTable(), null, Sorts.descending(board.getField()));
+                assertIndexed(database, board.getTable(), Filters.gt(board.getField(), 0), null);
+            }
+
+            database.drop();
+        }
+    }
+
+    private static void assertIndexed(MongoDatabase database, String table, Bson filter, Bson sort) {
+        MongoCollection<Document> collection = database.getCollection(table);
+        var find = filter == null ? collection.find() : collection.find(filter);
+        if (sort != null) {
+            find = find.sort(sort).limit(15);
+        }
+
+        var plan = find.explain().get("queryPlanner", Document.class);
+        Assertions.assertFalse(hasCollectionScan(plan.get("winningPlan")),
+                "Query on %s (filter: %s, sort: %s) does a collection scan: %s".formatted(table, filter, sort, plan.toJson()));
+    }
+
+    private static boolean hasCollectionScan(Object stage) {
+        if (stage instanceof Document document) {
+            if ("COLLSCAN".equals(document.get("stage"))) {
+                return true;
+            }
+
+            return document.values().stream().anyMatch(DatabaseIndexTest::hasCollectionScan);
+        }
+
+        if (stage instanceof List<?> list) {
+            return list.stream().anyMatch(DatabaseIndexTest::hasCollectionScan);
+        }
+
+        return false;
+    }
+}
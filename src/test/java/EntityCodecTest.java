@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
+import net.kodehawa.mantarobot.db.codecs.MapCodecProvider;
+import net.kodehawa.mantarobot.db.entities.CustomCommand;
+import net.kodehawa.mantarobot.db.entities.GuildCommandSettings;
+import net.kodehawa.mantarobot.db.entities.MongoGuild;
+import net.kodehawa.mantarobot.db.entities.PlayerStats;
+import net.kodehawa.mantarobot.db.entities.PremiumKey;
+import net.kodehawa.mantarobot.db.entities.UserCommandSettings;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.Conventions;
+import org.bson.codecs.pojo.PojoCodecProvider;
+import org.bson.codecs.pojo.annotations.BsonId;
+import org.bson.codecs.pojo.annotations.BsonIgnore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.mongodb.MongoClientSettings.getDefaultCodecRegistry;
+import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+// The hand-written codecs have to write and read the exact same documents PojoCodec does.
+class EntityCodecTest {
+    private static final CodecRegistry pojoRegistry = fromRegistries(getDefaultCodecRegistry(), fromProviders(PojoCodecProvider.builder()
+            .automatic(true)
+            .register(new MapCodecProvider())
+            .conventions(Arrays.asList(Conventions.CLASS_AND_PROPERTY_CONVENTION, Conventions.ANNOTATION_CONVENTION, Conventions.OBJECT_ID_GENERATORS, Conventions.SET_PRIVATE_FIELDS_CONVENTION))
+            .build()));
+
+    @Test
+    void testPlayerStats() {
+        var stats = PlayerStats.of("1234");
+        stats.addGambleWin(500);
+        stats.incrementCraftedItems(3);
+        stats.incrementToolsBroken();
+        stats.incrementSlotsLose();
+        assertRoundTrip(stats, new PlayerStats.Codec());
+    }
+
+    @Test
+    void testPremiumKey() {
+        var key = new PremiumKey("key", 1000L, 2000L, PremiumKey.Type.GUILD, true, "owner", null);
+        assertRoundTrip(key, new PremiumKey.Codec());
+    }
+
+    @Test
+    void testCustomCommand() {
+        var command = CustomCommand.of("1234", "test", new ArrayList<>(List.of("hi", "hello")));
+        command.setOwner("5678");
+        command.setNsfw(true);
+        assertRoundTrip(command, new CustomCommand.Codec());
+    }
+
+    @Test
+    void testUserCommandSettings() {
+        var settings = UserCommandSettings.of("1234");
+        settings.setLang("es_CL");
+        settings.setReceivedExpirationWarning(true);
+        assertRoundTrip(settings, new UserCommandSettings.Codec());
+    }
+
+    @Test
+    void testGuildCommandSettings() {
+        var settings = GuildCommandSettings.of("1234");
+        settings.setGuildCustomPrefix("?");
+        settings.setPremiumUntil(42L);
+        settings.setDisabledCommands(new HashSet<>(Set.of("ping", "help")));
+        settings.setDisabledCategories(new HashSet<>(Set.of(CommandCategory.FUN)));
+        settings.setDisabledUsers(new ArrayList<>(List.of("1", "2")));
+
+        var channelCommands = new HashMap<String, List<String>>();
+        channelCommands.put("10", new ArrayList<>(List.of("ping")));
+        settings.setChannelSpecificDisabledCommands(channelCommands);
+
+        var roleCategories = new HashMap<String, List<CommandCategory>>();
+        roleCategories.put("20", new ArrayList<>(List.of(CommandCategory.CURRENCY, CommandCategory.FUN)));
+        settings.setRoleSpecificDisabledCategories(roleCategories);
+        assertRoundTrip(settings, new GuildCommandSettings.Codec());
+    }
+
+    @Test
+    void testMongoGuild() throws ReflectiveOperationException {
+        var guild = fill(MongoGuild.of("1234"));
+        var codec = new MongoGuild.Codec(pojoRegistry);
+        var pojoCodec = pojoRegistry.get(MongoGuild.class);
+        assertRoundTrip(guild, codec);
+
+        // Written by PojoCodec and read by ours, and the other way around.
+        assertSameProperties(guild, decode(encode(guild, pojoCodec), codec));
+        assertSameProperties(guild, decode(encode(guild, codec), pojoCodec));
+    }
+
+    // Fails when a property is added to MongoGuild but not to its codec.
+    @Test
+    void testMongoGuildCodecWritesEveryProperty() throws ReflectiveOperationException {
+        var guild = fill(MongoGuild.of("1234"));
+        Assertions.assertEquals(
+                encode(guild, pojoRegistry.get(MongoGuild.class)).keySet(),
+                encode(guild, new MongoGuild.Codec(pojoRegistry)).keySet()
+        );
+    }
+
+    @Test
+    void testUnknownFieldsAreSkipped() {
+        var document = encode(PlayerStats.of("1234"), new PlayerStats.Codec());
+        document.put("somethingOld", new BsonDocument("nested", new BsonString("value")));
+        document.put("mined", new BsonInt32(5));
+
+        var decoded = decode(document, new PlayerStats.Codec());
+        Assertions.assertEquals("1234", decoded.getId());
+        Assertions.assertEquals(5, decoded.getMined());
+    }
+
+    /**
+     * Sets every stored field to something that isn't its default (and isn't null, which wouldn't be written),
+     * so a codec that misses one can't pass by accident.
+     */
+    private static <T> T fill(T entity) throws ReflectiveOperationException {
+        for (var field : entity.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(BsonIgnore.class) || field.isAnnotationPresent(BsonId.class)) {
+                continue;
+            }
+
+            field.setAccessible(true);
+            if (field.getType() == boolean.class) {
+                field.setBoolean(entity, !field.getBoolean(entity));
+            } else {
+                field.set(entity, sample(field.getGenericType(), field.getName()));
+            }
+        }
+
+        return entity;
+    }
+
+    private static Object sample(Type type, String name) throws ReflectiveOperationException {
+        if (type instanceof ParameterizedType parameterized) {
+            var raw = parameterized.getRawType();
+            var arguments = parameterized.getActualTypeArguments();
+            if (raw == List.class) {
+                return new ArrayList<>(List.of(sample(arguments[0], name)));
+            }
+
+            if (raw == Set.class) {
+                return new HashSet<>(Set.of(sample(arguments[0], name)));
+            }
+
+            if (raw == Map.class && arguments[0] == String.class) {
+                return new HashMap<>(Map.of(name + "-key", sample(arguments[1], name)));
+            }
+        } else if (type instanceof Class<?> clazz) {
+            if (clazz == String.class) {
+                return name + "-value";
+            }
+
+            if (clazz == long.class || clazz == Long.class) {
+                return name.length() + 1000L;
+            }
+
+            if (clazz == int.class || clazz == Integer.class) {
+                return name.length() + 100;
+            }
+
+            if (clazz.isEnum()) {
+                var constants = clazz.getEnumConstants();
+                return constants[constants.length - 1];
+            }
+
+            if (clazz.isRecord()) {
+                var components = clazz.getRecordComponents();
+                var types = new Class<?>[components.length];
+                var values = new Object[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    types[i] = components[i].getType();
+                    values[i] = sample(components[i].getGenericType(), components[i].getName());
+                }
+
+                return clazz.getDeclaredConstructor(types).newInstance(values);
+            }
+        }
+
+        throw new IllegalArgumentException("Don't know what to put in a " + type + " (" + name + "), add it here");
+    }
+
+    private static <T> void assertSameProperties(T expected, T actual) throws ReflectiveOperationException {
+        for (var field : expected.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(BsonIgnore.class)) {
+                continue;
+            }
+
+            field.setAccessible(true);
+            Assertions.assertEquals(field.get(expected), field.get(actual), field.getName());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void assertRoundTrip(T entity, Codec<T> codec) {
+        var pojoCodec = pojoRegistry.get((Class<T>) entity.getClass());
+        var expected = encode(entity, pojoCodec);
+        Assertions.assertEquals(expected, encode(entity, codec));
+
+        // Whatever PojoCodec wrote has to come back the same.
+        Assertions.assertEquals(expected, encode(decode(expected, codec), pojoCodec));
+    }
+
+    private static <T> BsonDocument encode(T entity, Codec<T> codec) {
+        var document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), entity, EncoderContext.builder().build());
+        return document;
+    }
+
+    private static <T> T decode(BsonDocument document, Codec<T> codec) {
+        return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.utils.commands.LootTable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Tables get sampled a few hundred thousand times with a fixed seed, and each entry has to come out within a few
+// standard deviations of how often it should.
+class LootTableTest {
+    private static final int SAMPLES = 500_000;
+
+    @Test
+    void testWeights() {
+        var table = LootTable.<String>builder()
+                .add(1, "a")
+                .add(2, "b")
+                .add(7, "c")
+                .add(0.5, "d")
+                .build();
+
+        Assertions.assertEquals(0.7 / 1.05, table.getChance(2), 1e-9);
+        var counts = sample(table, new Random(1));
+        for (int i = 0; i < table.size(); i++) {
+            assertFrequency(table.getChance(i), counts.getOrDefault(table.getEntries().get(i), 0));
+        }
+    }
+
+    @Test
+    void testSingleEntry() {
+        var table = LootTable.<String>builder().add(3, "only").build();
+        var random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals("only", table.next(random));
+        }
+    }
+
+    @Test
+    void testEmpty() {
+        var table = LootTable.<String>builder().build();
+        Assertions.assertTrue(table.isEmpty());
+        Assertions.assertNull(table.next(new Random(5)));
+    }
+
+    @Test
+    void testGatedMatchesFilteredPick() {
+        // Same shape as a crate: lots of commons, then a few higher tiers that only show up some of the time.
+        var entries = new ArrayList<Gated>();
+        for (int i = 0; i < 12; i++) {
+            entries.add(new Gated("common" + i, 20, 1));
+        }
+
+        for (int i = 0; i < 4; i++) {
+            entries.add(new Gated("uncommon" + i, 20, 0.05f));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            entries.add(new Gated("rare" + i, 5, 0.40f));
+        }
+
+        entries.add(new Gated("premium", 2, 0.10f));
+        entries.add(new Gated("legendary", 5, 0.02f));
+
+        var builder = LootTable.<String>builder();
+        entries.forEach(e -> builder.addGated(e.weight(), e.gate(), e.name()));
+        var table = builder.build();
+
+        // Roll the list and pick from it every time, like crates used to.
+        var random = new Random(3);
+        var counts = new HashMap<String, Integer>();
+        for (int i = 0; i < SAMPLES; i++) {
+            List<Gated> pool = new ArrayList<>();
+            var total = 0;
+            for (var entry : entries) {
+                if (random.nextFloat() <= entry.gate()) {
+                    pool.add(entry);
+                    total += entry.weight();
+                }
+            }
+
+            var value = random.nextDouble() * total;
+            for (var entry : pool) {
+                value -= entry.weight();
+                if (value < 0) {
+                    counts.merge(entry.name(), 1, Integer::sum);
+                    break;
+                }
+            }
+        }
+
+        for (int i = 0; i < table.size(); i++) {
+            assertFrequency(table.getChance(i), counts.getOrDefault(table.getEntries().get(i), 0));
+        }
+
+        // And the table itself has to give out what it says.
+        var sampled = sample(table, new Random(4));
+        for (int i = 0; i < table.size(); i++) {
+            assertFrequency(table.getChance(i), sampled.getOrDefault(table.getEntries().get(i), 0));
+        }
+    }
+
+    @Test
+    void testInvalidEntries() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LootTable.<String>builder().add(0, "a"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LootTable.<String>builder().addGated(1, 0, "a"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> LootTable.<String>builder().addGated(1.5, 0.5, "a"));
+    }
+
+    private static Map<String, Integer> sample(LootTable<String> table, Random random) {
+        var counts = new HashMap<String, Integer>();
+        for (int i = 0; i < SAMPLES; i++) {
+            counts.merge(table.next(random), 1, Integer::sum);
+        }
+
+        return counts;
+    }
+
+    private static void assertFrequency(double chance, int count) {
+        var expected = chance * SAMPLES;
+        var deviation = Math.sqrt(SAMPLES * chance * (1 - chance));
+        Assertions.assertTrue(Math.abs(count - expected) <= 5 * deviation + 1,
+                "Expected around %.1f, got %d".formatted(expected, count));
+    }
+
+    private record Gated(String name, int weight, double gate) { }
+}
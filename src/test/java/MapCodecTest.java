@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.core.command.helpers.CommandCategory;
+import net.kodehawa.mantarobot.db.codecs.MapCodecProvider;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.codecs.pojo.PropertyCodecRegistry;
+import org.bson.codecs.pojo.TypeWithTypeParameters;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.MongoClientSettings.getDefaultCodecRegistry;
+
+// Keys we can turn into field names directly have to read what the old codec wrote, and write it the same way.
+class MapCodecTest {
+    private static final CodecRegistry registry = getDefaultCodecRegistry();
+    private static final PropertyCodecRegistry propertyRegistry = new PropertyCodecRegistry() {
+        @Override
+        public <T> Codec<T> get(TypeWithTypeParameters<T> type) {
+            return registry.get(type.getType());
+        }
+    };
+
+    @Test
+    void testStringKeys() {
+        var document = new BsonDocument()
+                .append("first", new BsonInt32(1))
+                .append("second", new BsonInt32(2));
+        assertSameDocument(document, codec(String.class, Integer.class), Map.of("first", 1, "second", 2));
+    }
+
+    @Test
+    void testEnumKeys() {
+        // The old codec went through the enum codec, which writes the name.
+        var document = new BsonDocument()
+                .append("FUN", new BsonString("a"))
+                .append("CURRENCY", new BsonString("b"));
+        assertSameDocument(document, codec(CommandCategory.class, String.class), Map.of(CommandCategory.FUN, "a", CommandCategory.CURRENCY, "b"));
+    }
+
+    // The old codec couldn't write these at all (the number codecs don't write strings), so there's nothing older to read.
+    @Test
+    void testLongKeys() {
+        var document = new BsonDocument()
+                .append("123456789012345678", new BsonString("a"))
+                .append("-1", new BsonString("b"));
+        assertSameDocument(document, codec(Long.class, String.class), Map.of(123456789012345678L, "a", -1L, "b"));
+    }
+
+    @Test
+    void testIntegerKeys() {
+        var document = new BsonDocument()
+                .append("1", new BsonString("a"))
+                .append("42", new BsonString("b"));
+        assertSameDocument(document, codec(Integer.class, String.class), Map.of(1, "a", 42, "b"));
+    }
+
+    private static <K, V> void assertSameDocument(BsonDocument document, Codec<Map<K, V>> codec, Map<K, V> map) {
+        var decoded = codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+        Assertions.assertEquals(map, decoded);
+
+        var encoded = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(encoded), decoded, EncoderContext.builder().build());
+        Assertions.assertEquals(document, encoded);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Codec<Map<K, V>> codec(Class<K> key, Class<V> value) {
+        var type = new Type<>(Map.class, List.of(new Type<>(key, List.of()), new Type<>(value, List.of())));
+        return (Codec) new MapCodecProvider().get(type, propertyRegistry);
+    }
+
+    private record Type<T>(Class<T> getType, List<Type<?>> getTypeParameters) implements TypeWithTypeParameters<T> { }
+}
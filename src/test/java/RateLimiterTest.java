@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import net.kodehawa.mantarobot.utils.commands.ratelimit.RateLimiter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class RateLimiterTest {
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 10_000;
+
+    @Test
+    void testSingleUse() {
+        var rateLimiter = new RateLimiter(TimeUnit.HOURS, 1);
+        Assertions.assertTrue(rateLimiter.process("1"));
+        Assertions.assertFalse(rateLimiter.process("1"));
+        // Other keys don't care.
+        Assertions.assertTrue(rateLimiter.process("2"));
+
+        var tryAgainIn = rateLimiter.tryAgainIn("1");
+        Assertions.assertTrue(tryAgainIn > TimeUnit.MINUTES.toMillis(59) && tryAgainIn <= TimeUnit.HOURS.toMillis(1));
+        Assertions.assertEquals(0, rateLimiter.tryAgainIn("3"));
+    }
+
+    @Test
+    void testRestsAfterTimeout() {
+        var clock = new AtomicLong();
+        var rateLimiter = new RateLimiter(TimeUnit.MILLISECONDS, 2, 100, clock::get);
+        Assertions.assertTrue(rateLimiter.process("1"));
+        Assertions.assertTrue(rateLimiter.process("1"));
+        Assertions.assertFalse(rateLimiter.process("1"));
+        Assertions.assertEquals(50, rateLimiter.tryAgainIn("1"));
+
+        // One more fits once half of it is rested, and both once all of it is.
+        clock.addAndGet(50);
+        Assertions.assertTrue(rateLimiter.process("1"));
+        Assertions.assertFalse(rateLimiter.process("1"));
+
+        clock.addAndGet(100);
+        Assertions.assertTrue(rateLimiter.process("1"));
+        Assertions.assertTrue(rateLimiter.process("1"));
+        Assertions.assertFalse(rateLimiter.process("1"));
+    }
+
+    @Test
+    void testIdleKeysAreCleanedUp() {
+        var clock = new AtomicLong();
+        var rateLimiter = new RateLimiter(TimeUnit.MILLISECONDS, 1, 50, clock::get);
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.process(String.valueOf(i));
+        }
+
+        Assertions.assertEquals(1000, rateLimiter.getTrackedKeys());
+        clock.addAndGet(50);
+
+        // Whoever comes next cleans up everyone else.
+        Assertions.assertTrue(rateLimiter.process("new"));
+        Assertions.assertEquals(1, rateLimiter.getTrackedKeys());
+    }
+
+    // Everyone hammering the same keys at once has to get exactly as many calls through as the limit,
+    // no more (a lost update) and no less (a lost permit).
+    @Test
+    void testConcurrentCalls() throws Exception {
+        var max = 1000;
+        var keys = 4;
+        var rateLimiter = new RateLimiter(TimeUnit.HOURS, max, 1);
+        var allowed = new AtomicInteger[keys];
+        for (int i = 0; i < keys; i++) {
+            allowed[i] = new AtomicInteger();
+        }
+
+        var executor = Executors.newFixedThreadPool(THREADS);
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int call = 0; call < CALLS_PER_THREAD; call++) {
+                    var key = call % keys;
+                    if (rateLimiter.process(String.valueOf(key))) {
+                        allowed[key].incrementAndGet();
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (var future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+
+        executor.shutdown();
+        for (var count : allowed) {
+            Assertions.assertEquals(max, count.get());
+        }
+    }
+
+    // Same, but with keys getting cleaned up while they're being used. Everyone calls non-stop while the clock stands
+    // still, then it moves one timeout ahead and they go again: exactly one call a round has to go through. More means
+    // a lost update, none means a lost permit.
+    @Test
+    void testConcurrentCallsWithCleanup() throws Exception {
+        var timeout = 20;
+        var rounds = 200;
+        var callsPerRound = 50;
+        var clock = new AtomicLong();
+        var rateLimiter = new RateLimiter(TimeUnit.MILLISECONDS, 1, timeout, clock::get);
+        var allowed = new AtomicInteger[rounds];
+        for (int i = 0; i < rounds; i++) {
+            allowed[i] = new AtomicInteger();
+        }
+
+        var executor = Executors.newFixedThreadPool(THREADS);
+        // Only moves once everyone is done with the round.
+        var nextRound = new CyclicBarrier(THREADS, () -> clock.addAndGet(timeout));
+        var futures = new ArrayList<Future<?>>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            var threadNumber = thread;
+            futures.add(executor.submit(() -> {
+                for (int round = 0; round < rounds; round++) {
+                    for (int call = 0; call < callsPerRound; call++) {
+                        // Everyone gets their own keys besides the shared one, so there's always something to clean up.
+                        rateLimiter.process(threadNumber + ":" + round + ":" + call);
+                        if (rateLimiter.process("shared")) {
+                            allowed[round].incrementAndGet();
+                        }
+                    }
+
+                    nextRound.await();
+                }
+
+                return null;
+            }));
+        }
+
+        for (var future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+
+        executor.shutdown();
+        for (int round = 0; round < rounds; round++) {
+            Assertions.assertEquals(1, allowed[round].get(), "Calls that went through in round " + round);
+        }
+    }
+}
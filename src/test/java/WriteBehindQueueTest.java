@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import net.kodehawa.mantarobot.db.Increment;
+import net.kodehawa.mantarobot.db.WriteBehindQueue;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.MongoClientSettings.getDefaultCodecRegistry;
+
+class WriteBehindQueueTest {
+    private static final CodecRegistry registry = getDefaultCodecRegistry();
+
+    @Test
+    void testChangesAfterEnqueueArentWritten() {
+        List<WriteModel<Document>> written = new ArrayList<>();
+        // Long enough that only shutting down flushes it.
+        var queue = new WriteBehindQueue(registry, 60_000, (table, models) -> written.addAll(models));
+
+        var badges = new ArrayList<>(List.of("first"));
+        var inventory = new HashMap<String, Integer>(Map.of("apple", 1));
+        var fields = new HashMap<String, Object>();
+        fields.put("badges", badges);
+        fields.put("inventory", inventory);
+        fields.put("newMoney", new Increment(10, 0));
+        Assertions.assertTrue(queue.enqueue("players", "1234", fields));
+
+        // The command keeps going with the same entity.
+        badges.add("second");
+        inventory.put("apple", 5);
+        inventory.put("pear", 1);
+        queue.shutdown();
+
+        Assertions.assertEquals(1, written.size());
+        var update = ((UpdateOneModel<Document>) written.get(0)).getUpdate().toBsonDocument(BsonDocument.class, registry);
+        Assertions.assertEquals(BsonDocument.parse("""
+                {
+                    "$set": {"badges": ["first"], "inventory": {"apple": 1}},
+                    "$inc": {"newMoney": {"$numberLong": "10"}}
+                }
+                """), update);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  Mantaro is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import org.bson.BsonArray;
+import org.bson.BsonString;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.MongoClientSettings.getDefaultCodecRegistry;
+
+// Lives in the same package, as the hooks ManagedDatabase uses aren't public.
+class UnitOfWorkTest {
+    private static final CodecRegistry registry = getDefaultCodecRegistry();
+
+    @Test
+    void testFailedGuardKeepsDeferredChanges() {
+        List<Map<String, Object>> written = new ArrayList<>();
+        var entity = new Entity("1234");
+        var tracker = new HashMap<String, Object>();
+        try (var unitOfWork = UnitOfWork.open(registry, (object, fields) -> written.add(new HashMap<>(fields)))) {
+            Assertions.assertSame(entity, unitOfWork.get(entity.getTableName(), entity.getId(), id -> entity));
+
+            // The command gives out some money and a badge, and saves.
+            var badges = new ArrayList<>(List.of("first"));
+            tracker.put("badges", badges);
+            Increment.track(tracker, "newMoney", 100, 100);
+            Assertions.assertTrue(unitOfWork.defer(entity, tracker));
+
+            // Then it spends more than is stored, along with another badge. This is what ManagedDatabase does when the guard fails.
+            badges.add("second");
+            Increment.trackGuarded(tracker, "newMoney", -500, 0);
+            tracker.clear();
+            unitOfWork.discard(entity);
+
+            Assertions.assertEquals(List.of(Map.of(
+                    "badges", new BsonArray(List.of(new BsonString("first"))),
+                    "newMoney", new Increment(100, 0)
+            )), written);
+            // Whatever loads it next gets what's stored instead.
+            Assertions.assertNotSame(entity, unitOfWork.get(entity.getTableName(), entity.getId(), Entity::new));
+        }
+
+        // Nothing else to write when it closes.
+        Assertions.assertEquals(1, written.size());
+    }
+
+    private record Entity(String getId) implements ManagedMongoObject {
+        @Override
+        public String getTableName() {
+            return "players";
+        }
+
+        @Override
+        public void insertOrReplace() { }
+
+        @Override
+        public void delete() { }
+    }
+}